@@ -0,0 +1,104 @@
+package net.blancworks.figura.harness;
+
+/**
+ * What one avatar cost, added up over every simulated player wearing it.
+ */
+public class AvatarStats {
+    public final String name;
+    public final long fileSize;
+
+    public int players = 0;
+    public int failedLoads = 0;
+    public int scriptErrors = 0;
+    public int complexity = 0;
+
+    public long loadCpuNanos = 0;
+    public long loadAllocatedBytes = 0;
+    public long initInstructions = 0;
+
+    public long ticks = 0;
+    public long tickCpuNanos = 0;
+    public long tickAllocatedBytes = 0;
+    public long tickInstructions = 0;
+
+    public long frames = 0;
+    public long frameCpuNanos = 0;
+    public long frameAllocatedBytes = 0;
+    public long frameInstructions = 0;
+    public long vertices = 0;
+
+    public AvatarStats(String name, long fileSize) {
+        this.name = name;
+        this.fileSize = fileSize;
+    }
+
+    public synchronized void addLoad(ResourceMeter used, int initInstructions) {
+        players++;
+        loadCpuNanos += used.cpuNanos;
+        loadAllocatedBytes += used.allocatedBytes;
+        this.initInstructions += initInstructions;
+    }
+
+    public synchronized void addTick(ResourceMeter used, int instructions) {
+        ticks++;
+        tickCpuNanos += used.cpuNanos;
+        tickAllocatedBytes += used.allocatedBytes;
+        tickInstructions += instructions;
+    }
+
+    public synchronized void addFrame(ResourceMeter used, long vertexCount, int instructions) {
+        frames++;
+        frameCpuNanos += used.cpuNanos;
+        frameAllocatedBytes += used.allocatedBytes;
+        frameInstructions += instructions;
+        vertices += vertexCount;
+    }
+
+    //Forgets the ticks and frames so far, used to drop the warmup.
+    public synchronized void resetRun() {
+        ticks = tickCpuNanos = tickAllocatedBytes = tickInstructions = 0;
+        frames = frameCpuNanos = frameAllocatedBytes = frameInstructions = vertices = 0;
+    }
+
+    //--Per player averages--
+
+    public double getLoadMillis() {
+        return players == 0 ? 0 : loadCpuNanos / 1e6 / players;
+    }
+
+    public double getTickMicros() {
+        return ticks == 0 ? 0 : tickCpuNanos / 1e3 / ticks;
+    }
+
+    public double getFrameMicros() {
+        return frames == 0 ? 0 : frameCpuNanos / 1e3 / frames;
+    }
+
+    public long getVerticesPerFrame() {
+        return frames == 0 ? 0 : vertices / frames;
+    }
+
+    public long getInitInstructions() {
+        return players == 0 ? 0 : initInstructions / players;
+    }
+
+    public long getTickInstructions() {
+        return ticks == 0 ? 0 : tickInstructions / ticks;
+    }
+
+    public long getFrameInstructions() {
+        return frames == 0 ? 0 : frameInstructions / frames;
+    }
+
+    //CPU time one player costs per second of game time, in milliseconds.
+    public double getMillisPerSecond(double framesPerSecond) {
+        return (getTickMicros() * 20 + getFrameMicros() * framesPerSecond) / 1e3;
+    }
+
+    //What one player allocates per second of game time, in megabytes.
+    public double getAllocatedMegabytesPerSecond(double framesPerSecond) {
+        double perTick = ticks == 0 ? 0 : tickAllocatedBytes / (double) ticks;
+        double perFrame = frames == 0 ? 0 : frameAllocatedBytes / (double) frames;
+        return (perTick * 20 + perFrame * framesPerSecond) / (1024 * 1024);
+    }
+}
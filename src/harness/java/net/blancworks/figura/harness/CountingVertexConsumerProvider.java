@@ -0,0 +1,66 @@
+package net.blancworks.figura.harness;
+
+import net.minecraft.client.render.RenderLayer;
+import net.minecraft.client.render.VertexConsumer;
+import net.minecraft.client.render.VertexConsumerProvider;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Hands out vertex consumers that drop everything, but count the vertices they get and the layers they were asked for.
+ */
+public class CountingVertexConsumerProvider implements VertexConsumerProvider {
+    public long vertexCount = 0;
+    public final Set<RenderLayer> layers = new HashSet<>();
+
+    private final CountingVertexConsumer consumer = new CountingVertexConsumer();
+
+    @Override
+    public VertexConsumer getBuffer(RenderLayer layer) {
+        layers.add(layer);
+        return consumer;
+    }
+
+    public void reset() {
+        vertexCount = 0;
+        layers.clear();
+    }
+
+    private class CountingVertexConsumer implements VertexConsumer {
+        @Override
+        public VertexConsumer vertex(double x, double y, double z) {
+            return this;
+        }
+
+        @Override
+        public VertexConsumer color(int red, int green, int blue, int alpha) {
+            return this;
+        }
+
+        @Override
+        public VertexConsumer texture(float u, float v) {
+            return this;
+        }
+
+        @Override
+        public VertexConsumer overlay(int u, int v) {
+            return this;
+        }
+
+        @Override
+        public VertexConsumer light(int u, int v) {
+            return this;
+        }
+
+        @Override
+        public VertexConsumer normal(float x, float y, float z) {
+            return this;
+        }
+
+        @Override
+        public void next() {
+            vertexCount++;
+        }
+    }
+}
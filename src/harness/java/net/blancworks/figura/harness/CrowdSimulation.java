@@ -0,0 +1,260 @@
+package net.blancworks.figura.harness;
+
+import net.blancworks.figura.PlayerDataManager;
+import net.blancworks.figura.network.NewFiguraNetworkManager;
+import net.blancworks.figura.network.messages.MessageHandler;
+import net.blancworks.figura.network.messages.pubsub.ChannelMessageHandler;
+import net.blancworks.figura.network.replay.SessionReplay;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs avatars for a crowd of simulated players, without the game, and reports what each avatar costs.
+ * <p>
+ * Every avatar file is worn by the given number of players. Avatars are loaded through PlayerData.readNbt,
+ * their scripts get the init, tick and render events, and the models are rendered into vertex consumers that only count.
+ * Players are run one at a time, so the CPU time and allocations between two samples belong to that player.
+ * <p>
+ * Avatar files are what the game keeps in figura/cache, either the avatar container or the older compressed NBT.
+ * <p>
+ * With --replay, a recorded network session is fed in over the measured ticks. Pings and avatar updates from a player
+ * go to the first player wearing the avatar file named after them (&lt;uuid&gt;.nbt, as in the cache), anything else is skipped.
+ */
+public class CrowdSimulation {
+    private static final String USAGE = String.join("\n",
+            "Usage: CrowdSimulation [options] <avatar file or folder>...",
+            "  --players <n>   players wearing each avatar (default 10)",
+            "  --ticks <n>     ticks to measure, 20 per second (default 200)",
+            "  --warmup <n>    ticks to run before measuring (default 40)",
+            "  --fps <n>       frames rendered per second (default 60)",
+            "  --trust <group> trust group the players are in (default untrusted)",
+            "  --replay <file> recorded network session to feed in (see SessionRecorder)",
+            "  --replay-speed <x> how much faster than recorded to replay it, 0 for as fast as possible (default 1)");
+
+    public int players = 10;
+    public int ticks = 200;
+    public int warmupTicks = 40;
+    public int framesPerSecond = 60;
+    public String trustGroup = "untrusted";
+    public Path replayFile;
+    public double replaySpeed = 1;
+    public final List<Path> avatarFiles = new ArrayList<>();
+
+    public final List<AvatarStats> allStats = new ArrayList<>();
+    public final List<SimulatedPlayer> crowd = new ArrayList<>();
+    public SessionReplay replay;
+
+    public static void main(String[] args) {
+        CrowdSimulation simulation = new CrowdSimulation();
+
+        try {
+            if (!simulation.parseArgs(args)) {
+                System.out.println(USAGE);
+                System.exit(args.length == 0 || args[0].equals("--help") ? 0 : 1);
+            }
+
+            simulation.run();
+            simulation.printReport();
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+        //The script and worker threads would keep going otherwise.
+        System.exit(0);
+    }
+
+    public boolean parseArgs(String[] args) throws IOException {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+
+            if (!arg.startsWith("--")) {
+                addAvatarFiles(Paths.get(arg));
+                continue;
+            }
+
+            if (arg.equals("--help") || i + 1 >= args.length)
+                return false;
+
+            String value = args[++i];
+            switch (arg) {
+                case "--players":
+                    players = Integer.parseInt(value);
+                    break;
+                case "--ticks":
+                    ticks = Integer.parseInt(value);
+                    break;
+                case "--warmup":
+                    warmupTicks = Integer.parseInt(value);
+                    break;
+                case "--fps":
+                    framesPerSecond = Integer.parseInt(value);
+                    break;
+                case "--trust":
+                    trustGroup = value;
+                    break;
+                case "--replay":
+                    replayFile = Paths.get(value);
+                    break;
+                case "--replay-speed":
+                    replaySpeed = Double.parseDouble(value);
+                    break;
+                default:
+                    System.out.println("Unknown option " + arg);
+                    return false;
+            }
+        }
+
+        return !avatarFiles.isEmpty() && players > 0 && ticks > 0 && framesPerSecond > 0 && replaySpeed >= 0;
+    }
+
+    private void addAvatarFiles(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            avatarFiles.add(path);
+            return;
+        }
+
+        try (Stream<Path> files = Files.list(path)) {
+            avatarFiles.addAll(files.filter(file -> file.getFileName().toString().endsWith(".nbt")).sorted().collect(Collectors.toList()));
+        }
+    }
+
+    public void run() throws IOException {
+        HeadlessEnvironment.initialize();
+        LocalFiguraNetwork network = HeadlessEnvironment.network;
+
+        //Fixed IDs, so runs can be compared.
+        Random random = new Random(0);
+
+        for (Path file : avatarFiles) {
+            byte[] data = Files.readAllBytes(file);
+            AvatarStats stats = new AvatarStats(file.getFileName().toString(), data.length);
+            allStats.add(stats);
+
+            for (int i = 0; i < players; i++) {
+                UUID id = new UUID(random.nextLong(), random.nextLong());
+                network.putAvatar(id, data);
+                HeadlessEnvironment.trustPlayer(id, trustGroup);
+
+                SimulatedPlayer player = new SimulatedPlayer(id, stats);
+                if (player.load(network))
+                    crowd.add(player);
+                else
+                    stats.failedLoads++;
+            }
+
+            System.out.println("Loaded " + stats.players + "/" + players + " players with " + stats.name);
+        }
+
+        if (replayFile != null)
+            openReplay();
+
+        //A frame every so often, spread evenly over the ticks.
+        double framesPerTick = framesPerSecond / 20.0;
+        double frameBudget = 0;
+
+        for (int tick = 0; tick < warmupTicks + ticks; tick++) {
+            if (tick == warmupTicks)
+                allStats.forEach(AvatarStats::resetRun);
+
+            //The session runs over the measured ticks, 50ms of it per tick (times the speed).
+            if (replay != null && tick >= warmupTicks) {
+                replay.feedUntil(replaySpeed > 0 ? (long) ((tick - warmupTicks + 1) * 50000L * replaySpeed) : Long.MAX_VALUE);
+                NewFiguraNetworkManager.runGameThreadTasks();
+            }
+
+            for (SimulatedPlayer player : crowd) {
+                player.tick();
+            }
+
+            frameBudget += framesPerTick;
+            int frames = (int) frameBudget;
+            frameBudget -= frames;
+
+            for (int frame = 0; frame < frames; frame++) {
+                float deltaTime = (frame + 1) / (float) frames;
+
+                for (SimulatedPlayer player : crowd) {
+                    player.render(deltaTime);
+                }
+            }
+        }
+
+        for (SimulatedPlayer player : crowd) {
+            if (player.hasScriptError())
+                player.stats.scriptErrors++;
+        }
+    }
+
+    private void openReplay() throws IOException {
+        //The handlers never use the manager, there's no connection to manage here.
+        replay = SessionReplay.open(replayFile, null);
+        replay.speed = replaySpeed;
+
+        //Senders are looked up through PlayerDataManager, so the crowd players stand in for them there.
+        Set<String> mappedFiles = new HashSet<>();
+        for (SimulatedPlayer player : crowd) {
+            if (!mappedFiles.add(player.stats.name))
+                continue;
+
+            try {
+                UUID sender = UUID.fromString(player.stats.name.substring(0, player.stats.name.length() - ".nbt".length()));
+                PlayerDataManager.LOADED_PLAYER_DATA.put(sender, player.data);
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                //Not named after a player, nobody in the session is wearing it.
+            }
+        }
+
+        replay.filter = (handler, message) -> {
+            if (!(handler instanceof ChannelMessageHandler))
+                return false;
+
+            try {
+                return PlayerDataManager.LOADED_PLAYER_DATA.containsKey(MessageHandler.readUUID(message));
+            } catch (Exception e) {
+                return false;
+            }
+        };
+
+        System.out.println("Replaying " + replay.session.frames.size() + " frames from " + replayFile + ", " + PlayerDataManager.LOADED_PLAYER_DATA.size() + " players in it have an avatar here");
+    }
+
+    public void printReport() {
+        System.out.println();
+        System.out.println("Per player, over " + ticks + " ticks at " + framesPerSecond + " fps, trusted as " + trustGroup + ":");
+        System.out.println(String.format("%-24s %8s %6s %10s %10s %10s %10s %9s %9s %9s %10s %10s",
+                "avatar", "size", "cmplx", "load ms", "tick us", "frame us", "verts", "init ins", "tick ins", "rndr ins", "cpu ms/s", "alloc MB/s"));
+
+        double totalMillisPerSecond = 0;
+        double totalMegabytesPerSecond = 0;
+
+        for (AvatarStats stats : allStats) {
+            double millisPerSecond = stats.getMillisPerSecond(framesPerSecond);
+            double megabytesPerSecond = stats.getAllocatedMegabytesPerSecond(framesPerSecond);
+            totalMillisPerSecond += millisPerSecond * stats.players;
+            totalMegabytesPerSecond += megabytesPerSecond * stats.players;
+
+            System.out.println(String.format("%-24s %8d %6d %10.2f %10.1f %10.1f %10d %9d %9d %9d %10.2f %10.2f",
+                    stats.name, stats.fileSize, stats.complexity, stats.getLoadMillis(), stats.getTickMicros(), stats.getFrameMicros(), stats.getVerticesPerFrame(),
+                    stats.getInitInstructions(), stats.getTickInstructions(), stats.getFrameInstructions(), millisPerSecond, megabytesPerSecond));
+
+            if (stats.failedLoads > 0 || stats.scriptErrors > 0)
+                System.out.println("    " + stats.failedLoads + " failed to load, " + stats.scriptErrors + " script errors");
+        }
+
+        System.out.println();
+        System.out.println(String.format("Whole crowd (%d players): %.1f ms of CPU and %.1f MB allocated per second of game time.",
+                crowd.size(), totalMillisPerSecond, totalMegabytesPerSecond));
+        System.out.println(String.format("Served %d avatars, %d bytes, from the local network stub.",
+                HeadlessEnvironment.network.requestCount.get(), HeadlessEnvironment.network.bytesServed.get()));
+
+        if (replay != null)
+            System.out.println(replay.getReport());
+    }
+}
@@ -0,0 +1,57 @@
+package net.blancworks.figura.harness;
+
+import net.blancworks.figura.Config;
+import net.blancworks.figura.FiguraMod;
+import net.blancworks.figura.lua.FiguraLuaManager;
+import net.blancworks.figura.trust.PlayerTrustManager;
+import net.blancworks.figura.trust.TrustContainer;
+import net.minecraft.text.LiteralText;
+import net.minecraft.util.Identifier;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Sets up the parts of Figura the avatars need, without the game or the loader.
+ * Config and trust come from their defaults, and the network is a LocalFiguraNetwork.
+ */
+public final class HeadlessEnvironment {
+    private static boolean initialized = false;
+
+    public static LocalFiguraNetwork network;
+
+    public static synchronized void initialize() {
+        if (initialized)
+            return;
+        initialized = true;
+
+        Config.setDefaults();
+        FiguraLuaManager.initialize();
+        PlayerTrustManager.registerPermissions();
+
+        try (InputStream presets = HeadlessEnvironment.class.getResourceAsStream("/presets.json")) {
+            if (presets == null)
+                throw new IllegalStateException("presets.json isn't on the classpath");
+            PlayerTrustManager.loadDefaultGroups(new InputStreamReader(presets, StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        network = new LocalFiguraNetwork();
+        FiguraMod.networkManager = network;
+    }
+
+    //Puts a player in a trust group, like the trust screen would. Has to be done before their avatar is loaded.
+    public static void trustPlayer(UUID id, String group) {
+        Identifier playerId = new Identifier("players", id.toString());
+        Identifier groupId = new Identifier("group", group);
+
+        if (!PlayerTrustManager.allContainers.containsKey(groupId))
+            throw new IllegalArgumentException("Unknown trust group " + group);
+
+        PlayerTrustManager.allContainers.put(playerId, new TrustContainer(playerId, new LiteralText(id.toString()), groupId));
+        PlayerTrustManager.invalidateResolvedSettings();
+    }
+}
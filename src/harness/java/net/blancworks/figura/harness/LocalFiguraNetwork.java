@@ -0,0 +1,79 @@
+package net.blancworks.figura.harness;
+
+import net.blancworks.figura.assets.AvatarContainer;
+import net.blancworks.figura.network.IFiguraNetwork;
+import net.minecraft.text.Text;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stands in for the Figura server. Serves the avatars it was given from memory, and never opens a connection.
+ */
+public class LocalFiguraNetwork implements IFiguraNetwork {
+    private final Map<UUID, byte[]> avatars = new ConcurrentHashMap<>();
+
+    public final AtomicLong requestCount = new AtomicLong();
+    public final AtomicLong bytesServed = new AtomicLong();
+
+    //Gives a player an avatar, in the same format the server sends them in.
+    public void putAvatar(UUID id, byte[] data) {
+        avatars.put(id, data);
+    }
+
+    @Override
+    public void tickNetwork() {
+    }
+
+    //Completes with the avatar NBT, or null if the player doesn't have one.
+    @Override
+    public CompletableFuture getAvatarData(UUID id) {
+        requestCount.incrementAndGet();
+
+        byte[] data = avatars.get(id);
+        if (data == null)
+            return CompletableFuture.completedFuture(null);
+
+        bytesServed.addAndGet(data.length);
+
+        try {
+            return CompletableFuture.completedFuture(AvatarContainer.read(data));
+        } catch (Exception e) {
+            CompletableFuture future = new CompletableFuture();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    @Override
+    public CompletableFuture postAvatar() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture setCurrentUserAvatar(UUID avatarID) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture deleteAvatar() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture checkAvatarHash(UUID playerID, String previousHash) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void parseKickAuthMessage(Text reason) {
+    }
+
+    @Override
+    public void onClose() {
+        avatars.clear();
+    }
+}
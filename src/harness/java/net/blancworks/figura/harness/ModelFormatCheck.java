@@ -0,0 +1,165 @@
+package net.blancworks.figura.harness;
+
+import net.blancworks.figura.assets.AvatarContainer;
+import net.blancworks.figura.assets.BinaryModelFormat;
+import net.blancworks.figura.models.CustomModel;
+import net.blancworks.figura.models.CustomModelPart;
+import net.minecraft.nbt.CompoundTag;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Checks that avatar models come out the same after going through the model NBT and through the BinaryModelFormat.
+ * <p>
+ * Each model is written both ways and read back, then compared to the original part by part:
+ * the NBT each one writes, and the vertices each part renders (indexed meshes are expanded first).
+ * Exits with 1 if any model doesn't match.
+ */
+public class ModelFormatCheck {
+    private static final String USAGE = "Usage: ModelFormatCheck <avatar file or folder>...";
+
+    public static void main(String[] args) {
+        if (args.length == 0 || args[0].equals("--help")) {
+            System.out.println(USAGE);
+            System.exit(0);
+        }
+
+        int failed = 0;
+
+        try {
+            HeadlessEnvironment.initialize();
+
+            List<Path> files = new ArrayList<>();
+            for (String arg : args) {
+                Path path = Paths.get(arg);
+
+                if (!Files.isDirectory(path)) {
+                    files.add(path);
+                    continue;
+                }
+
+                try (Stream<Path> list = Files.list(path)) {
+                    files.addAll(list.filter(file -> file.getFileName().toString().endsWith(".nbt")).sorted().collect(Collectors.toList()));
+                }
+            }
+
+            for (Path file : files) {
+                String problem;
+
+                try {
+                    problem = check(Files.readAllBytes(file));
+                } catch (Exception e) {
+                    problem = e.toString();
+                }
+
+                if (problem != null) {
+                    failed++;
+                    System.out.println("FAIL " + file.getFileName() + ": " + problem);
+                } else {
+                    System.out.println("ok   " + file.getFileName());
+                }
+            }
+
+            System.out.println((files.size() - failed) + "/" + files.size() + " models round-trip through NBT and binary");
+        } catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+        System.exit(failed > 0 ? 1 : 0);
+    }
+
+    //Returns what didn't match, or null if everything did.
+    public static String check(byte[] avatarData) throws Exception {
+        CompoundTag avatarNbt = AvatarContainer.read(avatarData);
+
+        //Whichever way the avatar was saved is the original.
+        CustomModel original = new CustomModel();
+        if (avatarNbt.contains(AvatarContainer.BINARY_MODEL_TAG))
+            original.readBinary(avatarNbt.getByteArray(AvatarContainer.BINARY_MODEL_TAG));
+        else if (avatarNbt.contains("model"))
+            original.readNbt(avatarNbt.getCompound("model"));
+        else
+            return null;
+
+        CompoundTag modelNbt = new CompoundTag();
+        original.writeNbt(modelNbt);
+
+        CustomModel fromNbt = new CustomModel();
+        fromNbt.readNbt(modelNbt.copy());
+
+        CustomModel fromBinary = new CustomModel();
+        fromBinary.readBinary(BinaryModelFormat.write(original));
+
+        String problem = compare(original, fromNbt);
+        if (problem != null)
+            return "through NBT, " + problem;
+
+        problem = compare(original, fromBinary);
+        if (problem != null)
+            return "through binary, " + problem;
+
+        return null;
+    }
+
+    private static String compare(CustomModel expected, CustomModel actual) {
+        CompoundTag expectedNbt = new CompoundTag();
+        expected.writeNbt(expectedNbt);
+        CompoundTag actualNbt = new CompoundTag();
+        actual.writeNbt(actualNbt);
+
+        if (!expectedNbt.equals(actualNbt))
+            return "the model NBT differs";
+
+        List<CustomModelPart> expectedParts = flatten(expected);
+        List<CustomModelPart> actualParts = flatten(actual);
+
+        if (expectedParts.size() != actualParts.size())
+            return expectedParts.size() + " parts became " + actualParts.size();
+
+        for (int i = 0; i < expectedParts.size(); i++) {
+            if (!Arrays.equals(getVertices(expectedParts.get(i)), getVertices(actualParts.get(i))))
+                return "the vertices of part " + expectedParts.get(i).name + " differ";
+        }
+
+        return null;
+    }
+
+    private static List<CustomModelPart> flatten(CustomModel model) {
+        List<CustomModelPart> parts = new ArrayList<>();
+        for (CustomModelPart part : model.allParts) {
+            flatten(part, parts);
+        }
+        return parts;
+    }
+
+    private static void flatten(CustomModelPart part, List<CustomModelPart> parts) {
+        parts.add(part);
+
+        for (CustomModelPart child : part.children) {
+            flatten(child, parts);
+        }
+    }
+
+    //The vertices in the order they're rendered.
+    private static float[] getVertices(CustomModelPart part) {
+        float[] vertices = new float[part.vertexCount * 8];
+
+        for (int i = 0; i < part.vertexCount; i++) {
+            int start = (part.vertexIndices != null ? part.vertexIndices[i] : i) * 8;
+
+            for (int j = 0; j < 8; j++) {
+                vertices[i * 8 + j] = part.vertexData.getFloat(start + j);
+            }
+        }
+
+        return vertices;
+    }
+}
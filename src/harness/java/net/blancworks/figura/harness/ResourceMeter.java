@@ -0,0 +1,44 @@
+package net.blancworks.figura.harness;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * CPU time and allocations of every thread in the JVM, so work handed off to the Lua threads is counted too.
+ * The simulation only runs one avatar at a time, so the difference between two samples is what that avatar cost.
+ */
+public final class ResourceMeter {
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    static {
+        THREADS.setThreadCpuTimeEnabled(true);
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    public final long cpuNanos;
+    public final long allocatedBytes;
+
+    private ResourceMeter(long cpuNanos, long allocatedBytes) {
+        this.cpuNanos = cpuNanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public static ResourceMeter sample() {
+        long[] ids = THREADS.getAllThreadIds();
+        long cpu = 0;
+        long allocated = 0;
+
+        long[] allocations = THREADS.getThreadAllocatedBytes(ids);
+        for (int i = 0; i < ids.length; i++) {
+            //-1 for threads that died in the meantime.
+            cpu += Math.max(THREADS.getThreadCpuTime(ids[i]), 0);
+            allocated += Math.max(allocations[i], 0);
+        }
+
+        return new ResourceMeter(cpu, allocated);
+    }
+
+    //What was used since the given sample. Never negative, even if a thread went away in between.
+    public ResourceMeter since(ResourceMeter start) {
+        return new ResourceMeter(Math.max(cpuNanos - start.cpuNanos, 0), Math.max(allocatedBytes - start.allocatedBytes, 0));
+    }
+}
@@ -0,0 +1,159 @@
+package net.blancworks.figura.harness;
+
+import net.blancworks.figura.FiguraMod;
+import net.blancworks.figura.PlayerData;
+import net.blancworks.figura.lua.CustomScript;
+import net.blancworks.figura.models.CustomModel;
+import net.blancworks.figura.models.FiguraTexture;
+import net.fabricmc.fabric.api.util.NbtType;
+import net.minecraft.client.render.OverlayTexture;
+import net.minecraft.client.render.entity.model.PlayerEntityModel;
+import net.minecraft.client.util.math.MatrixStack;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.util.Identifier;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One player in the crowd. Loads their avatar the way the game does, then ticks and renders it on request.
+ * <p>
+ * There's no entity, so scripts are loaded right after the NBT instead of waiting for the player to show up,
+ * and anything in a script that needs the entity fails like it would for a player that isn't in the world.
+ */
+public class SimulatedPlayer {
+    //Full brightness.
+    private static final int LIGHT = 0xF000F0;
+
+    public final UUID id;
+    public final AvatarStats stats;
+    public final PlayerData data = new PlayerData();
+
+    private final PlayerEntityModel<?> vanillaModel = new PlayerEntityModel<>(0, false);
+    private final CountingVertexConsumerProvider vertices = new CountingVertexConsumerProvider();
+
+    public SimulatedPlayer(UUID id, AvatarStats stats) {
+        this.id = id;
+        this.stats = stats;
+    }
+
+    //Returns false if the avatar couldn't be loaded.
+    public boolean load(LocalFiguraNetwork network) {
+        ResourceMeter start = ResourceMeter.sample();
+
+        try {
+            CompoundTag nbt = (CompoundTag) network.getAvatarData(id).join();
+            if (nbt == null)
+                return false;
+
+            //Everyone gets their own ID, even when they're wearing the same file.
+            nbt.putUuid("id", id);
+
+            //Textures can't be uploaded without a render thread, so they're swapped for stand-ins that are never drawn.
+            //The model still goes through every layer it would in game.
+            CompoundTag textureNbt = nbt.getCompound("texture");
+            ListTag extraTextures = nbt.getList("exTexs", NbtType.COMPOUND);
+            nbt.remove("texture");
+            nbt.remove("exTexs");
+
+            data.readNbt(nbt);
+
+            //Everything readNbt queued up is done once this is.
+            FiguraMod.doTask(() -> {}).join();
+
+            data.texture = createTexture("main", FiguraTexture.readType(textureNbt));
+            for (int i = 0; i < extraTextures.size(); i++) {
+                data.extraTextures.add(createTexture("extra" + i, FiguraTexture.readType(extraTextures.getCompound(i))));
+            }
+
+            if (data.model == null || !data.model.isDone)
+                return false;
+            stats.complexity = data.model.getRenderComplexity();
+
+            int initInstructions = 0;
+            CustomScript script = data.script;
+            if (script != null) {
+                script.load(data, script.source);
+                await(script);
+
+                if (script.isDone)
+                    initInstructions = script.scriptGlobals.running.state.bytecodes;
+                else
+                    script.loadError = true;
+            }
+
+            stats.addLoad(ResourceMeter.sample().since(start), initInstructions);
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    public void tick() {
+        CustomScript script = data.script;
+        if (script == null || !script.isDone || script.loadError)
+            return;
+
+        ResourceMeter start = ResourceMeter.sample();
+
+        //What PlayerData.tick ends up running, minus the entity check.
+        script.onTick();
+        await(script);
+
+        stats.addTick(ResourceMeter.sample().since(start), script.tickInstructionCount);
+    }
+
+    public void render(float deltaTime) {
+        CustomModel model = data.model;
+        if (model == null || !model.isDone)
+            return;
+
+        //Same as FiguraMod.setRenderingData, there's just no entity to get it from.
+        FiguraMod.currentData = data;
+        FiguraMod.deltaTime = deltaTime;
+        data.vanillaModel = vanillaModel;
+        vertices.reset();
+
+        ResourceMeter start = ResourceMeter.sample();
+
+        model.render(vanillaModel, new MatrixStack(), vertices, LIGHT, OverlayTexture.DEFAULT_UV, 1, 1, 1, 1);
+
+        //The render event runs on the script threads, it counts as part of the frame.
+        CustomScript script = data.script;
+        int instructions = 0;
+        if (script != null) {
+            await(script);
+            instructions = script.renderInstructionCount;
+        }
+
+        stats.addFrame(ResourceMeter.sample().since(start), vertices.vertexCount, instructions);
+        FiguraMod.clearRenderingData();
+    }
+
+    public boolean hasScriptError() {
+        return data.script != null && data.script.loadError;
+    }
+
+    private FiguraTexture createTexture(String name, FiguraTexture.TextureType type) {
+        FiguraTexture texture = new FiguraTexture();
+        texture.id = new Identifier("figura", "harness/" + id + "/" + name);
+        texture.type = type;
+        texture.isDone = true;
+        return texture;
+    }
+
+    //Waits for whatever the script has queued up so far.
+    private static void await(CustomScript script) {
+        CompletableFuture task = script.currTask;
+
+        try {
+            if (task != null)
+                task.join();
+        } catch (Exception e) {
+            script.loadError = true;
+            e.printStackTrace();
+        }
+    }
+}
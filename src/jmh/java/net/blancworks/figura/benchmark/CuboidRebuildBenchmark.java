@@ -0,0 +1,43 @@
+package net.blancworks.figura.benchmark;
+
+import net.blancworks.figura.models.CustomModelPartCuboid;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times CustomModelPartCuboid.rebuild, which runs for every cuboid whenever an avatar is loaded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CuboidRebuildBenchmark {
+    //A handful of different cuboids, cycled through so the branches don't all go the same way.
+    private static final int CUBOID_COUNT = 64;
+
+    private CustomModelPartCuboid[] cuboids;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(SyntheticAvatars.SEED);
+
+        cuboids = new CustomModelPartCuboid[CUBOID_COUNT];
+        for (int i = 0; i < CUBOID_COUNT; i++) {
+            cuboids[i] = SyntheticAvatars.createCuboid(random);
+        }
+    }
+
+    @Benchmark
+    public CustomModelPartCuboid rebuild() {
+        CustomModelPartCuboid cuboid = cuboids[next];
+        next = (next + 1) % CUBOID_COUNT;
+
+        cuboid.rebuild();
+        return cuboid;
+    }
+}
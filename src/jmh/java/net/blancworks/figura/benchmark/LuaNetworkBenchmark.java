@@ -0,0 +1,85 @@
+package net.blancworks.figura.benchmark;
+
+import com.google.common.io.LittleEndianDataOutputStream;
+import net.blancworks.figura.lua.api.network.LuaNetworkReadWriter;
+import org.luaj.vm2.LuaTable;
+import org.luaj.vm2.LuaValue;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times writing and reading a Lua value the way pings send them.
+ * The value is a table of numbers, booleans, strings and nested tables, about what a script syncing its state sends.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LuaNetworkBenchmark {
+    //Entries in the table that's sent.
+    @Param({"8", "64"})
+    public int entryCount;
+
+    private LuaValue value;
+    private byte[] encoded;
+    private ByteArrayOutputStream bytes;
+
+    @Setup
+    public void setup() throws Exception {
+        Random random = new Random(SyntheticAvatars.SEED);
+        value = createTable(random, entryCount, 2);
+
+        bytes = new ByteArrayOutputStream();
+        encoded = encode();
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        bytes.reset();
+
+        LittleEndianDataOutputStream stream = new LittleEndianDataOutputStream(bytes);
+        LuaNetworkReadWriter.writeLuaValue(value, stream);
+        stream.flush();
+
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public LuaValue decode() {
+        return LuaNetworkReadWriter.readLuaValue(ByteBuffer.wrap(encoded).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    private static LuaTable createTable(Random random, int size, int depth) {
+        LuaTable table = new LuaTable();
+
+        for (int i = 1; i <= size; i++) {
+            switch (random.nextInt(depth > 0 ? 5 : 4)) {
+                case 0:
+                    table.set(i, LuaValue.valueOf(random.nextInt(1000)));
+                    break;
+                case 1:
+                    //Never a whole number, those are read back as ints.
+                    table.set(i, LuaValue.valueOf(random.nextInt(1000) + 0.5));
+                    break;
+                case 2:
+                    table.set(i, LuaValue.valueOf(random.nextBoolean()));
+                    break;
+                case 3:
+                    table.set("key" + i, LuaValue.valueOf("value" + random.nextInt(1000)));
+                    break;
+                case 4:
+                    table.set(i, createTable(random, Math.max(size / 4, 1), depth - 1));
+                    break;
+            }
+        }
+
+        return table;
+    }
+}
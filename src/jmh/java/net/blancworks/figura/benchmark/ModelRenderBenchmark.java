@@ -0,0 +1,49 @@
+package net.blancworks.figura.benchmark;
+
+import net.blancworks.figura.models.CustomModel;
+import net.blancworks.figura.models.CustomModelPart;
+import net.minecraft.client.render.OverlayTexture;
+import net.minecraft.client.util.math.MatrixStack;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times CustomModelPart.render for a whole avatar, into a vertex consumer that does nothing.
+ * What's left is the matrix math and the vertex loop, which is what a frame pays for per avatar.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ModelRenderBenchmark {
+    //Number of cuboids, from a small hand-made avatar up to a very heavy one.
+    @Param({"16", "128", "1024"})
+    public int partCount;
+
+    private CustomModel model;
+    private NullVertexConsumer vertices;
+
+    @Setup
+    public void setup() {
+        model = SyntheticAvatars.createModel(partCount);
+        vertices = new NullVertexConsumer();
+    }
+
+    @Benchmark
+    public int render(Blackhole blackhole) {
+        MatrixStack matrices = new MatrixStack();
+        MatrixStack transformStack = new MatrixStack();
+        int leftToRender = Integer.MAX_VALUE;
+
+        for (CustomModelPart part : model.allParts) {
+            leftToRender = part.render(leftToRender, matrices, transformStack, vertices, 0xF000F0, OverlayTexture.DEFAULT_UV, 1);
+        }
+
+        blackhole.consume(vertices.vertexCount);
+        return leftToRender;
+    }
+}
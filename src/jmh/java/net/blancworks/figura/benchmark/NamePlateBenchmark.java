@@ -0,0 +1,75 @@
+package net.blancworks.figura.benchmark;
+
+import net.blancworks.figura.access.FiguraTextAccess;
+import net.blancworks.figura.lua.api.nameplate.NamePlateAPI;
+import net.blancworks.figura.lua.api.nameplate.NamePlateCustomization;
+import net.minecraft.text.LiteralText;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times NamePlateAPI.applyFormattingRecursive on chat lines that don't have the player's name in them.
+ * That's by far the common case, every line of chat is checked against every player with a custom nameplate.
+ * <p>
+ * Formatting a match makes new LiteralTexts, which only work with the mixins applied, so it isn't covered here.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class NamePlateBenchmark {
+    //Pieces the chat line is made of.
+    @Param({"1", "8"})
+    public int siblingCount;
+
+    private final UUID uuid = new UUID(0, SyntheticAvatars.SEED);
+    private final NamePlateCustomization customization = new NamePlateCustomization();
+
+    @Benchmark
+    public boolean applyFormattingRecursive() {
+        //Made every time, the method changes the text it's given when it does find a match.
+        BenchmarkText text = new BenchmarkText("<Someone> ");
+        for (int i = 0; i < siblingCount; i++) {
+            text.append(new BenchmarkText("hello there, this is message part " + i));
+        }
+
+        return NamePlateAPI.applyFormattingRecursive(text, uuid, "Player", customization, null);
+    }
+
+    /**
+     * A LiteralText with what the mixin would add to it.
+     */
+    private static class BenchmarkText extends LiteralText implements FiguraTextAccess {
+        private String text;
+        private boolean figura = false;
+
+        public BenchmarkText(String text) {
+            super(text);
+            this.text = text;
+        }
+
+        @Override
+        public String getRawString() {
+            return text;
+        }
+
+        @Override
+        public void figura$setText(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public void figura$setFigura(boolean bool) {
+            this.figura = bool;
+        }
+
+        @Override
+        public boolean figura$getFigura() {
+            return figura;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package net.blancworks.figura.benchmark;
+
+import net.minecraft.client.render.VertexConsumer;
+
+/**
+ * A vertex consumer that throws everything away, except for how many vertices it got.
+ * Lets us time the model code on its own, without a buffer or a GL context.
+ */
+public class NullVertexConsumer implements VertexConsumer {
+    public long vertexCount = 0;
+
+    @Override
+    public VertexConsumer vertex(double x, double y, double z) {
+        return this;
+    }
+
+    @Override
+    public VertexConsumer color(int red, int green, int blue, int alpha) {
+        return this;
+    }
+
+    @Override
+    public VertexConsumer texture(float u, float v) {
+        return this;
+    }
+
+    @Override
+    public VertexConsumer overlay(int u, int v) {
+        return this;
+    }
+
+    @Override
+    public VertexConsumer light(int u, int v) {
+        return this;
+    }
+
+    @Override
+    public VertexConsumer normal(float x, float y, float z) {
+        return this;
+    }
+
+    @Override
+    public void next() {
+        vertexCount++;
+    }
+}
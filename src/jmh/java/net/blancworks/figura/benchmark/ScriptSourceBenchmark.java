@@ -0,0 +1,63 @@
+package net.blancworks.figura.benchmark;
+
+import net.blancworks.figura.lua.CustomScript;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times CustomScript.cleanScriptSource, which strips the comments out of every script before it's sent or loaded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ScriptSourceBenchmark {
+    //Lines in the script.
+    @Param({"100", "2000"})
+    public int lineCount;
+
+    private CustomScript script;
+    private String source;
+
+    @Setup
+    public void setup() {
+        script = new CustomScript();
+        source = createScript(new Random(SyntheticAvatars.SEED), lineCount);
+    }
+
+    @Benchmark
+    public String cleanScriptSource() {
+        return script.cleanScriptSource(source);
+    }
+
+    //Code with line comments, block comments and blank lines mixed in, like a real script.
+    private static String createScript(Random random, int lines) {
+        StringBuilder builder = new StringBuilder();
+
+        for (int i = 0; i < lines; i++) {
+            switch (random.nextInt(6)) {
+                case 0:
+                    builder.append("-- comment about line ").append(i).append('\n');
+                    break;
+                case 1:
+                    builder.append("--[[ a block comment\nthat goes over two lines ]]\n");
+                    break;
+                case 2:
+                    builder.append('\n');
+                    break;
+                case 3:
+                    builder.append("local value").append(i).append(" = ").append(random.nextInt(100)).append(" -- trailing comment\n");
+                    break;
+                default:
+                    builder.append("model.part").append(i % 16).append(".setPos({0, ").append(random.nextInt(16)).append(", 0})\n");
+                    break;
+            }
+        }
+
+        return builder.toString();
+    }
+}
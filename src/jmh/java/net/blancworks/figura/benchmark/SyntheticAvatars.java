@@ -0,0 +1,81 @@
+package net.blancworks.figura.benchmark;
+
+import net.blancworks.figura.models.CuboidProperties;
+import net.blancworks.figura.models.CustomModel;
+import net.blancworks.figura.models.CustomModelPart;
+import net.blancworks.figura.models.CustomModelPartCuboid;
+import net.minecraft.client.util.math.Vector3f;
+
+import java.util.Random;
+
+/**
+ * Builds made up avatars for the benchmarks. Everything comes from a fixed seed, so every run gets the same avatars.
+ */
+public final class SyntheticAvatars {
+    public static final long SEED = 0x46494755524100L;
+
+    //Cuboids per group, about what a hand-made avatar has.
+    public static final int GROUP_SIZE = 8;
+
+    //A model with the given number of cuboids, in groups, all attached to the model (so nothing needs a player).
+    public static CustomModel createModel(int cuboidCount) {
+        Random random = new Random(SEED);
+        CustomModel model = new CustomModel();
+
+        CustomModelPart group = null;
+        for (int i = 0; i < cuboidCount; i++) {
+            if (i % GROUP_SIZE == 0) {
+                group = new CustomModelPart();
+                group.name = "group" + i / GROUP_SIZE;
+                group.parentType = CustomModelPart.ParentType.Model;
+                group.pivot = randomVector(random, 8);
+                group.rot = randomVector(random, 45);
+                model.allParts.add(group);
+            }
+
+            CustomModelPartCuboid cuboid = createCuboid(random);
+            cuboid.name = "cuboid" + i;
+            cuboid.rebuild();
+            group.children.add(cuboid);
+        }
+
+        model.sortAllParts();
+        return model;
+    }
+
+    //A cuboid with every face textured, and some rotation and inflate to keep things honest.
+    public static CustomModelPartCuboid createCuboid(Random random) {
+        CuboidProperties properties = new CuboidProperties();
+        properties.texWidth = 64;
+        properties.texHeight = 64;
+        properties.inflate = random.nextInt(4) == 0 ? 0.25f : 0;
+
+        for (int i = 0; i < 3; i++) {
+            properties.from[i] = random.nextInt(16) - 8;
+            properties.to[i] = properties.from[i] + 1 + random.nextInt(8);
+        }
+
+        for (int face = 0; face < CuboidProperties.FACES.length; face++) {
+            properties.hasFace[face] = true;
+
+            float u = random.nextInt(56);
+            float v = random.nextInt(56);
+            properties.uvs[face * 4] = u;
+            properties.uvs[face * 4 + 1] = v;
+            properties.uvs[face * 4 + 2] = u + 8;
+            properties.uvs[face * 4 + 3] = v + 8;
+            properties.rotations[face] = random.nextInt(4) * 90;
+        }
+
+        CustomModelPartCuboid cuboid = new CustomModelPartCuboid();
+        cuboid.parentType = CustomModelPart.ParentType.Model;
+        cuboid.cuboidProperties = properties.toNbt();
+        cuboid.pivot = randomVector(random, 8);
+        cuboid.rot = randomVector(random, 45);
+        return cuboid;
+    }
+
+    private static Vector3f randomVector(Random random, float range) {
+        return new Vector3f((random.nextFloat() * 2 - 1) * range, (random.nextFloat() * 2 - 1) * range, (random.nextFloat() * 2 - 1) * range);
+    }
+}
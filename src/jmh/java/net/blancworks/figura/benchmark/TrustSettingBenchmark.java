@@ -0,0 +1,66 @@
+package net.blancworks.figura.benchmark;
+
+import net.blancworks.figura.trust.PlayerTrustManager;
+import net.blancworks.figura.trust.TrustContainer;
+import net.minecraft.text.LiteralText;
+import net.minecraft.util.Identifier;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times TrustContainer.getIntSetting, which is asked for every avatar every frame.
+ * The player's container sits under a few groups and only sets some of the settings itself, so the rest come from parents.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TrustSettingBenchmark {
+    //How many groups are above the player.
+    @Param({"1", "4"})
+    public int depth;
+
+    private static final Identifier[] SETTINGS = {
+            PlayerTrustManager.MAX_COMPLEXITY_ID,
+            PlayerTrustManager.MAX_INIT_ID,
+            PlayerTrustManager.MAX_TICK_ID,
+            PlayerTrustManager.MAX_RENDER_ID,
+            PlayerTrustManager.MAX_PARTICLES_ID
+    };
+
+    private TrustContainer container;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        if (PlayerTrustManager.permissionSettings.isEmpty())
+            PlayerTrustManager.registerPermissions();
+
+        Identifier parent = null;
+        for (int i = 0; i < depth; i++) {
+            Identifier id = new Identifier("group", "benchmark" + i);
+            TrustContainer group = new TrustContainer(id, new LiteralText("benchmark" + i), parent);
+
+            //Each group sets one setting of its own.
+            group.permissionSet.put(SETTINGS[i % SETTINGS.length], PlayerTrustManager.permissionSettings.get(SETTINGS[i % SETTINGS.length]).getCopy());
+            PlayerTrustManager.allContainers.put(id, group);
+            parent = id;
+        }
+
+        Identifier id = new Identifier("players", "benchmark");
+        container = new TrustContainer(id, new LiteralText("benchmark"), parent);
+        PlayerTrustManager.allContainers.put(id, container);
+        PlayerTrustManager.invalidateResolvedSettings();
+    }
+
+    @Benchmark
+    public int getIntSetting() {
+        Identifier setting = SETTINGS[next];
+        next = (next + 1) % SETTINGS.length;
+
+        return container.getIntSetting(setting);
+    }
+}
@@ -0,0 +1,126 @@
+package net.blancworks.figura;
+
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.AbstractClientPlayerEntity;
+import net.minecraft.client.render.entity.PlayerEntityRenderer;
+import net.minecraft.client.render.entity.model.PlayerEntityModel;
+import net.minecraft.util.math.Vec3d;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides which avatars tick each client tick.
+ * Avatars are bucketed by distance to the camera, and far buckets tick less often.
+ * Avatars without an entity in the world aren't ticked at all.
+ */
+public final class AvatarTickScheduler {
+
+    //Runs the Lua side of avatar ticks. Each script still runs its own tasks in order, but different scripts run in parallel.
+    public static final ExecutorService LUA_EXECUTOR = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Figura Script Worker " + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    private static long tickCounter = 0;
+
+    public static void tick(Collection<PlayerData> allData) {
+        MinecraftClient client = MinecraftClient.getInstance();
+        if (client.world == null || client.player == null)
+            return;
+
+        tickCounter++;
+
+        for (Bucket bucket : Bucket.values()) {
+            bucket.count = 0;
+            bucket.nanos = 0;
+        }
+
+        //One pass over the world, instead of a getPlayerByUuid search per avatar.
+        Map<UUID, AbstractClientPlayerEntity> entities = new HashMap<>();
+        for (AbstractClientPlayerEntity player : client.world.getPlayers()) {
+            entities.put(player.getUuid(), player);
+        }
+
+        //Same for every avatar, so only look it up once.
+        PlayerEntityModel vanillaModel = ((PlayerEntityRenderer) client.getEntityRenderDispatcher().getRenderer(client.player)).getModel();
+        Vec3d cameraPos = client.gameRenderer.getCamera().getPos();
+
+        for (PlayerData data : allData) {
+            AbstractClientPlayerEntity entity = entities.get(data.playerId);
+
+            if (entity == null) {
+                long start = System.nanoTime();
+                data.tick(null, vanillaModel);
+                Bucket.ABSENT.add(System.nanoTime() - start);
+                continue;
+            }
+
+            Bucket bucket = Bucket.forDistance(entity.squaredDistanceTo(cameraPos));
+
+            //Offset by the UUID, so avatars in the same bucket don't all tick on the same tick.
+            if ((tickCounter + data.playerId.hashCode()) % bucket.interval != 0)
+                continue;
+
+            long start = System.nanoTime();
+            data.tick(entity, vanillaModel);
+            bucket.add(System.nanoTime() - start);
+        }
+    }
+
+    public static String getDebugString() {
+        StringBuilder builder = new StringBuilder("[FIGURA] avatar ticks");
+
+        for (Bucket bucket : Bucket.values()) {
+            builder.append(String.format(" %s : %d (%.2fms)", bucket.name().toLowerCase(), bucket.count, bucket.nanos / 1000000f));
+        }
+
+        return builder.toString();
+    }
+
+    public enum Bucket {
+        NEAR(32, 1),
+        MEDIUM(64, 2),
+        FAR(128, 5),
+        DISTANT(Double.MAX_VALUE, 10),
+        //No entity in the world, only the bookkeeping part of the tick runs.
+        ABSENT(-1, 1);
+
+        //Max distance (in blocks) for this bucket, and how many ticks pass between avatar ticks.
+        public final double maxDistanceSquared;
+        public final int interval;
+
+        //Avatars ticked last tick, and the time that took on the client thread.
+        public int count;
+        public long nanos;
+
+        Bucket(double maxDistance, int interval) {
+            this.maxDistanceSquared = maxDistance * maxDistance;
+            this.interval = interval;
+        }
+
+        private void add(long time) {
+            count++;
+            nanos += time;
+        }
+
+        public static Bucket forDistance(double distanceSquared) {
+            if (distanceSquared <= NEAR.maxDistanceSquared)
+                return NEAR;
+            if (distanceSquared <= MEDIUM.maxDistanceSquared)
+                return MEDIUM;
+            if (distanceSquared <= FAR.maxDistanceSquared)
+                return FAR;
+            return DISTANT;
+        }
+    }
+}
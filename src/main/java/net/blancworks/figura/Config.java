@@ -15,7 +15,14 @@ import java.util.Map;
 public class Config {
     public static final Map<String, ConfigEntry> entries = new HashMap<>();
 
-    private static final File file = new File(FabricLoader.getInstance().getConfigDir().resolve("figura.json").toString());
+    //Resolved when first used, so the entries can be set up without the loader.
+    private static File file;
+
+    private static File getFile() {
+        if (file == null)
+            file = FabricLoader.getInstance().getConfigDir().resolve("figura.json").toFile();
+        return file;
+    }
 
     public static void initialize() {
         setDefaults();
@@ -25,8 +32,8 @@ public class Config {
 
     public static void loadConfig() {
         try {
-            if (file.exists()) {
-                BufferedReader br = new BufferedReader(new FileReader(file));
+            if (getFile().exists()) {
+                BufferedReader br = new BufferedReader(new FileReader(getFile()));
                 JsonObject json = new JsonParser().parse(br).getAsJsonObject();
 
                 for (Map.Entry<String, ConfigEntry> entryMap : entries.entrySet()) {
@@ -72,7 +79,7 @@ public class Config {
                     config.addProperty(entry.getKey(), String.valueOf(entry.getValue().value));
             }
 
-            FileWriter fileWriter = new FileWriter(file);
+            FileWriter fileWriter = new FileWriter(getFile());
             String jsonString = config.toString().replaceAll(":",": ").replaceAll(",",",\n  ").replaceAll("\\{","{\n  ").replaceAll("}","\n}");
 
             fileWriter.write(jsonString);
@@ -105,6 +112,14 @@ public class Config {
         entries.put("ownNameTag", new ConfigEntry<>(false));
         entries.put("logOthers", new ConfigEntry<>(false));
         entries.put("emoteWheel", new ConfigEntry<>(GLFW.GLFW_KEY_B));
+        entries.put("avatarEvictSeconds", new ConfigEntry<>(60));
+        entries.put("maxAvatarMemory", new ConfigEntry<>(256));
+        entries.put("maxDormantAvatarMemory", new ConfigEntry<>(64));
+        entries.put("releaseTextureData", new ConfigEntry<>(true));
+        entries.put("profilerOverlay", new ConfigEntry<>(0, 6));
+        entries.put("metricsExport", new ConfigEntry<>(false));
+        entries.put("metricsExportInterval", new ConfigEntry<>(10));
+        entries.put("recordNetworkSessions", new ConfigEntry<>(false));
     }
 
     public static class ConfigEntry<T> {
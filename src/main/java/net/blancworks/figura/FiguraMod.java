@@ -2,13 +2,18 @@ package net.blancworks.figura;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import net.blancworks.figura.gui.FiguraTrustScreen;
 import net.blancworks.figura.lua.FiguraLuaManager;
+import net.blancworks.figura.metrics.AvatarProfiler;
+import net.blancworks.figura.metrics.MetricsExporter;
 import net.blancworks.figura.models.CustomModel;
 import net.blancworks.figura.models.CustomModelPart;
 import net.blancworks.figura.models.parsers.BlockbenchModelDeserializer;
 import net.blancworks.figura.network.FiguraNetworkManager;
 import net.blancworks.figura.network.IFiguraNetwork;
 import net.blancworks.figura.network.NewFiguraNetworkManager;
+import net.blancworks.figura.network.replay.SessionRecorder;
+import net.blancworks.figura.network.replay.SessionReplay;
 import net.blancworks.figura.trust.PlayerTrustManager;
 import net.fabricmc.api.ClientModInitializer;
 import net.fabricmc.fabric.api.client.event.lifecycle.v1.ClientLifecycleEvents;
@@ -46,6 +51,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FiguraMod implements ClientModInitializer {
 
@@ -56,7 +62,8 @@ public class FiguraMod implements ClientModInitializer {
 
     public static final Identifier FIGURA_FONT = new Identifier("figura", "default");
 
-    public static final String modVersion = FabricLoader.getInstance().getModContainer("figura").get().getMetadata().getVersion().getFriendlyString();
+    //"unknown" when running outside of the loader, like in the crowd simulation.
+    public static final String modVersion = FabricLoader.getInstance().getModContainer("figura").map(mod -> mod.getMetadata().getVersion().getFriendlyString()).orElse("unknown");
 
     public static KeyBinding emoteWheel;
 
@@ -65,6 +72,8 @@ public class FiguraMod implements ClientModInitializer {
     //This task is what's used to manage all loading requests in the whole mod.
     //If an asset is set to load, it will attach to this if it exists, or create a new one if it doesn't.
     private static CompletableFuture globalLoadTask;
+    //Tasks given to doTask that haven't finished yet.
+    private static final AtomicInteger pendingTaskCount = new AtomicInteger();
 
     private PlayerDataManager dataManagerInstance;
 
@@ -92,6 +101,7 @@ public class FiguraMod implements ClientModInitializer {
         currentPlayer = player;
         currentData = PlayerDataManager.getDataForPlayer(player.getUuid());
         currentData.vanillaModel = mdl;
+        currentData.lastRenderedTime = System.currentTimeMillis();
         FiguraMod.vertexConsumerProvider = vertexConsumerProvider;
         deltaTime = dt;
     }
@@ -146,6 +156,8 @@ public class FiguraMod implements ClientModInitializer {
         WorldRenderEvents.AFTER_ENTITIES.register(FiguraMod::renderFirstPersonWorldParts);
         ClientLifecycleEvents.CLIENT_STOPPING.register((v) -> {
             networkManager.onClose();
+            MetricsExporter.shutdown();
+            SessionRecorder.stop();
         });
         
         dataManagerInstance = new PlayerDataManager();
@@ -176,6 +188,16 @@ public class FiguraMod implements ClientModInitializer {
 
         if (networkManager != null)
             networkManager.tickNetwork();
+
+        //Vertex counting only happens while something shows it.
+        AvatarProfiler.detailed = (int) Config.entries.get("profilerOverlay").value != 0 || client.currentScreen instanceof FiguraTrustScreen;
+
+        MetricsExporter.update((boolean) Config.entries.get("metricsExport").value, (int) Config.entries.get("metricsExportInterval").value);
+        SessionRecorder.update((boolean) Config.entries.get("recordNetworkSessions").value);
+
+        //A replay given on the command line waits for a world to play into.
+        if (client.world != null)
+            SessionReplay.startFromProperties(newNetworkManager);
     }
     
     public static Path getModContentDirectory() {
@@ -193,6 +215,8 @@ public class FiguraMod implements ClientModInitializer {
     }
 
     public static CompletableFuture doTask(Runnable toRun, @Nullable Runnable onFinished) {
+        pendingTaskCount.incrementAndGet();
+
         //If the global load task doesn't exist, create it.
         if (globalLoadTask == null || globalLoadTask.isDone()) {
             globalLoadTask = CompletableFuture.runAsync(
@@ -209,9 +233,15 @@ public class FiguraMod implements ClientModInitializer {
             );
         }
 
+        //Counted down however it ends, including when it was skipped because a task before it failed.
+        globalLoadTask.whenComplete((result, error) -> pendingTaskCount.decrementAndGet());
         return globalLoadTask;
     }
 
+    public static int getPendingTaskCount() {
+        return pendingTaskCount.get();
+    }
+
     private static void runTask(Runnable toRun, @Nullable Runnable onFinished) {
         toRun.run();
 
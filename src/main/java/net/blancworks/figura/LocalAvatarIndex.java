@@ -0,0 +1,466 @@
+package net.blancworks.figura;
+
+import net.blancworks.figura.models.parsers.BlockbenchModelStreamParser;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.texture.NativeImage;
+import net.minecraft.client.texture.NativeImageBackedTexture;
+import net.minecraft.util.Identifier;
+import org.apache.commons.io.FilenameUtils;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Keeps track of the avatars in the model_files folder, so the file list doesn't have to go to the disk.
+ * The folder (and every avatar folder in it) is watched, and only the avatars that changed are looked at again.
+ * Everything is read on a single background thread, the client thread only ever reads the index.
+ */
+public final class LocalAvatarIndex {
+
+    //Biggest thumbnail we keep, in pixels.
+    public static final int THUMBNAIL_SIZE = 32;
+
+    //The avatars, by the name the file list uses for them (folder name, zip name, or legacy name with a *).
+    private static final Map<String, AvatarInfo> AVATARS = new ConcurrentHashMap<>();
+    //Avatars that changed on disk and need to be looked at again.
+    private static final Set<String> DIRTY = ConcurrentHashMap.newKeySet();
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Figura Avatar Indexer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static WatchService watchService;
+    private static final Map<WatchKey, String> WATCH_KEYS = new ConcurrentHashMap<>();
+    private static volatile boolean needsFullScan = true;
+
+    //Goes up every time the index changes.
+    private static final AtomicInteger VERSION = new AtomicInteger();
+    private static List<AvatarInfo> sortedAvatars = new ArrayList<>();
+    private static int sortedVersion = -1;
+
+    private static final AtomicInteger THUMBNAIL_COUNT = new AtomicInteger();
+
+    public static int getVersion() {
+        return VERSION.get();
+    }
+
+    @Nullable
+    public static AvatarInfo get(String name) {
+        return AVATARS.get(name);
+    }
+
+    //All the indexed avatars, valid or not, sorted by name.
+    public static List<AvatarInfo> getAvatars() {
+        int version = VERSION.get();
+
+        if (version != sortedVersion) {
+            List<AvatarInfo> avatars = new ArrayList<>(AVATARS.values());
+            avatars.sort(Comparator.comparing(info -> info.name));
+
+            sortedAvatars = avatars;
+            sortedVersion = version;
+        }
+
+        return sortedAvatars;
+    }
+
+    //Called from the client thread while the list is open. Picks up changes from the watcher, and queues a scan if needed.
+    public static void tick() {
+        if (watchService == null) {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        for (Map.Entry<WatchKey, String> entry : WATCH_KEYS.entrySet()) {
+            WatchKey key = entry.getKey();
+
+            for (WatchEvent<?> event : key.pollEvents()) {
+                //Lost some events, so we don't know what changed.
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    needsFullScan = true;
+                    continue;
+                }
+
+                //Events in the content directory name the avatar themselves, events in an avatar folder are for that folder.
+                String folder = entry.getValue();
+                DIRTY.add(folder.isEmpty() ? getAvatarName(LocalPlayerData.getContentDirectory().resolve((Path) event.context())) : folder);
+            }
+
+            if (!key.reset())
+                WATCH_KEYS.remove(key);
+        }
+
+        if (needsFullScan) {
+            needsFullScan = false;
+            DIRTY.clear();
+            EXECUTOR.execute(LocalAvatarIndex::scanAll);
+        } else if (!DIRTY.isEmpty()) {
+            List<String> names = new ArrayList<>(DIRTY);
+            DIRTY.removeAll(names);
+            EXECUTOR.execute(() -> scan(names));
+        }
+    }
+
+    //Works out the complexity of an avatar in the background, if we don't know it yet.
+    public static void requestComplexity(AvatarInfo info) {
+        if (info.complexity != -1 || !info.valid || info.complexityRequested)
+            return;
+
+        info.complexityRequested = true;
+
+        //On our own thread, so browsing the list never holds up the avatars other players are loading.
+        EXECUTOR.execute(() -> {
+            try (ModelReader model = openModel(info)) {
+                if (model == null)
+                    return;
+
+                //Meshes aren't imported, their faces are just counted.
+                info.complexity = BlockbenchModelStreamParser.parse(model.reader, -1, model.isPlayerModel, false, null).getRenderComplexity();
+                VERSION.incrementAndGet();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    //--Scanning--
+
+    private static void scanAll() {
+        Path contentDirectory = LocalPlayerData.getContentDirectory();
+
+        try {
+            Files.createDirectories(contentDirectory);
+            watch(contentDirectory, "");
+        } catch (Exception e) {
+            e.printStackTrace();
+            return;
+        }
+
+        Set<String> names = new HashSet<>();
+        try (Stream<Path> files = Files.list(contentDirectory)) {
+            files.forEach(file -> names.add(getAvatarName(file)));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return;
+        }
+
+        //Plus anything we have that isn't there anymore, so it gets removed.
+        names.addAll(AVATARS.keySet());
+
+        scan(names);
+    }
+
+    private static void scan(Collection<String> names) {
+        Path contentDirectory = LocalPlayerData.getContentDirectory();
+        boolean changed = false;
+
+        for (String name : names) {
+            AvatarInfo old = AVATARS.get(name);
+            AvatarInfo info = readAvatar(contentDirectory, name);
+
+            if (info == null) {
+                if (old != null) {
+                    AVATARS.remove(name);
+                    old.close();
+                    changed = true;
+                }
+                continue;
+            }
+
+            //Same files as before, keep what we already worked out for it.
+            if (old != null && old.lastModified == info.lastModified && old.size == info.size && old.valid == info.valid)
+                continue;
+
+            if (info.type == AvatarType.FOLDER)
+                watch(info.path, name);
+
+            AVATARS.put(name, info);
+            if (old != null)
+                old.close();
+            changed = true;
+        }
+
+        if (changed)
+            VERSION.incrementAndGet();
+    }
+
+    private static void watch(Path directory, String name) {
+        if (watchService == null || WATCH_KEYS.containsValue(name))
+            return;
+
+        try {
+            WATCH_KEYS.put(directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), name);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    //Same names the file list has always used: folders as they are, zips with the extension, and loose files with a * instead.
+    private static String getAvatarName(Path file) {
+        String name = file.getFileName().toString();
+
+        //A folder we already know about might just have been deleted, so it's not a folder anymore.
+        if (name.endsWith(".zip") || Files.isDirectory(file) || AVATARS.containsKey(name))
+            return name;
+
+        return FilenameUtils.removeExtension(name) + "*";
+    }
+
+    //Reads an avatar's info off the disk. Returns null if there's no avatar by that name.
+    @Nullable
+    private static AvatarInfo readAvatar(Path contentDirectory, String name) {
+        try {
+            if (name.endsWith("*")) {
+                String baseName = name.substring(0, name.length() - 1);
+                Path modelPath = contentDirectory.resolve(baseName + ".bbmodel");
+
+                if (!Files.exists(modelPath))
+                    return null;
+
+                AvatarInfo info = new AvatarInfo(name, baseName, AvatarType.BBMODEL, modelPath);
+                info.modelPath = modelPath;
+                info.texturePath = contentDirectory.resolve(baseName + ".png");
+                info.valid = Files.exists(info.texturePath);
+
+                for (String extension : new String[]{".bbmodel", ".png", ".lua", ".nbt"}) {
+                    info.addFile(contentDirectory.resolve(baseName + extension));
+                }
+                return info;
+            }
+
+            Path path = contentDirectory.resolve(name);
+
+            if (Files.isDirectory(path)) {
+                AvatarInfo info = new AvatarInfo(name, name, AvatarType.FOLDER, path);
+                info.modelPath = path.resolve("model.bbmodel");
+                if (!Files.exists(info.modelPath))
+                    info.modelPath = path.resolve("player_model.bbmodel");
+                info.texturePath = path.resolve("texture.png");
+                info.valid = Files.exists(info.modelPath) && Files.exists(info.texturePath);
+
+                try (Stream<Path> files = Files.list(path)) {
+                    files.forEach(info::addFile);
+                }
+                return info;
+            }
+
+            if (name.endsWith(".zip") && Files.exists(path)) {
+                AvatarInfo info = new AvatarInfo(name, FilenameUtils.removeExtension(name), AvatarType.ZIP, path);
+                info.addFile(path);
+
+                try (ZipFile zipFile = new ZipFile(path.toFile())) {
+                    boolean hasModel = zipFile.getEntry("model.bbmodel") != null || zipFile.getEntry("player_model.bbmodel") != null;
+                    boolean hasTexture = zipFile.getEntry("texture.png") != null;
+
+                    info.valid = hasModel && hasTexture;
+                } catch (Exception e) {
+                    FiguraMod.LOGGER.warn("Failed to load model " + name);
+                    e.printStackTrace();
+                }
+                return info;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private static ModelReader openModel(AvatarInfo info) throws IOException {
+        if (info.type != AvatarType.ZIP) {
+            Reader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(info.modelPath), StandardCharsets.UTF_8));
+            return new ModelReader(reader, info.modelPath.getFileName().toString().startsWith("player_"), null);
+        }
+
+        ZipFile zipFile = new ZipFile(info.path.toFile());
+        ZipEntry entry = zipFile.getEntry("model.bbmodel");
+        boolean isPlayerModel = entry == null;
+        if (entry == null)
+            entry = zipFile.getEntry("player_model.bbmodel");
+
+        if (entry == null) {
+            zipFile.close();
+            return null;
+        }
+
+        return new ModelReader(new BufferedReader(new InputStreamReader(zipFile.getInputStream(entry), StandardCharsets.UTF_8)), isPlayerModel, zipFile);
+    }
+
+    /**
+     * An avatar's model file, opened for reading. Closing it closes the zip it's in too.
+     */
+    private static class ModelReader implements Closeable {
+        public final Reader reader;
+        public final boolean isPlayerModel;
+        @Nullable
+        private final ZipFile zipFile;
+
+        public ModelReader(Reader reader, boolean isPlayerModel, @Nullable ZipFile zipFile) {
+            this.reader = reader;
+            this.isPlayerModel = isPlayerModel;
+            this.zipFile = zipFile;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                reader.close();
+            } finally {
+                if (zipFile != null)
+                    zipFile.close();
+            }
+        }
+    }
+
+    @Nullable
+    private static NativeImage readThumbnail(AvatarInfo info) throws IOException {
+        NativeImage image;
+
+        if (info.type == AvatarType.ZIP) {
+            try (ZipFile zipFile = new ZipFile(info.path.toFile())) {
+                ZipEntry entry = zipFile.getEntry("texture.png");
+                if (entry == null)
+                    return null;
+
+                try (InputStream stream = zipFile.getInputStream(entry)) {
+                    image = NativeImage.read(stream);
+                }
+            }
+        } else {
+            try (InputStream stream = Files.newInputStream(info.texturePath)) {
+                image = NativeImage.read(stream);
+            }
+        }
+
+        if (image.getWidth() <= THUMBNAIL_SIZE && image.getHeight() <= THUMBNAIL_SIZE)
+            return image;
+
+        float scale = Math.min(THUMBNAIL_SIZE / (float) image.getWidth(), THUMBNAIL_SIZE / (float) image.getHeight());
+        NativeImage thumbnail = new NativeImage(Math.max(1, (int) (image.getWidth() * scale)), Math.max(1, (int) (image.getHeight() * scale)), true);
+        image.resizeSubRectTo(0, 0, image.getWidth(), image.getHeight(), thumbnail);
+        image.close();
+
+        return thumbnail;
+    }
+
+    public enum AvatarType {
+        FOLDER,
+        ZIP,
+        BBMODEL
+    }
+
+    /**
+     * What we know about one local avatar.
+     */
+    public static class AvatarInfo {
+        //The name the file list uses for it.
+        public final String name;
+        //Lower case name without extensions, for searching.
+        public final String searchName;
+        public final AvatarType type;
+        public final Path path;
+
+        //Whether it has everything it needs to be loaded.
+        public boolean valid = false;
+        //Total size of its files, in bytes.
+        public long size = 0;
+        //Latest modification time of any of its files.
+        public long lastModified = 0;
+
+        //Render complexity, -1 until requestComplexity has worked it out.
+        public volatile int complexity = -1;
+        private volatile boolean complexityRequested = false;
+
+        private Path modelPath;
+        private Path texturePath;
+
+        private volatile NativeImage thumbnailImage;
+        private Identifier thumbnailId;
+        private boolean thumbnailRequested = false;
+        private volatile boolean closed = false;
+
+        public AvatarInfo(String name, String displayName, AvatarType type, Path path) {
+            this.name = name;
+            this.searchName = displayName.toLowerCase(Locale.ROOT);
+            this.type = type;
+            this.path = path;
+        }
+
+        private void addFile(Path file) {
+            try {
+                if (!Files.isRegularFile(file))
+                    return;
+
+                size += Files.size(file);
+                lastModified = Math.max(lastModified, Files.getLastModifiedTime(file).toMillis());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        //The texture as a small thumbnail. Render thread only, it's read in the background the first time it's asked for.
+        @Nullable
+        public Identifier getThumbnail() {
+            if (thumbnailId != null || closed || !valid)
+                return thumbnailId;
+
+            NativeImage image = thumbnailImage;
+            if (image != null) {
+                thumbnailImage = null;
+                thumbnailId = new Identifier("figura", "local_avatar_thumbnail_" + THUMBNAIL_COUNT.incrementAndGet());
+                MinecraftClient.getInstance().getTextureManager().registerTexture(thumbnailId, new NativeImageBackedTexture(image));
+                return thumbnailId;
+            }
+
+            if (!thumbnailRequested) {
+                thumbnailRequested = true;
+                EXECUTOR.execute(() -> {
+                    try {
+                        NativeImage image = readThumbnail(this);
+
+                        if (closed && image != null)
+                            image.close();
+                        else
+                            thumbnailImage = image;
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                });
+            }
+
+            return null;
+        }
+
+        //Frees the thumbnail, once this info has been replaced.
+        private void close() {
+            MinecraftClient.getInstance().execute(() -> {
+                closed = true;
+
+                if (thumbnailId != null)
+                    MinecraftClient.getInstance().getTextureManager().destroyTexture(thumbnailId);
+                thumbnailId = null;
+
+                NativeImage image = thumbnailImage;
+                thumbnailImage = null;
+                if (image != null)
+                    image.close();
+            });
+        }
+    }
+}
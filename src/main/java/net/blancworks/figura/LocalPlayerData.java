@@ -1,22 +1,27 @@
 package net.blancworks.figura;
 
 
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.common.io.CharStreams;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import net.blancworks.figura.assets.ZipAssetSource;
 import net.blancworks.figura.lua.CustomScript;
-import net.blancworks.figura.models.CustomModel;
 import net.blancworks.figura.models.FiguraTexture;
-import net.blancworks.figura.models.parsers.BlockbenchModelDeserializer;
+import net.blancworks.figura.models.SharedTextureRegistry;
+import net.blancworks.figura.models.parsers.BlockbenchModelStreamParser;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.render.entity.model.PlayerEntityModel;
+import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.util.Identifier;
+import net.minecraft.util.Util;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
-import java.sql.Date;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This is the specific class used for the LOCAL player.
@@ -24,11 +29,27 @@ import java.util.zip.ZipFile;
  * and allow for easier editing.
  */
 public class LocalPlayerData extends PlayerData {
+    //How long the avatar's files have to stop changing before we reload, editors tend to save in bursts.
+    public static final long RELOAD_DEBOUNCE_MS = 500;
+
     public String loadedName;
+    //How far along the model file is, from 0 to 1. Only below 1 while it's being read.
+    public volatile float modelLoadProgress = 1;
     private final Map<String, WatchKey> watchKeys = new Object2ObjectOpenHashMap<>();
-    private final Set<String> watchedFiles = new HashSet<>();
+    //Every file the avatar was loaded from, and what it's for.
+    private final Map<String, WatchedFile> watchedFiles = new Object2ObjectOpenHashMap<>();
+    //Files that changed, and the last time we heard about it.
+    private final Map<String, Long> pendingChanges = new Object2ObjectOpenHashMap<>();
     public static WatchService ws;
 
+    //Where each part of the loaded avatar is. Zips are always reloaded whole, so these are null for those.
+    private Path modelPath;
+    private Path playerModelPath;
+    private Path texturePath;
+    private Path scriptPath;
+    private Path extraTextureDirectory;
+    private String extraTexturePrefix;
+
     static {
         try {
             ws = FileSystems.getDefault().newWatchService();
@@ -38,11 +59,11 @@ public class LocalPlayerData extends PlayerData {
     }
 
     @Override
-    public void tick() {
+    public void tick(PlayerEntity entity, PlayerEntityModel model) {
 
         if (this.loadedName != null)
             this.lastHash = "";
-        super.tick();
+        super.tick(entity, model);
 
         this.tickFileWatchers();
     }
@@ -58,6 +79,7 @@ public class LocalPlayerData extends PlayerData {
      */
     public void loadModelFile(String fileName) {
         watchedFiles.clear();
+        pendingChanges.clear();
 
         //create root directory
         Path contentDirectory = getContentDirectory();
@@ -77,7 +99,9 @@ public class LocalPlayerData extends PlayerData {
         Path jsonPlayerPath = null;
         Path texturePath = null;
         Path scriptPath = null;
-        Path metadataPath;
+        Path metadataPath = null;
+        Path extraTextureDirectory = null;
+        String extraTexturePrefix = null;
 
         //dummy file - must be initialized
         File file = null;
@@ -95,19 +119,13 @@ public class LocalPlayerData extends PlayerData {
             texturePath = contentDirectory.resolve("texture.png");
             scriptPath = contentDirectory.resolve("script.lua");
             metadataPath = contentDirectory.resolve("metadata.nbt");
-
-            //add watchedfiles
-            watchedFiles.add(jsonPath.toString());
-            watchedFiles.add(jsonPlayerPath.toString());
-            watchedFiles.add(texturePath.toString());
-            watchedFiles.add(scriptPath.toString());
-            watchedFiles.add(metadataPath.toString());
+            extraTextureDirectory = contentDirectory;
+            extraTexturePrefix = "texture";
         }
         //zip data
         else if (isZip) {
             //add zip to watched files, even if you cant edit opened zip files, you might be able to
             file = new File(contentDirectory.resolve(fileName).toString());
-            watchedFiles.add(file.toString());
         }
         //then must be a .bbmodel *
         else {
@@ -120,30 +138,56 @@ public class LocalPlayerData extends PlayerData {
             texturePath = contentDirectory.resolve(fileName + ".png");
             scriptPath = contentDirectory.resolve(fileName + ".lua");
             metadataPath = contentDirectory.resolve(fileName + ".nbt");
-
-            //add watched files
-            watchedFiles.add(jsonPath.toString());
-            watchedFiles.add(texturePath.toString());
-            watchedFiles.add(scriptPath.toString());
-            watchedFiles.add(metadataPath.toString());
+            //Legacy support.
+            extraTextureDirectory = contentDirectory;
+            extraTexturePrefix = fileName;
 
             //add * back
             fileName += "*";
         }
 
+        this.modelPath = jsonPath;
+        this.playerModelPath = jsonPlayerPath;
+        this.texturePath = texturePath;
+        this.scriptPath = scriptPath;
+        this.extraTextureDirectory = extraTextureDirectory;
+        this.extraTexturePrefix = extraTexturePrefix;
+
+        //add watched files, with what each of them is for
+        if (!isZip) {
+            watch(jsonPath, Asset.MODEL);
+            watch(jsonPlayerPath, Asset.MODEL);
+            watch(texturePath, Asset.TEXTURE);
+            watch(scriptPath, Asset.SCRIPT);
+
+            for (FiguraTexture.TextureType textureType : FiguraTexture.EXTRA_TEXTURE_TO_RENDER_LAYER.keySet()) {
+                watch(getExtraTexturePath(textureType), Asset.EXTRA_TEXTURES);
+            }
+        }
+        //Nothing reads the metadata yet, so a change to it (or the zip) reloads everything.
+        watch(isZip ? file.toPath() : metadataPath, Asset.ALL);
+
         //check if files exists
         boolean cantLoad = !isZip && ((!Files.exists(jsonPath) && !Files.exists(jsonPlayerPath)) || !Files.exists(texturePath));
 
-        //check for zip files
+        //check for zip files, and read everything we need out of them in one go
+        Map<String, byte[]> zipEntries = null;
         if (isZip) {
-            try {
-                ZipFile zipFile = new ZipFile(file.getPath());
-
-                boolean hasModel = zipFile.getEntry("model.bbmodel") != null;
-                boolean hasPlayerModel = zipFile.getEntry("player_model.bbmodel") != null;
-                boolean hasTexture = zipFile.getEntry("texture.png") != null;
+            try (ZipAssetSource zip = new ZipAssetSource(file.toPath())) {
+                boolean hasModel = zip.has("model.bbmodel");
+                boolean hasPlayerModel = zip.has("player_model.bbmodel");
+                boolean hasTexture = zip.has("texture.png");
 
                 cantLoad = (!hasModel && !hasPlayerModel) || !hasTexture;
+
+                if (!cantLoad) {
+                    List<String> names = new ArrayList<>(Arrays.asList("model.bbmodel", "player_model.bbmodel", "texture.png", "script.lua"));
+                    for (FiguraTexture.TextureType textureType : FiguraTexture.EXTRA_TEXTURE_TO_RENDER_LAYER.keySet()) {
+                        names.add("texture" + textureType.toString() + ".png");
+                    }
+
+                    zipEntries = zip.readAll(names);
+                }
             } catch (Exception e) {
                 e.printStackTrace();
                 cantLoad = true;
@@ -167,80 +211,104 @@ public class LocalPlayerData extends PlayerData {
 
         //set loaded name
         this.loadedName = fileName;
+        setState(LoadState.LOADING);
 
+        loadModel(zipEntries);
+        loadTexture(zipEntries);
+        loadScript(zipEntries);
+        loadExtraTextures(zipEntries);
 
-        //Set up ZIP file.
-        ZipFile modelZip = null;
+        //Runs after all the load tasks above.
+        FiguraMod.doTask(() -> compareAndSetState(LoadState.LOADING, LoadState.READY));
+    }
 
-        try {
-            if (isZip)
-                modelZip = new ZipFile(file);
-        } catch (Exception e) {
-            e.printStackTrace();
+    //Reloads just the parts of the avatar that changed.
+    private void reloadAssets(Set<Asset> assets) {
+        //Zips can only be reloaded as a whole.
+        if (assets.contains(Asset.ALL) || modelPath == null) {
+            watchKeys.clear();
+
+            PlayerDataManager.lastLoadedFileName = loadedName;
+            loadModelFile(loadedName);
             return;
         }
 
-        InputStream inputStream = null;
+        setState(LoadState.LOADING);
+
+        if (assets.contains(Asset.MODEL)) {
+            loadModel(null);
+            //The script grabs the model parts when it loads, so it has to start over with the new ones.
+            assets.add(Asset.SCRIPT);
+        }
+        if (assets.contains(Asset.TEXTURE))
+            loadTexture(null);
+        if (assets.contains(Asset.EXTRA_TEXTURES))
+            loadExtraTextures(null);
+        if (assets.contains(Asset.SCRIPT))
+            loadScript(null);
+
+        FiguraMod.doTask(() -> compareAndSetState(LoadState.LOADING, LoadState.READY));
+    }
 
-        //load JSON model.
+    //Each of these loads from the entries read out of the zip if there is one, otherwise from the avatar's paths.
+    private void loadModel(@Nullable Map<String, byte[]> zipEntries) {
         try {
             //Clear current model
             this.model = null;
-            //Set up string for later
-            String modelJsonText = null;
-            
-
-            //Get input stream, either from file, or from zip.
-            if (isZip) {
-                ZipEntry modelEntry = modelZip.getEntry("model.bbmodel");
 
-                if (modelEntry == null){
-                    modelEntry = modelZip.getEntry("player_model.bbmodel");
-                    BlockbenchModelDeserializer.overrideAsPlayerModel = true;
-                }
+            //Work out where the model is now, it's streamed in the off-thread, so the whole file is never in memory.
+            boolean isPlayerModel;
+            Path modelPath = null;
 
-                inputStream = modelZip.getInputStream(modelEntry);
+            if (zipEntries != null) {
+                isPlayerModel = !zipEntries.containsKey("model.bbmodel");
             } else {
-                if (Files.exists(jsonPath)) {
-                    inputStream = new FileInputStream(jsonPath.toFile());
-                } else {
-                    inputStream = new FileInputStream(jsonPlayerPath.toFile());
-                    BlockbenchModelDeserializer.overrideAsPlayerModel = true;
-                }
+                isPlayerModel = !Files.exists(this.modelPath);
+                modelPath = isPlayerModel ? playerModelPath : this.modelPath;
             }
 
-            //Try to read from input stream
-            try (final Reader reader = new InputStreamReader(inputStream)) {
-                modelJsonText = CharStreams.toString(reader);
-            }
+            Path finalModelPath = modelPath;
+            modelLoadProgress = 0;
 
-            //Finalize string for lambda
-            String finalModelJsonText = modelJsonText;
-            //Load model from GSON in off-thread.
+            //Load model in off-thread.
             FiguraMod.doTask(() -> {
-                this.model = FiguraMod.GSON.fromJson(finalModelJsonText, CustomModel.class);
-                this.model.owner = this;
-                this.model.isDone = true;
-                FiguraMod.LOGGER.info("Model Loading Finished");
+                try {
+                    InputStream modelStream;
+                    long modelLength;
+
+                    if (zipEntries != null) {
+                        byte[] modelBytes = zipEntries.get(isPlayerModel ? "player_model.bbmodel" : "model.bbmodel");
+
+                        modelStream = new ByteArrayInputStream(modelBytes);
+                        modelLength = modelBytes.length;
+                    } else {
+                        modelStream = new FileInputStream(finalModelPath.toFile());
+                        modelLength = Files.size(finalModelPath);
+                    }
+
+                    try (Reader reader = new BufferedReader(new InputStreamReader(modelStream, StandardCharsets.UTF_8))) {
+                        this.model = BlockbenchModelStreamParser.parse(reader, modelLength, isPlayerModel, progress -> modelLoadProgress = (float) progress);
+                    }
+
+                    this.model.owner = this;
+                    this.model.isDone = true;
+                    FiguraMod.LOGGER.info("Model Loading Finished");
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    modelLoadProgress = 1;
+                }
             });
         } catch (Exception e) {
             e.printStackTrace();
         }
+    }
 
-        //Close previously used stream, regardless of what it was (zip or filestream)
-        if (inputStream != null) {
-            try {
-                inputStream.close();
-                inputStream = null;
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-
-
-        //Load texture.
+    private void loadTexture(@Nullable Map<String, byte[]> zipEntries) {
         try {
-            //Clear current texture.
+            //Clear current texture, it might be a shared one from an avatar we got from the server.
+            if (this.texture != null)
+                SharedTextureRegistry.release(this.texture);
             this.texture = null;
 
             //Generate Identifier for texture.
@@ -252,24 +320,24 @@ public class LocalPlayerData extends PlayerData {
             getTextureManager().registerTexture(id, texture);
 
             //Get input stream, either from file, or from zip.
-            if (isZip) {
-                inputStream = modelZip.getInputStream(modelZip.getEntry("texture.png"));
+            InputStream inputStream;
+            if (zipEntries != null) {
+                inputStream = new ByteArrayInputStream(zipEntries.get("texture.png"));
             } else {
                 inputStream = new FileInputStream(texturePath.toFile());
             }
 
             //Load texture (tasks are managed by the texture itself)
+            //We don't have to close the input stream for textures, they do that for us.
             texture.loadFromStream(inputStream);
         } catch (Exception e) {
             e.printStackTrace();
         }
+    }
 
-        //We don't have to close the input stream for textures, they do that for us.
-        //We'll still set it to null, tho.
-        inputStream = null;
-
+    private void loadScript(@Nullable Map<String, byte[]> zipEntries) {
+        InputStream inputStream = null;
 
-        //Load script.
         try {
             //Clear previous script.
             this.script = null;
@@ -277,12 +345,11 @@ public class LocalPlayerData extends PlayerData {
             String scriptSource = null;
 
             //Get input stream, either from file, or from zip.
-            if (isZip) {
-                //Get entry
-                ZipEntry fileEntry = modelZip.getEntry("script.lua");
+            if (zipEntries != null) {
                 //If there is an script entry
-                if (fileEntry != null)
-                    inputStream = modelZip.getInputStream(fileEntry);
+                byte[] scriptBytes = zipEntries.get("script.lua");
+                if (scriptBytes != null)
+                    inputStream = new ByteArrayInputStream(scriptBytes);
             } else if (Files.exists(scriptPath)) {
                 inputStream = new FileInputStream(scriptPath.toFile());
             }
@@ -312,40 +379,35 @@ public class LocalPlayerData extends PlayerData {
         if (inputStream != null) {
             try {
                 inputStream.close();
-                inputStream = null;
             } catch (Exception e) {
                 e.printStackTrace();
             }
         }
+    }
 
-        //Load extra textures
+    private void loadExtraTextures(@Nullable Map<String, byte[]> zipEntries) {
         try {
+            for (FiguraTexture extraTexture : extraTextures) {
+                SharedTextureRegistry.release(extraTexture);
+            }
             extraTextures.clear();
 
             for (FiguraTexture.TextureType textureType : FiguraTexture.EXTRA_TEXTURE_TO_RENDER_LAYER.keySet()) {
+                InputStream inputStream = null;
                 Path location = null;
 
                 //If this is a zip file
-                if (isZip) {
-                    //Get entry
-                    ZipEntry fileEntry = modelZip.getEntry("texture" + textureType.toString() + ".png");
+                if (zipEntries != null) {
                     //If there is an entry that matches this texture
-                    if (fileEntry != null)
-                        inputStream = modelZip.getInputStream(fileEntry);
+                    byte[] textureBytes = zipEntries.get("texture" + textureType.toString() + ".png");
+                    if (textureBytes != null)
+                        inputStream = new ByteArrayInputStream(textureBytes);
                 } else { //If this is not a zip file
+                    location = getExtraTexturePath(textureType);
 
-                    //Check for directory first
-                    if (isDirectory) {
-                        location = file.toPath().resolve("texture" + textureType.toString() + ".png");
-                    } else { //Legacy support.
-                        location = contentDirectory.resolve(fileName.substring(0, fileName.length() - 1) + textureType.toString() + ".png");
-                    }
-
-                    //If file exists at that location, make a stream for it, and set it to be watched.
-                    if (Files.exists(location)) {
+                    //If file exists at that location, make a stream for it.
+                    if (Files.exists(location))
                         inputStream = new FileInputStream(location.toFile());
-                        watchedFiles.add(location.toString());
-                    }
                 }
 
                 //If there IS a stream for this extra texture
@@ -358,28 +420,29 @@ public class LocalPlayerData extends PlayerData {
 
                     extraTextures.add(extraTexture);
 
+                    //The texture reads the whole stream, and closes it.
                     extraTexture.loadFromStream(inputStream);
                 }
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
+    }
 
-        //We don't need to close the input stream here, because if it exists, it's an extra-texture stream.
-        //We keep those open until texture loading is finished.
+    private Path getExtraTexturePath(FiguraTexture.TextureType textureType) {
+        return extraTextureDirectory.resolve(extraTexturePrefix + textureType.toString() + ".png");
+    }
 
-        //Close ZIP stream.
-        try {
-            if (isZip)
-                modelZip.close();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
+    //Starts tracking a file, its current state is read in the background so we have something to compare changes to.
+    private void watch(Path path, Asset asset) {
+        WatchedFile watchedFile = new WatchedFile(asset);
+        watchedFiles.put(path.toString(), watchedFile);
+
+        CompletableFuture.runAsync(() -> watchedFile.update(path), Util.getMainWorkerExecutor());
     }
 
     public void tickFileWatchers() {
-
-        boolean doReload = false;
+        long now = System.currentTimeMillis();
 
         for (Map.Entry<String, WatchKey> entry : watchKeys.entrySet()) {
             WatchKey key = watchKeys.get(entry.getKey());
@@ -407,11 +470,8 @@ public class LocalPlayerData extends PlayerData {
 
                 try {
 
-                    if (watchedFiles.contains(child.toString()))
-                        doReload = true;
-
-                    if (realName.equals(loadedName) && !doReload)
-                        doReload = true;
+                    if (watchedFiles.containsKey(child.toString()) || realName.equals(loadedName))
+                        pendingChanges.put(child.toString(), now);
 
                 } catch (Exception e) {
                     System.err.println(e);
@@ -419,11 +479,108 @@ public class LocalPlayerData extends PlayerData {
             }
         }
 
-        if (doReload) {
-            watchKeys.clear();
+        if (pendingChanges.isEmpty())
+            return;
 
-            PlayerDataManager.lastLoadedFileName = loadedName;
-            loadModelFile(loadedName);
+        //Wait until the files have stopped changing for a bit.
+        for (long changeTime : pendingChanges.values()) {
+            if (now - changeTime < RELOAD_DEBOUNCE_MS)
+                return;
+        }
+
+        Map<String, WatchedFile> changedFiles = new HashMap<>();
+        for (String path : pendingChanges.keySet()) {
+            WatchedFile watchedFile = watchedFiles.get(path);
+            changedFiles.put(path, watchedFile != null ? watchedFile : new WatchedFile(Asset.ALL));
+        }
+        pendingChanges.clear();
+
+        //Work out what really changed off-thread (hashing a big model takes a moment), then reload on the client thread.
+        String name = loadedName;
+        CompletableFuture.supplyAsync(() -> getChangedAssets(changedFiles), Util.getMainWorkerExecutor()).thenAcceptAsync(assets -> {
+            //A different avatar could have been loaded in the meantime.
+            if (assets.isEmpty() || !Objects.equals(name, loadedName))
+                return;
+
+            reloadAssets(assets);
+        }, MinecraftClient.getInstance());
+    }
+
+    private static Set<Asset> getChangedAssets(Map<String, WatchedFile> files) {
+        Set<Asset> assets = EnumSet.noneOf(Asset.class);
+
+        for (Map.Entry<String, WatchedFile> entry : files.entrySet()) {
+            if (entry.getValue().update(Paths.get(entry.getKey())))
+                assets.add(entry.getValue().asset);
+        }
+
+        return assets;
+    }
+
+    //Latest modification time of any of the files this avatar was loaded from.
+    public long getLastModified() {
+        long lastModified = 0;
+
+        for (String path : new ArrayList<>(watchedFiles.keySet())) {
+            lastModified = Math.max(lastModified, new File(path).lastModified());
+        }
+
+        return lastModified;
+    }
+
+    //What part of the avatar a file is for.
+    private enum Asset {
+        MODEL,
+        TEXTURE,
+        EXTRA_TEXTURES,
+        SCRIPT,
+        ALL
+    }
+
+    /**
+     * What a watched file looked like last time we checked.
+     * Saves are often just the editor touching the file, so the contents are hashed to tell if anything really changed.
+     */
+    private static class WatchedFile {
+        public final Asset asset;
+
+        private long lastModified = -1;
+        private long size = -1;
+        private HashCode hash;
+
+        public WatchedFile(Asset asset) {
+            this.asset = asset;
+        }
+
+        //Reads the file again, and returns true if it's not the same as last time.
+        public synchronized boolean update(Path path) {
+            long lastModified = -1;
+            long size = -1;
+            HashCode hash = null;
+
+            try {
+                if (Files.exists(path)) {
+                    lastModified = Files.getLastModifiedTime(path).toMillis();
+                    size = Files.size(path);
+
+                    //Same time and size, no need to hash it again.
+                    if (this.hash != null && lastModified == this.lastModified && size == this.size)
+                        return false;
+
+                    hash = Hashing.sha256().hashBytes(Files.readAllBytes(path));
+                }
+            } catch (Exception e) {
+                //Can't tell, so treat it as changed.
+                return true;
+            }
+
+            boolean changed = !Objects.equals(hash, this.hash);
+
+            this.lastModified = lastModified;
+            this.size = size;
+            this.hash = hash;
+
+            return changed;
         }
     }
 }
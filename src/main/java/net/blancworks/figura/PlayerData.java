@@ -1,34 +1,32 @@
 package net.blancworks.figura;
 
+import net.blancworks.figura.assets.AvatarContainer;
 import net.blancworks.figura.lua.CustomScript;
+import net.blancworks.figura.metrics.AvatarProfiler;
+import net.blancworks.figura.metrics.FiguraMetrics;
 import net.blancworks.figura.models.CustomModel;
+import net.blancworks.figura.models.CustomModelPart;
 import net.blancworks.figura.models.FiguraTexture;
-import net.blancworks.figura.network.NewFiguraNetworkManager;
+import net.blancworks.figura.models.SharedTextureRegistry;
 import net.blancworks.figura.trust.PlayerTrustManager;
 import net.blancworks.figura.trust.TrustContainer;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.network.AbstractClientPlayerEntity;
-import net.minecraft.client.render.entity.PlayerEntityRenderer;
 import net.minecraft.client.render.entity.model.PlayerEntityModel;
 import net.minecraft.client.texture.TextureManager;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
-import net.minecraft.nbt.NbtIo;
 import net.minecraft.nbt.Tag;
 import net.minecraft.util.Identifier;
+import org.apache.commons.io.IOUtils;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.FileOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
 
 
 /**
@@ -52,12 +50,23 @@ public class PlayerData {
     //Extra textures for the model (like emission)
     public final List<FiguraTexture> extraTextures = new ArrayList<>();
 
+    //Compressed size of each part of the avatar, for getFileSize.
+    //Parts are replaced rather than changed when the avatar reloads, so they're keyed by the part itself.
+    private final Map<Object, Integer> sectionSizes = Collections.synchronizedMap(new WeakHashMap<>());
+
     public PlayerEntity lastEntity;
     
     //The last hash code of the avatar.
     public String lastHash = "";
-    //True if the model needs to be re-loaded due to a hash mismatch.
-    public boolean isInvalidated = false;
+
+    //Render, script and network costs of this avatar, for the profiler overlay and the trust screen.
+    public final AvatarProfiler profiler = new AvatarProfiler();
+
+    //Where this player data is in its life.
+    private final AtomicReference<LoadState> state = new AtomicReference<>(LoadState.REQUESTED);
+
+    //The last time (in ms) this player was rendered, used to evict avatars nobody is looking at.
+    public volatile long lastRenderedTime = System.currentTimeMillis();
 
     private Identifier trustIdentifier;
 
@@ -67,6 +76,28 @@ public class PlayerData {
         return trustIdentifier;
     }
 
+    public LoadState getState() {
+        return state.get();
+    }
+
+    public void setState(LoadState newState) {
+        state.set(newState);
+    }
+
+    public boolean compareAndSetState(LoadState expected, LoadState newState) {
+        return state.compareAndSet(expected, newState);
+    }
+
+    //Marks the avatar as out of date (due to a hash mismatch or an update from the server), so it gets re-loaded.
+    public void invalidate() {
+        LoadState current;
+        do {
+            current = state.get();
+            if (current == LoadState.EVICTED)
+                return;
+        } while (!state.compareAndSet(current, LoadState.INVALIDATED));
+    }
+
     public static TextureManager getTextureManager() {
         if (textureManager == null)
             textureManager = MinecraftClient.getInstance().getTextureManager();
@@ -132,6 +163,8 @@ public class PlayerData {
     public void readNbt(CompoundTag nbt) {
         playerId = nbt.getUuid("id");
 
+        releaseTextures();
+
         model = null;
         texture = null;
         script = null;
@@ -141,12 +174,17 @@ public class PlayerData {
         try {
             //Create model on main thread.
             CompoundTag modelNbt = (CompoundTag) nbt.get("model");
+            byte[] binaryModel = nbt.contains(AvatarContainer.BINARY_MODEL_TAG) ? nbt.getByteArray(AvatarContainer.BINARY_MODEL_TAG) : null;
             model = new CustomModel();
 
             //Load model on off-thread.
             FiguraMod.doTask(() -> {
                 try {
-                    model.readNbt(modelNbt);
+                    //Binary models come with their vertices built, NBT ones have to be rebuilt.
+                    if (binaryModel != null)
+                        model.readBinary(binaryModel);
+                    else
+                        model.readNbt(modelNbt);
                     model.owner = this;
                     model.isDone = true;
                 } catch (Exception e) {
@@ -158,16 +196,12 @@ public class PlayerData {
         }
 
         try {
-            //Create texture on main thread
+            //Avatars with the same image share one texture, the registry decodes and uploads it off-thread.
             CompoundTag textureNbt = (CompoundTag) nbt.get("texture");
-            texture = new FiguraTexture();
-            texture.id = new Identifier("figura", playerId.toString());
-            getTextureManager().registerTexture(texture.id, texture);
+            byte[] textureData = FiguraTexture.readData(textureNbt);
 
-            //Load texture on off-thread
-            FiguraMod.doTask(() -> {
-                texture.readNbt(textureNbt);
-            });
+            if (textureData != null)
+                texture = SharedTextureRegistry.acquire(textureData, FiguraTexture.readType(textureNbt));
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -191,14 +225,11 @@ public class PlayerData {
                 ListTag textureList = (ListTag) nbt.get("exTexs");
 
                 for (Tag element : textureList) {
-                    FiguraTexture newTexture = new FiguraTexture();
-                    newTexture.id = new Identifier("figura", playerId.toString() + newTexture.type.toString());
-                    getTextureManager().registerTexture(newTexture.id, newTexture);
-                    extraTextures.add(newTexture);
-
-                    FiguraMod.doTask(() -> {
-                        newTexture.readNbt((CompoundTag) element);
-                    });
+                    CompoundTag textureNbt = (CompoundTag) element;
+                    byte[] textureData = FiguraTexture.readData(textureNbt);
+
+                    if (textureData != null)
+                        extraTextures.add(SharedTextureRegistry.acquire(textureData, FiguraTexture.readType(textureNbt)));
                 }
             }
         } catch (Exception e) {
@@ -207,35 +238,153 @@ public class PlayerData {
     }
 
     //Returns the file size, in bytes.
+    //Each part of the avatar is only compressed once to get its size, so this is cheap to call again.
+    //It's the sum of the parts compressed on their own, which is within a few bytes of the real upload.
     public int getFileSize() {
-        CompoundTag writtenNbt = new CompoundTag();
-        this.writeNbt(writtenNbt);
+        CustomModel model = this.model;
+        FiguraTexture texture = this.texture;
+        CustomScript script = this.script;
+
+        //You cannot save a model that is incomplete.
+        if (model == null || texture == null)
+            return -1;
 
         try {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            DataOutputStream w = new DataOutputStream(out);
+            int size = AvatarContainer.HEADER_SIZE;
+
+            size += getSectionSize(model, () -> {
+                CompoundTag modelNbt = new CompoundTag();
+                model.writeNbt(modelNbt);
+                return AvatarContainer.getCompressedSize(modelNbt);
+            });
+
+            if (script != null) {
+                size += getSectionSize(script, () -> {
+                    CompoundTag scriptNbt = new CompoundTag();
+                    script.toNBT(scriptNbt);
+                    return AvatarContainer.getCompressedSize(scriptNbt);
+                });
+            }
 
-            NbtIo.writeCompressed(writtenNbt, w);
+            size += getSectionSize(texture, () -> getTextureSectionSize(texture));
+            for (FiguraTexture extraTexture : extraTextures) {
+                size += getSectionSize(extraTexture, () -> getTextureSectionSize(extraTexture));
+            }
 
-            this.model.totalSize = w.size();
-            return w.size();
+            model.totalSize = size;
+            return size;
         } catch (Exception ignored) {}
 
         return -1;
     }
 
+    private int getSectionSize(Object section, SectionSizer sizer) throws Exception {
+        Integer size = sectionSizes.get(section);
+
+        if (size == null) {
+            size = sizer.getSize();
+            sectionSizes.put(section, size);
+        }
+
+        return size;
+    }
+
+    //Textures are stored as they are, PNG is already compressed.
+    private static int getTextureSectionSize(FiguraTexture texture) {
+        byte[] data = texture.getData();
+        return data != null ? AvatarContainer.SECTION_HEADER_SIZE + data.length : 0;
+    }
+
+    private interface SectionSizer {
+        int getSize() throws Exception;
+    }
+
+    //Rough estimate, in bytes, of the memory this avatar holds on to (uploaded textures, vertex data, script source).
+    //Textures count what they take up once uploaded, not their PNG bytes, which are usually released by then anyway.
+    public long getMemoryCost() {
+        long cost = 0;
+
+        if (texture != null)
+            cost += texture.uploadedBytes;
+
+        for (FiguraTexture extraTexture : extraTextures) {
+            cost += extraTexture.uploadedBytes;
+        }
+
+        if (model != null) {
+            for (CustomModelPart part : model.allParts) {
+                cost += getPartMemoryCost(part);
+            }
+        }
+
+        if (script != null && script.source != null)
+            cost += script.source.length() * 2L;
+
+        return cost;
+    }
+
+    private static long getPartMemoryCost(CustomModelPart part) {
+        long cost = part.vertexData.size() * 4L;
+        if (part.vertexIndices != null)
+            cost += part.vertexIndices.length * 4L;
+
+        for (CustomModelPart child : part.children) {
+            cost += getPartMemoryCost(child);
+        }
+
+        return cost;
+    }
+
+    //Returns this avatar in the AvatarContainer format, or null if there is nothing to save.
+    public byte[] toCompactData() {
+        CompoundTag targetTag = new CompoundTag();
+        if (!this.writeNbt(targetTag))
+            return null;
+
+        try {
+            return AvatarContainer.write(targetTag, model);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    //Frees the GPU textures, model and Lua state of this avatar. It can't be rendered after this.
+    public void releaseResources() {
+        releaseTextures();
+
+        texture = null;
+        extraTextures.clear();
+        model = null;
+        script = null;
+    }
+
+    //Lets go of our textures. Shared ones are only destroyed once no other avatar is using them.
+    public void releaseTextures() {
+        if (texture != null)
+            SharedTextureRegistry.release(texture);
+
+        for (FiguraTexture extraTexture : extraTextures) {
+            SharedTextureRegistry.release(extraTexture);
+        }
+    }
+
     //Ticks from client.
-    public void tick() {
-        if (this.isInvalidated)
+    //The scheduler already found the entity (null if the player isn't in the world) and the vanilla model for us.
+    public void tick(PlayerEntity entity, PlayerEntityModel model) {
+        if (getState() == LoadState.INVALIDATED)
             PlayerDataManager.clearPlayer(playerId);
-        vanillaModel = ((PlayerEntityRenderer) MinecraftClient.getInstance().getEntityRenderDispatcher().getRenderer(MinecraftClient.getInstance().player)).getModel();
-        lastEntity = MinecraftClient.getInstance().world.getPlayerByUuid(this.playerId);
+        vanillaModel = model;
+        lastEntity = entity;
         FiguraMod.currentPlayer = (AbstractClientPlayerEntity) lastEntity;
-        
-        NewFiguraNetworkManager.subscribe(playerId);
 
-        if (lastEntity != null) {
-            if (script != null) {
+        CustomScript script = this.script;
+        if (lastEntity != null && script != null) {
+            //Avatars loaded before their entity was around (like ones back from the dormant cache) get their script now.
+            script.loadIfWaiting(this);
+
+            //Nothing to tick until it's loaded.
+            if (script.playerData != null) {
                 try {
                     script.tick();
                 } catch (Exception e) {
@@ -246,13 +395,31 @@ public class PlayerData {
     }
 
     public void loadFromNbt(DataInputStream input) throws Exception {
-        CompoundTag nbt = NbtIo.readCompressed(input);
-        loadFromNbt(nbt);
+        byte[] data = IOUtils.toByteArray(input);
+        loadFromNbt(AvatarContainer.read(data), data.length);
     }
 
     public void loadFromNbt(CompoundTag tag) {
+        loadFromNbt(tag, -1);
+    }
+
+    //The payload size is how big the avatar was when we received it, pass -1 to work it out from the avatar itself.
+    public void loadFromNbt(CompoundTag tag, int payloadSize) {
+        setState(LoadState.LOADING);
+
+        if (payloadSize >= 0)
+            profiler.onDownloaded(payloadSize);
+        FiguraMetrics.AVATAR_LOADS.increment();
+
         this.readNbt(tag);
-        getFileSize();
+
+        if (payloadSize >= 0 && model != null)
+            model.totalSize = payloadSize;
+        else
+            getFileSize();
+
+        //Tasks run in order, so this runs once everything readNbt queued up is done.
+        FiguraMod.doTask(() -> compareAndSetState(LoadState.LOADING, LoadState.READY));
     }
 
     public TrustContainer getTrustContainer() {
@@ -263,28 +430,110 @@ public class PlayerData {
     public void saveToCache(UUID id) {
         //We run this as a task to make sure all the previous load operations are done (since those are all also tasks)
         FiguraMod.doTask(() -> {
-            Path destinationPath = FiguraMod.getModContentDirectory().resolve("cache");
-
-            String[] splitID = id.toString().split("-");
-
-            for (int i = 0; i < splitID.length; i++) {
-                if (i != splitID.length - 1)
-                    destinationPath = destinationPath.resolve(splitID[i]);
-            }
-
-            Path nbtFilePath = destinationPath.resolve(splitID[splitID.length - 1] + ".nbt");
-            Path hashFilePath = destinationPath.resolve(splitID[splitID.length - 1] + ".hsh");
+            Path nbtFilePath = getCachePath(id, ".nbt");
+            Path hashFilePath = getCachePath(id, ".hsh");
 
             try {
                 CompoundTag targetTag = new CompoundTag();
                 this.writeNbt(targetTag);
 
                 Files.createDirectories(nbtFilePath.getParent());
-                NbtIo.writeCompressed(targetTag, new FileOutputStream(nbtFilePath.toFile()));
+                Files.write(nbtFilePath, AvatarContainer.write(targetTag, model));
                 Files.write(hashFilePath, this.lastHash.getBytes(StandardCharsets.UTF_8));
+
+                //The texture bytes are on disk now, so remote avatars don't need to keep them around too.
+                if (!(this instanceof LocalPlayerData) && (boolean) Config.entries.get("releaseTextureData").value)
+                    releaseTextureData(id);
             } catch (Exception e) {
                 e.printStackTrace();
             }
         });
     }
+
+    public static Path getCachePath(UUID id, String extension) {
+        Path destinationPath = FiguraMod.getModContentDirectory().resolve("cache");
+
+        String[] splitID = id.toString().split("-");
+
+        for (int i = 0; i < splitID.length; i++) {
+            if (i != splitID.length - 1)
+                destinationPath = destinationPath.resolve(splitID[i]);
+        }
+
+        return destinationPath.resolve(splitID[splitID.length - 1] + extension);
+    }
+
+    //Lets the textures drop their bytes once they're uploaded, they get read back from the cache if needed.
+    private void releaseTextureData(UUID id) {
+        if (texture != null)
+            SharedTextureRegistry.releaseData(texture, id);
+
+        for (FiguraTexture extraTexture : extraTextures) {
+            SharedTextureRegistry.releaseData(extraTexture, id);
+        }
+    }
+
+    //Reads the bytes for a texture back out of a cached avatar.
+    //Returns null if the cache file is gone, or doesn't have that texture anymore.
+    public static byte[] readCachedTextureData(UUID id, FiguraTexture texture) {
+        Path nbtFilePath = getCachePath(id, ".nbt");
+        if (!Files.exists(nbtFilePath))
+            return null;
+
+        try {
+            byte[] fileData = Files.readAllBytes(nbtFilePath);
+
+            //Shared textures are found by their hash, straight from the raw sections.
+            List<byte[]> sections = texture.sharedKey != null ? AvatarContainer.readTextureSections(fileData) : null;
+            if (sections != null) {
+                for (byte[] data : sections) {
+                    if (texture.sharedKey.equals(SharedTextureRegistry.getKey(data, texture.type)))
+                        return data;
+                }
+
+                return null;
+            }
+
+            CompoundTag avatarNbt = AvatarContainer.read(fileData);
+
+            List<CompoundTag> textureTags = new ArrayList<>();
+            if (avatarNbt.contains("texture"))
+                textureTags.add(avatarNbt.getCompound("texture"));
+
+            if (avatarNbt.contains("exTexs")) {
+                for (Tag element : (ListTag) avatarNbt.get("exTexs")) {
+                    textureTags.add((CompoundTag) element);
+                }
+            }
+
+            for (CompoundTag textureNbt : textureTags) {
+                byte[] data = FiguraTexture.readData(textureNbt);
+                FiguraTexture.TextureType type = FiguraTexture.readType(textureNbt);
+
+                if (data == null || type != texture.type)
+                    continue;
+
+                //Shared textures might have come from someone else's avatar, make sure it's the same image.
+                if (texture.sharedKey == null || texture.sharedKey.equals(SharedTextureRegistry.getKey(data, type)))
+                    return data;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    public enum LoadState {
+        //Waiting on the network (or cache) for an avatar.
+        REQUESTED,
+        //Avatar data arrived, and is being loaded.
+        LOADING,
+        //Everything is loaded, or there was no avatar to load.
+        READY,
+        //The avatar is out of date, and will be cleared on the next tick.
+        INVALIDATED,
+        //Removed from the manager, a new PlayerData will be made next time it's asked for.
+        EVICTED
+    }
 }
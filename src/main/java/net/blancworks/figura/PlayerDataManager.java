@@ -1,6 +1,7 @@
 package net.blancworks.figura;
 
-import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import net.blancworks.figura.assets.AvatarContainer;
+import net.blancworks.figura.metrics.FiguraMetrics;
 import net.blancworks.figura.models.FiguraTexture;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.render.entity.PlayerEntityRenderer;
@@ -10,18 +11,37 @@ import java.io.FileInputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 public final class PlayerDataManager {
     public static boolean didInitLocalPlayer = false;
-    public static final Map<UUID, PlayerData> LOADED_PLAYER_DATA = new Object2ObjectOpenHashMap<>();
+    //Read from the render thread, the game thread and the network threads, so it has to be concurrent.
+    public static final Map<UUID, PlayerData> LOADED_PLAYER_DATA = new ConcurrentHashMap<>();
 
     //Players that we're currently queued up to grab data for.
-    private static final Set<UUID> SERVER_REQUESTED_PLAYERS = new HashSet<>();
-    private static final List<UUID> TO_CLEAR = new ArrayList<>();
+    //Concurrent, because requests are finished from the network threads.
+    private static final Set<UUID> SERVER_REQUESTED_PLAYERS = ConcurrentHashMap.newKeySet();
+    //Players that have been evicted, and need to be removed from the map on the next tick.
+    private static final Queue<UUID> TO_CLEAR = new ConcurrentLinkedQueue<>();
+
+    //Avatar requests made this tick. They're sent together as one batch at the start of the next tick.
+    //Requests come from scripts and network threads too, not just the game thread.
+    private static final Map<UUID, CompletableFuture<Void>> PENDING_NETWORK_REQUESTS = new ConcurrentHashMap<>();
+
+    //Compact copies of evicted avatars, so they can come back without going through the network.
+    //Access ordered, so the first entry is always the least recently used one.
+    private static final LinkedHashMap<UUID, DormantAvatar> DORMANT_AVATARS = new LinkedHashMap<>(16, 0.75f, true);
+    private static long dormantAvatarBytes = 0;
+
+    //How often, in ticks, we look for avatars to evict.
+    private static final int EVICTION_INTERVAL = 20;
+    private static int evictionCooldown = 0;
 
     //Hash checking stuff
-    public static final Queue<UUID> TO_REFRESH = new ArrayDeque<>();
-    public static final Set<UUID> TO_REFRESH_SET = new HashSet<>();
+    public static final Queue<UUID> TO_REFRESH = new ConcurrentLinkedQueue<>();
+    public static final Set<UUID> TO_REFRESH_SET = ConcurrentHashMap.newKeySet();
 
     public static LocalPlayerData localPlayer;
 
@@ -32,12 +52,10 @@ public final class PlayerDataManager {
     }
 
     public static PlayerData getDataForPlayer(UUID id) {
-        PlayerData getData;
-
-        if (TO_CLEAR.contains(id)) {
-            TO_CLEAR.remove(id);
-            LOADED_PLAYER_DATA.remove(id);
-        }
+        //Fast path, a single read from the map.
+        PlayerData getData = LOADED_PLAYER_DATA.get(id);
+        if (getData != null && getData.getState() != PlayerData.LoadState.EVICTED)
+            return getData;
 
         if (!didInitLocalPlayer) {
             if (id == MinecraftClient.getInstance().player.getUuid()) {
@@ -61,18 +79,32 @@ public final class PlayerDataManager {
         if (id == MinecraftClient.getInstance().player.getUuid())
             return localPlayer;
 
-        if (!LOADED_PLAYER_DATA.containsKey(id)) {
-            getData = new PlayerData();
-            getData.playerId = id;
+        //Missing, or evicted and waiting to be removed. Either way, start over with a fresh one.
+        //Swapped in atomically, this is called from script and network threads too, and only one of them should make the request.
+        PlayerData fresh = new PlayerData();
+        fresh.playerId = id;
+        PlayerData[] previous = new PlayerData[1];
 
-            getPlayerAvatarFromServerOrCache(id, getData);
+        getData = LOADED_PLAYER_DATA.compute(id, (key, current) -> {
+            if (current != null && current.getState() != PlayerData.LoadState.EVICTED)
+                return current;
 
-            LOADED_PLAYER_DATA.put(id, getData);
-        } else {
-            getData = LOADED_PLAYER_DATA.get(id);
-        }
+            previous[0] = current;
+            return fresh;
+        });
+
+        if (getData != fresh)
+            return getData;
+
+        if (!rehydrate(id, fresh))
+            getPlayerAvatarFromServerOrCache(id, fresh);
 
-        return getData;
+        //The evicted one might still be holding on to shared textures.
+        //Released on the load queue, so it happens after its compact copy (queued when it was evicted) is made.
+        if (previous[0] != null)
+            FiguraMod.doTask(previous[0]::releaseResources);
+
+        return fresh;
     }
 
     //Attempts to get the data for a player from the server.
@@ -82,35 +114,34 @@ public final class PlayerDataManager {
             return;
         SERVER_REQUESTED_PLAYERS.add(id);
 
-        FiguraMod.doTask(() -> {
-
-            try {
-                //TODO - Re-enable cache
-                    //Attempt to load from cache first.
-                    //attemptCacheLoad(id, targetData);
-                    //If cache load fails or is invalid, load from server.
-                    loadFromNetwork(id, targetData);
-            } catch (Exception e){
-                e.printStackTrace();
+        try {
+            //TODO - Re-enable cache
+            //Attempt to load from cache first.
+            //attemptCacheLoad(id, targetData);
+            //If cache load fails or is invalid, load from server.
+            CompletableFuture request = loadFromNetwork(id, targetData);
+
+            //The network answers requests out of order, so only allow a new request once this one is done.
+            if (request != null) {
+                request.whenComplete((result, error) -> {
+                    SERVER_REQUESTED_PLAYERS.remove(id);
+
+                    //Nothing was loaded, there's no avatar for this player.
+                    targetData.compareAndSetState(PlayerData.LoadState.REQUESTED, PlayerData.LoadState.READY);
+                });
+                return;
             }
+        } catch (Exception e){
+            e.printStackTrace();
+        }
 
-            SERVER_REQUESTED_PLAYERS.remove(id);
-        });
+        SERVER_REQUESTED_PLAYERS.remove(id);
     }
 
     //Loads the model out of the local cache, if the file for that exists.
     public static void attemptCacheLoad(UUID id, PlayerData targetData) {
-        Path destinationPath = FiguraMod.getModContentDirectory().resolve("cache");
-
-        String[] splitID = id.toString().split("-");
-
-        for (int i = 0; i < splitID.length; i++) {
-            if (i != splitID.length - 1)
-                destinationPath = destinationPath.resolve(splitID[i]);
-        }
-
-        Path nbtFilePath = destinationPath.resolve(splitID[splitID.length - 1] + ".nbt");
-        Path hashFilePath = destinationPath.resolve(splitID[splitID.length - 1] + ".hsh");
+        Path nbtFilePath = PlayerData.getCachePath(id, ".nbt");
+        Path hashFilePath = PlayerData.getCachePath(id, ".hsh");
 
         try {
             if (Files.exists(nbtFilePath) && Files.exists(hashFilePath)) {
@@ -130,11 +161,73 @@ public final class PlayerDataManager {
 
 
     //Loads the model off of the network.
-    public static void loadFromNetwork(UUID id, PlayerData targetData) {
-        FiguraMod.networkManager.getAvatarData(id);
+    //The request isn't sent right away, it's batched with every other request made this tick.
+    public static CompletableFuture loadFromNetwork(UUID id, PlayerData targetData) {
+        return PENDING_NETWORK_REQUESTS.computeIfAbsent(id, k -> {
+            targetData.profiler.onDownloadStarted();
+            return new CompletableFuture<>();
+        });
+    }
+
+    //Queues up a hash check for a player, sent along with all the others on the next tick.
+    public static void refreshAvatarHash(UUID id) {
+        if (TO_REFRESH_SET.add(id))
+            TO_REFRESH.add(id);
+    }
+
+    //Sends everything that was requested since the last tick.
+    private static void flushNetworkRequests() {
+        //Taken out one at a time, so a request made meanwhile is either sent now or left for the next tick, never lost.
+        Map<UUID, CompletableFuture<Void>> pending = new HashMap<>();
+        for (UUID id : PENDING_NETWORK_REQUESTS.keySet()) {
+            CompletableFuture<Void> future = PENDING_NETWORK_REQUESTS.remove(id);
+            if (future != null)
+                pending.put(id, future);
+        }
+
+        if (!pending.isEmpty()) {
+            try {
+                Map<UUID, CompletableFuture> requests = FiguraMod.networkManager.getAvatarDataBatch(pending.keySet());
+
+                for (Map.Entry<UUID, CompletableFuture<Void>> entry : pending.entrySet()) {
+                    CompletableFuture request = requests.get(entry.getKey());
+
+                    if (request == null) {
+                        entry.getValue().complete(null);
+                        continue;
+                    }
+
+                    request.whenComplete((result, error) -> entry.getValue().complete(null));
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+
+                for (CompletableFuture<Void> future : pending.values())
+                    future.complete(null);
+            }
+        }
+
+        List<UUID> ids = new ArrayList<>();
+        UUID id;
+        while ((id = TO_REFRESH.poll()) != null) {
+            TO_REFRESH_SET.remove(id);
+            ids.add(id);
+        }
+
+        if (!ids.isEmpty()) {
+            try {
+                FiguraMod.networkManager.checkAvatarHashes(ids);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     public static void clearPlayer(UUID id) {
+        PlayerData data = LOADED_PLAYER_DATA.get(id);
+        if (data != null)
+            data.setState(PlayerData.LoadState.EVICTED);
+
         TO_CLEAR.add(id);
 
         if (localPlayer != null) {
@@ -146,7 +239,16 @@ public final class PlayerDataManager {
     }
 
     public static void clearCache() {
+        for (PlayerData data : LOADED_PLAYER_DATA.values()) {
+            data.releaseResources();
+        }
         LOADED_PLAYER_DATA.clear();
+
+        synchronized (DORMANT_AVATARS) {
+            DORMANT_AVATARS.clear();
+            dormantAvatarBytes = 0;
+        }
+
         localPlayer = null;
         didInitLocalPlayer = false;
         lastLoadedFileName = null;
@@ -164,16 +266,148 @@ public final class PlayerDataManager {
 
     //Tick function for the client. Basically dispatches all the other functions in the mod.
     public static void tick() {
+        flushNetworkRequests();
+
         if (MinecraftClient.getInstance().world == null)
             return;
 
-        for (UUID uuid : TO_CLEAR) {
-            LOADED_PLAYER_DATA.remove(uuid);
+        if (evictionCooldown > 0) {
+            evictionCooldown--;
+        } else {
+            evictionCooldown = EVICTION_INTERVAL;
+            evictUnusedAvatars();
         }
-        TO_CLEAR.clear();
 
-        for (Map.Entry<UUID, PlayerData> entry : LOADED_PLAYER_DATA.entrySet()) {
-            entry.getValue().tick();
+        UUID uuid;
+        while ((uuid = TO_CLEAR.poll()) != null) {
+            //Only remove it if it wasn't replaced by a fresh one since.
+            LOADED_PLAYER_DATA.computeIfPresent(uuid, (id, data) -> {
+                if (data.getState() != PlayerData.LoadState.EVICTED)
+                    return data;
+
+                data.releaseResources();
+                return null;
+            });
+        }
+
+        AvatarTickScheduler.tick(LOADED_PLAYER_DATA.values());
+    }
+
+    //--Eviction--
+
+    //Evicts avatars that haven't been rendered for a while,
+    //and then the least recently rendered ones until we're under the memory limit.
+    private static void evictUnusedAvatars() {
+        long now = System.currentTimeMillis();
+        long timeout = (int) Config.entries.get("avatarEvictSeconds").value * 1000L;
+        long maxMemory = (int) Config.entries.get("maxAvatarMemory").value * 1024L * 1024L;
+
+        List<PlayerData> candidates = new ArrayList<>();
+        long totalMemory = 0;
+
+        for (PlayerData data : LOADED_PLAYER_DATA.values()) {
+            //Never evict the local player, or anything that's still loading.
+            if (data == localPlayer || data.getState() != PlayerData.LoadState.READY || data.model == null)
+                continue;
+
+            totalMemory += data.getMemoryCost();
+            candidates.add(data);
+        }
+
+        candidates.sort(Comparator.comparingLong(data -> data.lastRenderedTime));
+
+        for (PlayerData data : candidates) {
+            //Sorted oldest first, so once one is recent enough and we're under the limit, the rest are too.
+            if (now - data.lastRenderedTime <= timeout && totalMemory <= maxMemory)
+                break;
+
+            totalMemory -= data.getMemoryCost();
+            evict(data);
+        }
+    }
+
+    //Stops the avatar from being used right away, then keeps a compact copy of it and frees everything it was holding on to.
+    //Writing the copy out walks the whole model and compresses it, so that's done on the load queue.
+    private static void evict(PlayerData data) {
+        data.setState(PlayerData.LoadState.EVICTED);
+
+        FiguraMod.doTask(() -> {
+            byte[] compactData = data.toCompactData();
+
+            if (compactData != null)
+                storeDormant(data.playerId, new DormantAvatar(compactData, data.lastHash));
+
+            //Only this instance, a fresh one might have replaced it in the map since.
+            //If it was replaced, getDataForPlayer already queued the release.
+            if (LOADED_PLAYER_DATA.remove(data.playerId, data))
+                data.releaseResources();
+        });
+    }
+
+    private static void storeDormant(UUID id, DormantAvatar avatar) {
+        long maxDormantMemory = (int) Config.entries.get("maxDormantAvatarMemory").value * 1024L * 1024L;
+
+        synchronized (DORMANT_AVATARS) {
+            DormantAvatar previous = DORMANT_AVATARS.put(id, avatar);
+            if (previous != null)
+                dormantAvatarBytes -= previous.data.length;
+            dormantAvatarBytes += avatar.data.length;
+
+            //Drop the least recently used ones until we fit.
+            Iterator<DormantAvatar> iterator = DORMANT_AVATARS.values().iterator();
+            while (dormantAvatarBytes > maxDormantMemory && iterator.hasNext()) {
+                dormantAvatarBytes -= iterator.next().data.length;
+                iterator.remove();
+            }
+        }
+    }
+
+    //Loads an evicted avatar back from its compact copy. Returns false if there wasn't one.
+    private static boolean rehydrate(UUID id, PlayerData targetData) {
+        DormantAvatar avatar;
+
+        synchronized (DORMANT_AVATARS) {
+            avatar = DORMANT_AVATARS.remove(id);
+            if (avatar == null) {
+                FiguraMetrics.DORMANT_CACHE_MISSES.increment();
+                return false;
+            }
+            dormantAvatarBytes -= avatar.data.length;
+        }
+
+        FiguraMetrics.DORMANT_CACHE_HITS.increment();
+        targetData.lastHash = avatar.hash;
+
+        //Inflating and reading it back is done on the load queue, like any other avatar.
+        FiguraMod.doTask(() -> {
+            try {
+                targetData.loadFromNbt(AvatarContainer.read(avatar.data), avatar.data.length);
+            } catch (Exception e) {
+                e.printStackTrace();
+
+                //The copy is gone now, so clearing it gets it requested from the server instead.
+                targetData.invalidate();
+            }
+        });
+
+        //It might have changed while it was evicted.
+        refreshAvatarHash(id);
+        return true;
+    }
+
+    public static int getDormantAvatarCount() {
+        synchronized (DORMANT_AVATARS) {
+            return DORMANT_AVATARS.size();
+        }
+    }
+
+    private static class DormantAvatar {
+        public final byte[] data;
+        public final String hash;
+
+        public DormantAvatar(byte[] data, String hash) {
+            this.data = data;
+            this.hash = hash;
         }
     }
 
@@ -0,0 +1,201 @@
+package net.blancworks.figura.assets;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import net.blancworks.figura.models.CustomModel;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The format avatars are stored and sent in.
+ * <p>
+ * PNG data is already deflated, so running it through GZIP with the rest of the NBT only costs CPU.
+ * The container pulls the textures out of the avatar NBT and stores them as raw sections,
+ * then GZIPs only what's left (model, script, etc).
+ * <p>
+ * Layout: magic, version, section count, (length, bytes) per section, GZIP'd NBT.
+ * Plain GZIP'd NBT (the old format) is still read, it starts with the GZIP magic instead.
+ * <p>
+ * Version 2 also replaces the model NBT with the BinaryModelFormat, stored in the NBT as a byte array.
+ * Version 1 is still written when there's no model to encode, so older clients can read it.
+ */
+public class AvatarContainer {
+    public static final int MAGIC = 0x46494741; //FIGA
+    public static final byte VERSION = 2;
+
+    //Bytes taken up by the magic, version and section count, and then by the length in front of each section.
+    public static final int HEADER_SIZE = 9;
+    public static final int SECTION_HEADER_SIZE = 4;
+
+    //Tag a texture's data is moved out of, and the tag pointing to its section.
+    private static final String DATA_TAG = "img2";
+    private static final String SECTION_TAG = "imgSection";
+    //Tag the binary model goes in, in place of the model NBT.
+    public static final String BINARY_MODEL_TAG = "modelBin";
+
+    //Writes an avatar NBT into the container format, keeping the model as NBT.
+    public static byte[] write(CompoundTag avatarNbt) throws IOException {
+        return write(avatarNbt, null);
+    }
+
+    //Writes an avatar NBT into the container format.
+    //If a model is given, it's stored in the binary format instead of the model NBT.
+    public static byte[] write(CompoundTag avatarNbt, @Nullable CustomModel model) throws IOException {
+        CompoundTag stripped = avatarNbt.copy();
+        List<byte[]> sections = new ArrayList<>();
+
+        if (model != null) {
+            stripped.remove("model");
+            stripped.putByteArray(BINARY_MODEL_TAG, BinaryModelFormat.write(model));
+        }
+
+        forEachTexture(stripped, textureNbt -> {
+            if (!textureNbt.contains(DATA_TAG))
+                return;
+
+            textureNbt.putInt(SECTION_TAG, sections.size());
+            sections.add(textureNbt.getByteArray(DATA_TAG));
+            textureNbt.remove(DATA_TAG);
+        });
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+
+        out.writeInt(MAGIC);
+        out.writeByte(model != null ? VERSION : 1);
+
+        out.writeInt(sections.size());
+        for (byte[] section : sections) {
+            out.writeInt(section.length);
+            out.write(section);
+        }
+
+        NbtIo.writeCompressed(stripped, out);
+        out.close();
+
+        return baos.toByteArray();
+    }
+
+    //How many bytes a tag takes up once GZIP'd, without keeping the output around.
+    public static int getCompressedSize(CompoundTag tag) throws IOException {
+        CountingOutputStream out = new CountingOutputStream(ByteStreams.nullOutputStream());
+        NbtIo.writeCompressed(tag, out);
+
+        return (int) out.getCount();
+    }
+
+    //Writes an avatar NBT the old way, as a single GZIP'd tag.
+    public static byte[] writeLegacy(CompoundTag avatarNbt) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+
+        NbtIo.writeCompressed(avatarNbt, out);
+        out.close();
+
+        return baos.toByteArray();
+    }
+
+    //Reads an avatar NBT from either the container format or the old format.
+    public static CompoundTag read(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+        if (!isContainer(data))
+            return NbtIo.readCompressed(in);
+
+        in.readInt();
+        byte version = in.readByte();
+
+        if (version > VERSION)
+            throw new IOException("Unsupported avatar container version " + version);
+
+        int sectionCount = readCount(in, SECTION_HEADER_SIZE);
+        byte[][] sections = new byte[sectionCount][];
+
+        for (int i = 0; i < sectionCount; i++) {
+            sections[i] = new byte[readCount(in, 1)];
+            in.readFully(sections[i]);
+        }
+
+        CompoundTag avatarNbt = NbtIo.readCompressed(in);
+        in.close();
+
+        forEachTexture(avatarNbt, textureNbt -> {
+            if (!textureNbt.contains(SECTION_TAG))
+                return;
+
+            int section = textureNbt.getInt(SECTION_TAG);
+            textureNbt.remove(SECTION_TAG);
+
+            if (section >= 0 && section < sections.length)
+                textureNbt.putByteArray(DATA_TAG, sections[section]);
+        });
+
+        return avatarNbt;
+    }
+
+    //Reads just the raw texture sections of a container, without inflating the rest of it.
+    //Returns null if it's in the old format, where the textures are inside the GZIP'd NBT.
+    @Nullable
+    public static List<byte[]> readTextureSections(byte[] data) throws IOException {
+        if (!isContainer(data))
+            return null;
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        in.readInt();
+        byte version = in.readByte();
+
+        if (version > VERSION)
+            throw new IOException("Unsupported avatar container version " + version);
+
+        int sectionCount = readCount(in, SECTION_HEADER_SIZE);
+
+        List<byte[]> sections = new ArrayList<>(sectionCount);
+        for (int i = 0; i < sectionCount; i++) {
+            byte[] section = new byte[readCount(in, 1)];
+            in.readFully(section);
+            sections.add(section);
+        }
+
+        return sections;
+    }
+
+    //Avatars come from other players, so counts are checked against what's left before anything is allocated.
+    //Only works on the in-memory streams used here, where available() is everything that's left.
+    private static int readCount(DataInputStream in, int elementSize) throws IOException {
+        int count = in.readInt();
+
+        if (count < 0 || count > in.available() / elementSize)
+            throw new IOException("Bad count " + count + " in avatar container, only " + in.available() + " bytes left");
+
+        return count;
+    }
+
+    public static boolean isContainer(byte[] data) {
+        return data.length >= 5 && ((data[0] & 0xFF) << 24 | (data[1] & 0xFF) << 16 | (data[2] & 0xFF) << 8 | (data[3] & 0xFF)) == MAGIC;
+    }
+
+    private static void forEachTexture(CompoundTag avatarNbt, TextureVisitor visitor) {
+        if (avatarNbt.contains("texture"))
+            visitor.visit(avatarNbt.getCompound("texture"));
+
+        if (avatarNbt.contains("exTexs")) {
+            ListTag textureList = (ListTag) avatarNbt.get("exTexs");
+
+            for (Tag element : textureList) {
+                if (element instanceof CompoundTag)
+                    visitor.visit((CompoundTag) element);
+            }
+        }
+    }
+
+    private interface TextureVisitor {
+        void visit(CompoundTag textureNbt);
+    }
+}
@@ -0,0 +1,190 @@
+package net.blancworks.figura.assets;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import net.blancworks.figura.models.CustomModel;
+import net.blancworks.figura.models.CustomModelPart;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding for the geometry of a model, used by version 2 of the AvatarContainer instead of the model NBT.
+ * <p>
+ * Every string (names, part types, enums) is written once into a string table and referenced by index,
+ * transforms are packed floats, and each part carries its vertices already built,
+ * so they can be read straight into vertexData without running rebuild().
+ * <p>
+ * Layout: magic, version, string count, strings, root part count, parts (children follow their parent).
+ * <p>
+ * Models come from other players, so every count is checked against what's left of the data before anything is allocated,
+ * and the parts are checked so rendering them can't read past their vertices.
+ */
+public class BinaryModelFormat {
+    public static final int MAGIC = 0x4647454F; //FGEO
+    //2: meshes are indexed.
+    public static final byte VERSION = 2;
+
+    //Nobody nests parts this deep, NBT models can't go much deeper than this either.
+    public static final int MAX_PART_DEPTH = 256;
+
+    public static byte[] write(CustomModel model) throws IOException {
+        StringTable strings = new StringTable();
+
+        //Parts first, so we know every string before writing the table.
+        ByteArrayOutputStream partBytes = new ByteArrayOutputStream();
+        DataOutputStream partOut = new DataOutputStream(partBytes);
+
+        partOut.writeInt(model.allParts.size());
+        for (CustomModelPart part : model.allParts) {
+            CustomModelPart.writeToBinary(partOut, part, strings);
+        }
+        partOut.close();
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+
+        out.writeInt(strings.values.size());
+        for (String value : strings.values) {
+            out.writeUTF(value);
+        }
+
+        partBytes.writeTo(out);
+        out.close();
+
+        return baos.toByteArray();
+    }
+
+    //Reads the parts into the model. The caller still has to sort them, same as with NBT.
+    public static void read(byte[] data, CustomModel model) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+
+        if (buffer.getInt() != MAGIC)
+            throw new IOException("Not a binary model");
+
+        byte version = buffer.get();
+        if (version > VERSION)
+            throw new IOException("Unsupported binary model version " + version);
+
+        //Every string has at least its length in front of it.
+        String[] strings = new String[readCount(buffer, 2)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readUTF(buffer);
+        }
+
+        int partCount = readCount(buffer, 4);
+        for (int i = 0; i < partCount; i++) {
+            model.allParts.add(CustomModelPart.fromBinary(buffer, strings, version));
+        }
+    }
+
+    //Reads a string written by DataOutputStream.writeUTF, without wrapping the buffer in a stream.
+    private static String readUTF(ByteBuffer buffer) throws IOException {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length > buffer.remaining())
+            throw new IOException("String runs past the end of the binary model");
+
+        char[] chars = new char[length];
+        int count = 0;
+        int end = buffer.position() + length;
+
+        while (buffer.position() < end) {
+            int a = buffer.get() & 0xFF;
+
+            if (a < 0x80) {
+                chars[count++] = (char) a;
+            } else if ((a & 0xE0) == 0xC0) {
+                int b = buffer.get() & 0x3F;
+                chars[count++] = (char) (((a & 0x1F) << 6) | b);
+            } else {
+                int b = buffer.get() & 0x3F;
+                int c = buffer.get() & 0x3F;
+                chars[count++] = (char) (((a & 0x0F) << 12) | (b << 6) | c);
+            }
+        }
+
+        return new String(chars, 0, count);
+    }
+
+    //Writes floats/ints, reads them back in bulk.
+    public static void writeFloats(DataOutputStream out, float[] values, int count) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeFloat(values[i]);
+        }
+    }
+
+    public static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    public static int[] readInts(ByteBuffer buffer) throws IOException {
+        int[] values = new int[readCount(buffer, 4)];
+
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + values.length * 4);
+
+        return values;
+    }
+
+    public static float[] readFloats(ByteBuffer buffer) throws IOException {
+        float[] values = new float[readCount(buffer, 4)];
+
+        buffer.asFloatBuffer().get(values);
+        buffer.position(buffer.position() + values.length * 4);
+
+        return values;
+    }
+
+    //Reads a count of things that each take up at least elementSize bytes, making sure there's room left for that many.
+    public static int readCount(ByteBuffer buffer, int elementSize) throws IOException {
+        int count = buffer.getInt();
+
+        if (count < 0 || count > buffer.remaining() / elementSize)
+            throw new IOException("Bad count " + count + " in binary model, only " + buffer.remaining() + " bytes left");
+
+        return count;
+    }
+
+    public static String readString(ByteBuffer buffer, String[] strings) throws IOException {
+        int index = buffer.getInt();
+
+        if (index < 0 || index >= strings.length)
+            throw new IOException("Bad string index " + index + " in binary model");
+
+        return strings[index];
+    }
+
+    /**
+     * Hands out an index for every distinct string, in the order they're first seen.
+     */
+    public static class StringTable {
+        private final Object2IntOpenHashMap<String> indices = new Object2IntOpenHashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        public StringTable() {
+            indices.defaultReturnValue(-1);
+        }
+
+        public int indexOf(String value) {
+            int index = indices.getInt(value);
+
+            if (index == -1) {
+                index = values.size();
+                indices.put(value, index);
+                values.add(value);
+            }
+
+            return index;
+        }
+    }
+}
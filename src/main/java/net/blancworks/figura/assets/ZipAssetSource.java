@@ -0,0 +1,212 @@
+package net.blancworks.figura.assets;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads the files of a zipped avatar, opening the archive only once.
+ * <p>
+ * Stored (uncompressed) entries are copied straight out of a memory mapped view of the archive instead of going
+ * through an input stream. Everything is closed in close(), so use it in a try-with-resources.
+ * <p>
+ * The mapping is released in close() instead of whenever the buffer gets collected, so the zip can be replaced
+ * straight away (Windows won't let a mapped file be written to). Don't read from it after, or from other threads while it's closing.
+ */
+public class ZipAssetSource implements Closeable {
+    //Zip record signatures.
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+    private static final int LOCAL_FILE_HEADER = 0x04034b50;
+
+    private final ZipFile zipFile;
+    private final FileChannel channel;
+    //Null if the archive couldn't be mapped, then everything goes through the ZipFile.
+    private final MappedByteBuffer mapped;
+    //Where the data of each stored entry starts in the archive.
+    private final Map<String, Integer> storedOffsets = new HashMap<>();
+
+    public ZipAssetSource(Path path) throws IOException {
+        this.zipFile = new ZipFile(path.toFile());
+
+        FileChannel channel = null;
+        MappedByteBuffer mapped = null;
+
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+
+            if (channel.size() <= Integer.MAX_VALUE) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                mapped.order(ByteOrder.LITTLE_ENDIAN);
+                readStoredOffsets(mapped);
+            }
+        } catch (Exception e) {
+            //Not worth failing over, we can still read it the normal way.
+            e.printStackTrace();
+            storedOffsets.clear();
+            mapped = null;
+        }
+
+        this.channel = channel;
+        this.mapped = mapped;
+    }
+
+    public boolean has(String name) {
+        return zipFile.getEntry(name) != null;
+    }
+
+    //Reads one entry. Returns null if there's no such entry.
+    public byte[] read(String name) throws IOException {
+        ZipEntry entry = zipFile.getEntry(name);
+        if (entry == null)
+            return null;
+
+        Integer offset = storedOffsets.get(name);
+        if (offset != null && mapped != null && entry.getMethod() == ZipEntry.STORED) {
+            byte[] bytes = new byte[(int) entry.getSize()];
+
+            //Duplicated, so threads reading other entries don't move our position.
+            ByteBuffer view = mapped.duplicate();
+            view.position(offset);
+            view.get(bytes);
+
+            return bytes;
+        }
+
+        try (InputStream stream = zipFile.getInputStream(entry)) {
+            return IOUtils.toByteArray(stream);
+        }
+    }
+
+    //Reads all the given entries that exist.
+    //Done on the calling thread, this is called from the client thread and waiting on the worker pool could hold up the tick.
+    public Map<String, byte[]> readAll(Collection<String> names) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>();
+
+        for (String name : names) {
+            byte[] bytes = read(name);
+            if (bytes != null)
+                entries.put(name, bytes);
+        }
+
+        return entries;
+    }
+
+    //Finds the data of every stored entry, from the central directory. Zip64 archives aren't handled, those just aren't mapped.
+    private void readStoredOffsets(ByteBuffer buffer) throws IOException {
+        int end = findEndOfCentralDirectory(buffer);
+        if (end == -1)
+            throw new IOException("No end of central directory");
+
+        int entryCount = buffer.getShort(end + 10) & 0xFFFF;
+        int position = buffer.getInt(end + 16);
+
+        for (int i = 0; i < entryCount; i++) {
+            if (buffer.getInt(position) != CENTRAL_DIRECTORY_HEADER)
+                throw new IOException("Bad central directory header");
+
+            int method = buffer.getShort(position + 10) & 0xFFFF;
+            int nameLength = buffer.getShort(position + 28) & 0xFFFF;
+            int extraLength = buffer.getShort(position + 30) & 0xFFFF;
+            int commentLength = buffer.getShort(position + 32) & 0xFFFF;
+            int localHeader = buffer.getInt(position + 42);
+
+            if (method == ZipEntry.STORED) {
+                byte[] nameBytes = new byte[nameLength];
+                ByteBuffer view = buffer.duplicate();
+                view.position(position + 46);
+                view.get(nameBytes);
+
+                if (buffer.getInt(localHeader) != LOCAL_FILE_HEADER)
+                    throw new IOException("Bad local file header");
+
+                //The local header has its own name and extra field, which can be a different length.
+                int localNameLength = buffer.getShort(localHeader + 26) & 0xFFFF;
+                int localExtraLength = buffer.getShort(localHeader + 28) & 0xFFFF;
+
+                storedOffsets.put(new String(nameBytes, zipCharset(buffer.getShort(position + 8))), localHeader + 30 + localNameLength + localExtraLength);
+            }
+
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+    }
+
+    //Names are UTF-8 if bit 11 is set, otherwise code page 437, which ASCII names read fine as.
+    private static Charset zipCharset(short flags) {
+        return (flags & 0x800) != 0 ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1;
+    }
+
+    //The end record is at the very end, unless there's a comment after it.
+    private static int findEndOfCentralDirectory(ByteBuffer buffer) {
+        int last = buffer.limit() - 22;
+
+        for (int i = last; i >= Math.max(0, last - 0xFFFF); i--) {
+            if (buffer.getInt(i) == END_OF_CENTRAL_DIRECTORY)
+                return i;
+        }
+
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            zipFile.close();
+        } finally {
+            try {
+                if (mapped != null)
+                    unmap(mapped);
+            } finally {
+                if (channel != null)
+                    channel.close();
+            }
+        }
+    }
+
+    //There's no public way to unmap a buffer, so this goes through whatever the running Java has.
+    //If neither works the mapping is left for the garbage collector, same as before.
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            //Java 9 and up.
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return;
+        } catch (NoSuchMethodException ignored) {
+            //Java 8, below.
+        } catch (Exception e) {
+            e.printStackTrace();
+            return;
+        }
+
+        try {
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null)
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package net.blancworks.figura.gui;
+
+import net.blancworks.figura.Config;
+import net.blancworks.figura.PlayerData;
+import net.blancworks.figura.PlayerDataManager;
+import net.blancworks.figura.metrics.AvatarProfiler;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gui.DrawableHelper;
+import net.minecraft.client.network.ClientPlayNetworkHandler;
+import net.minecraft.client.network.PlayerListEntry;
+import net.minecraft.client.util.math.MatrixStack;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Table of the most expensive avatars around, drawn over the HUD while the profilerOverlay config is on.
+ * The config value picks the column it's sorted by.
+ */
+public class AvatarProfilerOverlay extends DrawableHelper {
+    private static final int MAX_ROWS = 10;
+    private static final int PADDING = 3;
+    private static final int COLUMN_SPACING = 6;
+
+    private static final String[] HEADER = {"Avatar", "Frame ms", "Tick ms", "Instr", "Verts", "Layers", "Pings s/r", "Memory", "Download"};
+
+    private final MinecraftClient client;
+
+    public AvatarProfilerOverlay(MinecraftClient client) {
+        this.client = client;
+    }
+
+    public void render(MatrixStack matrices) {
+        int sortMode = (int) Config.entries.get("profilerOverlay").value;
+        if (sortMode == 0 || client.options.debugEnabled)
+            return;
+
+        //Script threads keep writing the timings while we sort, so each key is read once up front.
+        //Sorting on live values can see them change halfway through, which breaks the sort.
+        List<SortEntry> avatars = new ArrayList<>();
+        for (PlayerData data : PlayerDataManager.LOADED_PLAYER_DATA.values()) {
+            if (data.model != null || data.script != null)
+                avatars.add(new SortEntry(data, getSortKey(data, sortMode)));
+        }
+
+        avatars.sort(Comparator.comparingDouble((SortEntry entry) -> entry.key).reversed());
+
+        List<String[]> rows = new ArrayList<>();
+        rows.add(HEADER);
+        for (int i = 0; i < Math.min(avatars.size(), MAX_ROWS); i++) {
+            rows.add(getRow(avatars.get(i).data));
+        }
+
+        //Columns are as wide as their widest cell.
+        int[] widths = new int[HEADER.length];
+        for (String[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                widths[i] = Math.max(widths[i], client.textRenderer.getWidth(row[i]));
+            }
+        }
+
+        int tableWidth = PADDING * 2 - COLUMN_SPACING;
+        for (int width : widths) {
+            tableWidth += width + COLUMN_SPACING;
+        }
+        int lineHeight = client.textRenderer.fontHeight + 1;
+
+        int x = PADDING;
+        int y = PADDING;
+        fill(matrices, x, y, x + tableWidth, y + rows.size() * lineHeight + PADDING * 2, 0x90505050);
+
+        for (int r = 0; r < rows.size(); r++) {
+            String[] row = rows.get(r);
+            int color = r == 0 ? 0xFFFFFF55 : 0xFFE0E0E0;
+            int cellX = x + PADDING;
+            int cellY = y + PADDING + r * lineHeight;
+
+            for (int i = 0; i < row.length; i++) {
+                //Names on the left, numbers on the right.
+                int offset = i == 0 ? 0 : widths[i] - client.textRenderer.getWidth(row[i]);
+                client.textRenderer.draw(matrices, row[i], cellX + offset, cellY, color);
+                cellX += widths[i] + COLUMN_SPACING;
+            }
+        }
+    }
+
+    private String[] getRow(PlayerData data) {
+        AvatarProfiler profiler = data.profiler;
+
+        String download = profiler.downloadBytes < 0 ? "-" : String.format("%.1fKB", profiler.downloadBytes / 1024.0);
+        if (profiler.downloadNanos >= 0)
+            download += String.format(" %dms", profiler.downloadNanos / 1000000);
+
+        return new String[]{
+                getName(data),
+                String.format("%.2f", profiler.getFrameMillis()),
+                String.format("%.2f", profiler.getTickMillis()),
+                String.format("%.0f", profiler.tickInstructions.getAverage() + profiler.renderInstructions.getAverage()),
+                profiler.vertices.size() == 0 ? "-" : String.format("%.0f", profiler.vertices.getAverage()),
+                profiler.layers.size() == 0 ? "-" : String.valueOf(profiler.layers.getLast()),
+                profiler.pingsSent.get() + "/" + profiler.pingsReceived.get(),
+                String.format("%.1fKB", profiler.getMemoryCost(data) / 1024.0),
+                download
+        };
+    }
+
+    private String getName(PlayerData data) {
+        ClientPlayNetworkHandler handler = client.getNetworkHandler();
+        PlayerListEntry entry = handler != null && data.playerId != null ? handler.getPlayerListEntry(data.playerId) : null;
+
+        if (entry != null)
+            return entry.getProfile().getName();
+        if (data.lastEntity != null)
+            return data.lastEntity.getEntityName();
+        return String.valueOf(data.playerId);
+    }
+
+    private static double getSortKey(PlayerData data, int sortMode) {
+        switch (sortMode) {
+            case 2:
+                return data.profiler.getTickMillis() + data.profiler.scriptRenderNanos.getAverage() / 1e6;
+            case 3:
+                return data.profiler.vertices.getAverage();
+            case 4:
+                return data.profiler.getMemoryCost(data);
+            case 5:
+                return data.profiler.downloadBytes;
+            default:
+                return data.profiler.getFrameMillis();
+        }
+    }
+
+    private static class SortEntry {
+        public final PlayerData data;
+        public final double key;
+
+        public SortEntry(PlayerData data, double key) {
+            this.data = data;
+            this.key = key;
+        }
+    }
+}
@@ -3,11 +3,13 @@ package net.blancworks.figura.gui;
 import com.mojang.blaze3d.systems.RenderSystem;
 import net.blancworks.figura.Config;
 import net.blancworks.figura.FiguraMod;
+import net.blancworks.figura.LocalAvatarIndex;
 import net.blancworks.figura.LocalPlayerData;
 import net.blancworks.figura.PlayerDataManager;
 import net.blancworks.figura.gui.widgets.CustomListWidgetState;
 import net.blancworks.figura.gui.widgets.ModelFileListWidget;
 import net.blancworks.figura.gui.widgets.TexturedButtonWidget;
+import net.blancworks.figura.models.CustomModel;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.gui.DrawableHelper;
 import net.minecraft.client.gui.screen.ConfirmChatLinkScreen;
@@ -70,6 +72,8 @@ public class FiguraGuiScreen extends Screen {
     public MutableText nameText;
     public MutableText rawNameText;
     public MutableText fileSizeText;
+    private CustomModel sizedModel;
+    private long sizedLastModified;
     public MutableText modelComplexityText;
     public MutableText scriptText;
 
@@ -230,7 +234,7 @@ public class FiguraGuiScreen extends Screen {
             if (PlayerDataManager.lastLoadedFileName != null)
                 nameText = new TranslatableText("gui.figura.name", PlayerDataManager.lastLoadedFileName.substring(0, Math.min(20, PlayerDataManager.lastLoadedFileName.length())));
             modelComplexityText = new TranslatableText("gui.figura.complexity", PlayerDataManager.localPlayer.model.getRenderComplexity());
-            FiguraMod.doTask(() -> fileSizeText = getFileSizeText());
+            updateFileSizeText();
             scriptText = getScriptText();
         }
 
@@ -250,18 +254,20 @@ public class FiguraGuiScreen extends Screen {
 
         tickCount++;
 
+        //reload model list, only if the index has something new
+        LocalAvatarIndex.tick();
+        if (modelFileList.indexVersion != LocalAvatarIndex.getVersion())
+            modelFileList.reloadFilters();
+
         if (tickCount > 20) {
             tickCount = 0;
 
-            //reload model list
-            modelFileList.reloadFilters();
-
             //reload data
             if (PlayerDataManager.localPlayer != null && PlayerDataManager.localPlayer.model != null) {
                 if (PlayerDataManager.lastLoadedFileName == null)
                     nameText = null;
                 modelComplexityText = new TranslatableText("gui.figura.complexity", PlayerDataManager.localPlayer.model.getRenderComplexity());
-                FiguraMod.doTask(() -> fileSizeText = getFileSizeText());
+                updateFileSizeText();
                 scriptText = getScriptText();
             }
         }
@@ -299,7 +305,13 @@ public class FiguraGuiScreen extends Screen {
             if (modelComplexityText != null)
                 drawTextWithShadow(matrices, MinecraftClient.getInstance().textRenderer, modelComplexityText, this.width - this.textRenderer.getWidth(modelComplexityText) - 8, currY += 12, 16777215);
             if (scriptText != null)
-                drawTextWithShadow(matrices, MinecraftClient.getInstance().textRenderer, scriptText, this.width - this.textRenderer.getWidth(scriptText) - 8, currY + 12, 16777215);
+                drawTextWithShadow(matrices, MinecraftClient.getInstance().textRenderer, scriptText, this.width - this.textRenderer.getWidth(scriptText) - 8, currY += 12, 16777215);
+
+            //model load progress, for big models
+            if (PlayerDataManager.localPlayer != null && PlayerDataManager.localPlayer.modelLoadProgress < 1) {
+                TranslatableText progressText = new TranslatableText("gui.figura.loadprogress", (int) (PlayerDataManager.localPlayer.modelLoadProgress * 100));
+                drawTextWithShadow(matrices, MinecraftClient.getInstance().textRenderer, progressText, this.width - this.textRenderer.getWidth(progressText) - 8, currY + 12, 16777215);
+            }
 
             //deprecated warning
             if (rawNameText != null && rawNameText.getString().endsWith("*"))
@@ -380,13 +392,27 @@ public class FiguraGuiScreen extends Screen {
 
             nameText = new TranslatableText("gui.figura.name", fileName.substring(0, Math.min(20, fileName.length())));
             rawNameText = new LiteralText(fileName);
-            modelComplexityText = new TranslatableText("gui.figura.complexity", PlayerDataManager.localPlayer.model.getRenderComplexity());
-            FiguraMod.doTask(() -> fileSizeText = getFileSizeText());
+            modelComplexityText = getComplexityText(fileName);
+            updateFileSizeText();
             scriptText = getScriptText();
 
         }, Util.getMainWorkerExecutor());
     }
 
+    //The loaded model's complexity if it's done loading, otherwise what the avatar index worked out for it.
+    private MutableText getComplexityText(String fileName) {
+        CustomModel model = PlayerDataManager.localPlayer.model;
+        if (model != null && model.isDone)
+            return new TranslatableText("gui.figura.complexity", model.getRenderComplexity());
+
+        LocalAvatarIndex.AvatarInfo info = LocalAvatarIndex.get(fileName);
+        if (info == null)
+            return null;
+
+        LocalAvatarIndex.requestComplexity(info);
+        return info.complexity == -1 ? null : new TranslatableText("gui.figura.complexity", info.complexity);
+    }
+
     public MutableText getScriptText() {
         MutableText fsText = new LiteralText("Script: ");
 
@@ -415,6 +441,23 @@ public class FiguraGuiScreen extends Screen {
         return fsText;
     }
 
+    //Works out the file size off-thread, but only if the files changed or another avatar was loaded since last time.
+    private void updateFileSizeText() {
+        LocalPlayerData data = PlayerDataManager.localPlayer;
+        if (data == null)
+            return;
+
+        FiguraMod.doTask(() -> {
+            long lastModified = data.getLastModified();
+            if (data.model == sizedModel && lastModified == sizedLastModified && fileSizeText != null)
+                return;
+
+            sizedModel = data.model;
+            sizedLastModified = lastModified;
+            fileSizeText = getFileSizeText();
+        });
+    }
+
     public MutableText getFileSizeText() {
         int fileSize = PlayerDataManager.localPlayer.getFileSize();
 
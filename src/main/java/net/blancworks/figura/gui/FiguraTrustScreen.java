@@ -6,6 +6,7 @@ import net.blancworks.figura.PlayerDataManager;
 import net.blancworks.figura.gui.widgets.CustomListWidgetState;
 import net.blancworks.figura.gui.widgets.PermissionListWidget;
 import net.blancworks.figura.gui.widgets.PlayerListWidget;
+import net.blancworks.figura.metrics.AvatarProfiler;
 import net.blancworks.figura.trust.PlayerTrustManager;
 import net.blancworks.figura.trust.TrustContainer;
 import net.blancworks.figura.trust.settings.PermissionSetting;
@@ -224,6 +225,22 @@ public class FiguraTrustScreen extends Screen {
                         drawTextWithShadow(matrices, textRenderer, sizeText, currX, 54, TextColor.parse("white").getRgb());
                     }
                 }
+
+                //Profiler, under the uuid
+                {
+                    AvatarProfiler profiler = data.profiler;
+                    MutableText profilerText = new TranslatableText("gui.figura.profiler",
+                            String.format("%.2f", profiler.getFrameMillis()),
+                            String.format("%.2f", profiler.getTickMillis()),
+                            String.format("%.0f", profiler.vertices.getAverage()),
+                            String.format("%.1f", profiler.getMemoryCost(data) / 1024.0)
+                    ).setStyle(Style.EMPTY.withColor(TextColor.parse("gray")));
+
+                    matrices.push();
+                    matrices.scale(0.75f, 0.75f, 0.75f);
+                    drawTextWithShadow(matrices, textRenderer, profilerText, MathHelper.floor((paneWidth + 13) / 0.75f), MathHelper.floor((43) / 0.75f), TextColor.parse("white").getRgb());
+                    matrices.pop();
+                }
             }
         }
 
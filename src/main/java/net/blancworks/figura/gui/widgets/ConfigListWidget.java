@@ -77,6 +77,21 @@ public class ConfigListWidget extends ElementListWidget<ConfigListWidget.Entry>
 
         this.addEntry(new KeyBindEntry(new TranslatableText("key.figura.emotewheel"), new TranslatableText("key.figura.tooltip.emotewheel"), Config.entries.get("emoteWheel"), FiguraMod.emoteWheel));
 
+        this.addEntry(new InputEntry(new TranslatableText("gui.figura.config.avatarevictseconds"), new TranslatableText("gui.figura.config.tooltip.avatarevictseconds"), Config.entries.get("avatarEvictSeconds"), INT));
+        this.addEntry(new InputEntry(new TranslatableText("gui.figura.config.maxavatarmemory"), new TranslatableText("gui.figura.config.tooltip.maxavatarmemory"), Config.entries.get("maxAvatarMemory"), INT));
+        this.addEntry(new InputEntry(new TranslatableText("gui.figura.config.maxdormantavatarmemory"), new TranslatableText("gui.figura.config.tooltip.maxdormantavatarmemory"), Config.entries.get("maxDormantAvatarMemory"), INT));
+        this.addEntry(new ConfigListWidget.BooleanEntry(new TranslatableText("gui.figura.config.releasetexturedata"), new TranslatableText("gui.figura.config.tooltip.releasetexturedata"), Config.entries.get("releaseTextureData")));
+
+        List<Text> profilerOverlayEntries = Arrays.asList(
+                new TranslatableText("gui.figura.config.profileroverlay.off"),
+                new TranslatableText("gui.figura.config.profileroverlay.render"),
+                new TranslatableText("gui.figura.config.profileroverlay.script"),
+                new TranslatableText("gui.figura.config.profileroverlay.vertices"),
+                new TranslatableText("gui.figura.config.profileroverlay.memory"),
+                new TranslatableText("gui.figura.config.profileroverlay.download")
+        );
+        this.addEntry(new EnumEntry(new TranslatableText("gui.figura.config.profileroverlay"), new TranslatableText("gui.figura.config.tooltip.profileroverlay"), Config.entries.get("profilerOverlay"), profilerOverlayEntries));
+
         //category title
         this.addEntry(new ConfigListWidget.CategoryEntry(new TranslatableText("gui.figura.config.dev").formatted(Formatting.RED)));
 
@@ -85,6 +100,9 @@ public class ConfigListWidget extends ElementListWidget<ConfigListWidget.Entry>
         this.addEntry(new ConfigListWidget.BooleanEntry(new TranslatableText("gui.figura.config.uselocalserver"), new TranslatableText("gui.figura.config.tooltip.uselocalserver"), Config.entries.get("useLocalServer")));
         this.addEntry(new ConfigListWidget.BooleanEntry(new TranslatableText("gui.figura.config.logothers"), new TranslatableText("gui.figura.config.tooltip.logothers"), Config.entries.get("logOthers")));
         this.addEntry(new ConfigListWidget.BooleanEntry(new TranslatableText("gui.figura.config.ownnametag"), new TranslatableText("gui.figura.config.tooltip.ownnametag"), Config.entries.get("ownNameTag")));
+        this.addEntry(new ConfigListWidget.BooleanEntry(new TranslatableText("gui.figura.config.metricsexport"), new TranslatableText("gui.figura.config.tooltip.metricsexport"), Config.entries.get("metricsExport")));
+        this.addEntry(new InputEntry(new TranslatableText("gui.figura.config.metricsexportinterval"), new TranslatableText("gui.figura.config.tooltip.metricsexportinterval"), Config.entries.get("metricsExportInterval"), INT));
+        this.addEntry(new ConfigListWidget.BooleanEntry(new TranslatableText("gui.figura.config.recordnetworksessions"), new TranslatableText("gui.figura.config.tooltip.recordnetworksessions"), Config.entries.get("recordNetworkSessions")));
         }
 
     @Override
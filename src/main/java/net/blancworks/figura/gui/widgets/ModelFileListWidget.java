@@ -1,19 +1,18 @@
 package net.blancworks.figura.gui.widgets;
 
-import net.blancworks.figura.FiguraMod;
-import net.blancworks.figura.LocalPlayerData;
+import net.blancworks.figura.LocalAvatarIndex;
 import net.blancworks.figura.gui.FiguraGuiScreen;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gui.DrawableHelper;
 import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.client.gui.widget.TextFieldWidget;
 import net.minecraft.client.network.PlayerListEntry;
+import net.minecraft.client.util.math.MatrixStack;
 import net.minecraft.text.LiteralText;
 import net.minecraft.text.Text;
-import org.apache.commons.io.FilenameUtils;
+import net.minecraft.util.Identifier;
 
-import java.io.File;
-import java.nio.file.Files;
-import java.util.zip.ZipFile;
+import java.util.Locale;
 
 public class ModelFileListWidget extends CustomListWidget<PlayerListEntry, ModelFileListWidget.ModelFileListWidgetEntry> {
 
@@ -21,51 +20,22 @@ public class ModelFileListWidget extends CustomListWidget<PlayerListEntry, Model
         super(client, width, height, y1, y2, entryHeight, searchBox, list, parent, state);
     }
 
+    //The index version the list was last filtered with.
+    public int indexVersion = -1;
+
     @Override
     protected void doFiltering(String searchTerm) {
         super.doFiltering(searchTerm);
 
-        File contentDirectory = LocalPlayerData.getContentDirectory().toFile();
-
-        try {
-            Files.createDirectories(contentDirectory.toPath());
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        File[] files = contentDirectory.listFiles();
-
-        for (File file : files) {
-            //get file name
-            String fileName = FilenameUtils.removeExtension(file.getName());
+        indexVersion = LocalAvatarIndex.getVersion();
+        String search = searchTerm.toLowerCase(Locale.ROOT);
 
+        for (LocalAvatarIndex.AvatarInfo info : LocalAvatarIndex.getAvatars()) {
             //skip files
-            if (!fileName.toLowerCase().contains(searchTerm.toLowerCase()))
+            if (!info.valid || !info.searchName.contains(search))
                 continue;
 
-            //if directory
-            if (file.isDirectory() && (Files.exists(file.toPath().resolve("model.bbmodel")) ||Files.exists(file.toPath().resolve("player_model.bbmodel"))) && Files.exists(file.toPath().resolve("texture.png")))
-                addEntry(new ModelFileListWidgetEntry(file.getName(), this));
-            //zip support
-            else if (file.getName().endsWith(".zip")) {
-                try {
-                    ZipFile zipFile = new ZipFile(file.getPath());
-
-                    boolean hasModel = zipFile.getEntry("model.bbmodel") != null || zipFile.getEntry("player_model.bbmodel") != null;
-                    boolean hasTexture = zipFile.getEntry("texture.png") != null;
-
-                    //add entry
-                    if (hasModel && hasTexture)
-                        addEntry(new ModelFileListWidgetEntry(file.getName(), this));
-
-                } catch (Exception e) {
-                    FiguraMod.LOGGER.warn("Failed to load model " + file.getName());
-                    e.printStackTrace();
-                }
-            }
-            //old system compatibility
-            else if (file.getName().endsWith(".bbmodel") && Files.exists(contentDirectory.toPath().resolve(fileName + ".png")))
-                addEntry(new ModelFileListWidgetEntry(fileName + "*", this));
+            addEntry(new ModelFileListWidgetEntry(info.name, this));
         }
     }
 
@@ -84,6 +54,26 @@ public class ModelFileListWidget extends CustomListWidget<PlayerListEntry, Model
             super(obj, list);
         }
 
+        @Override
+        public void render(MatrixStack matrices, int index, int y, int x, int rowWidth, int rowHeight, int mouseX, int mouseY, boolean isSelected, float delta) {
+            super.render(matrices, index, y, x, rowWidth, rowHeight, mouseX, mouseY, isSelected, delta);
+
+            LocalAvatarIndex.AvatarInfo info = LocalAvatarIndex.get(getIdentifier());
+            Identifier thumbnail = info != null ? info.getThumbnail() : null;
+
+            if (thumbnail != null) {
+                int size = rowHeight - 4;
+                client.getTextureManager().bindTexture(thumbnail);
+                DrawableHelper.drawTexture(matrices, x + 2, y + 2, 0, 0, size, size, size, size);
+            }
+        }
+
+        @Override
+        public int getXOffset() {
+            //Room for the thumbnail.
+            return 18;
+        }
+
         @Override
         public String getIdentifier() {
             return getEntryObject().toString();
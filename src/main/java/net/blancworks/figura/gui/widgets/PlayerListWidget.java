@@ -1,10 +1,13 @@
 package net.blancworks.figura.gui.widgets;
 
 import com.mojang.blaze3d.systems.RenderSystem;
+import net.blancworks.figura.PlayerData;
+import net.blancworks.figura.PlayerDataManager;
 import net.blancworks.figura.gui.FiguraTrustScreen;
 import net.blancworks.figura.trust.PlayerTrustManager;
 import net.blancworks.figura.trust.TrustContainer;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.font.TextRenderer;
 import net.minecraft.client.gui.screen.Screen;
 import net.minecraft.client.gui.widget.TextFieldWidget;
 import net.minecraft.client.gui.widget.ToggleButtonWidget;
@@ -15,6 +18,7 @@ import net.minecraft.util.Identifier;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.UUID;
 
 public class PlayerListWidget extends CustomListWidget<PlayerListEntry, PlayerListWidget.PlayerListWidgetEntry> {
 
@@ -200,6 +204,21 @@ public class PlayerListWidget extends CustomListWidget<PlayerListEntry, PlayerLi
             toggleButton.x = (x + rowWidth) - 16;
             toggleButton.y = y;
             toggleButton.render(matrices, mouseX, mouseY, delta);
+
+            //What their avatar costs per frame, next to the lock
+            if (getEntryObject() instanceof PlayerListEntry) {
+                UUID id = ((PlayerListEntry) getEntryObject()).getProfile().getId();
+                PlayerData data = PlayerDataManager.hasPlayerData(id) ? PlayerDataManager.getDataForPlayer(id) : null;
+
+                if (data != null && data.model != null) {
+                    double frameMillis = data.profiler.getFrameMillis();
+                    String frameText = String.format("%.2fms", frameMillis);
+                    int color = frameMillis < 0.5 ? 0x808080 : frameMillis < 2 ? 0xFFFF55 : 0xFF5555;
+
+                    TextRenderer font = this.client.textRenderer;
+                    font.draw(matrices, frameText, toggleButton.x - 4 - font.getWidth(frameText), y + (rowHeight / 2) - (font.fontHeight / 2), color);
+                }
+            }
         }
     }
 
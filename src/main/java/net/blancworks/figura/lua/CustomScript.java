@@ -10,6 +10,7 @@ import net.blancworks.figura.lua.api.emoteWheel.EmoteWheelCustomization;
 import net.blancworks.figura.lua.api.nameplate.NamePlateCustomization;
 import net.blancworks.figura.lua.api.model.VanillaModelAPI;
 import net.blancworks.figura.lua.api.model.VanillaModelPartCustomization;
+import net.blancworks.figura.metrics.FiguraMetrics;
 import net.blancworks.figura.network.NewFiguraNetworkManager;
 import net.blancworks.figura.trust.PlayerTrustManager;
 import net.minecraft.client.MinecraftClient;
@@ -28,6 +29,8 @@ import org.luaj.vm2.lib.jse.JseMathLib;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 public class CustomScript extends FiguraAsset {
@@ -47,6 +50,11 @@ public class CustomScript extends FiguraAsset {
     //The currently running task.
     //Updated as things are added to it.
     public CompletableFuture currTask;
+    //Tasks queued that haven't finished yet.
+    private final AtomicInteger pendingTaskCount = new AtomicInteger();
+
+    //Set when the script arrived before its player's entity did, it's loaded on the first tick that has one.
+    private final AtomicBoolean waitingForEntity = new AtomicBoolean(false);
 
 
     //How many instructions the last tick/render event used.
@@ -143,6 +151,7 @@ public class CustomScript extends FiguraAsset {
                     // A simple lua error may be caught by the script, but a
                     // Java Error will pass through to top and stop the script.
                     loadError = true;
+                    FiguraMetrics.LUA_OVERRUNS.increment();
 
                     if (data == PlayerDataManager.localPlayer || (boolean) Config.entries.get("logOthers").value) {
                         sendChatMessage(new LiteralText("[lua] ").formatted(Formatting.BLUE, Formatting.ITALIC)
@@ -172,7 +181,8 @@ public class CustomScript extends FiguraAsset {
                         isDone = true;
                         currTask = null;
                         FiguraMod.LOGGER.info("Script Loading Finished");
-                    }
+                    },
+                    AvatarTickScheduler.LUA_EXECUTOR
             );
         }catch (LuaError e){
             logLuaError(e);
@@ -190,6 +200,14 @@ public class CustomScript extends FiguraAsset {
 
         if (data.lastEntity != null)
             load(data, source);
+        else
+            waitingForEntity.set(true);
+    }
+
+    //Loads the script on the load queue if it was waiting on an entity. Only ever queues it once.
+    public void loadIfWaiting(PlayerData data) {
+        if (waitingForEntity.compareAndSet(true, false))
+            FiguraMod.doTask(() -> load(data, source));
     }
 
 
@@ -349,6 +367,7 @@ public class CustomScript extends FiguraAsset {
         //Queue up a task for running a tick.
         queueTask(()-> {
             setInstructionLimitPermission(PlayerTrustManager.MAX_TICK_ID);
+            long start = System.nanoTime();
             try {
                 tickLuaEvent.call();
                 
@@ -357,11 +376,16 @@ public class CustomScript extends FiguraAsset {
                     LuaPing p = incomingPingQueue.poll();
                     
                     p.function.call(p.args);
+
+                    if (p.receivedTime != 0)
+                        FiguraMetrics.PING_LATENCY_NANOS.record(System.nanoTime() - p.receivedTime);
                 }
                 
                 //Batch-send pings.
-                if(outgoingPingQueue.size() > 0)
+                if(outgoingPingQueue.size() > 0) {
+                    playerData.profiler.pingsSent.addAndGet(outgoingPingQueue.size());
                     ((NewFiguraNetworkManager)FiguraMod.networkManager).sendPing(outgoingPingQueue);
+                }
             } catch (Exception error) {
                 loadError = true;
                 tickLuaEvent = null;
@@ -369,6 +393,11 @@ public class CustomScript extends FiguraAsset {
                     logLuaError((LuaError) error);
             }
             tickInstructionCount = scriptGlobals.running.state.bytecodes;
+            long nanos = System.nanoTime() - start;
+            playerData.profiler.tickNanos.add(nanos);
+            playerData.profiler.tickInstructions.add(tickInstructionCount);
+            FiguraMetrics.LUA_EVENTS.increment();
+            FiguraMetrics.LUA_EVENT_NANOS.record(nanos);
         });
     }
 
@@ -381,6 +410,7 @@ public class CustomScript extends FiguraAsset {
         //Queue up a task for running the render code.
         queueTask(()->{
             setInstructionLimitPermission(PlayerTrustManager.MAX_RENDER_ID);
+            long start = System.nanoTime();
             try {
                 renderLuaEvent.call(LuaNumber.valueOf(deltaTime));
             } catch (Exception error) {
@@ -389,7 +419,12 @@ public class CustomScript extends FiguraAsset {
                 if (error instanceof LuaError)
                     logLuaError((LuaError) error);
             }
-            renderInstructionCount = scriptGlobals.running.state.bytecodes; 
+            renderInstructionCount = scriptGlobals.running.state.bytecodes;
+            long nanos = System.nanoTime() - start;
+            playerData.profiler.scriptRenderNanos.add(nanos);
+            playerData.profiler.renderInstructions.add(renderInstructionCount);
+            FiguraMetrics.LUA_EVENTS.increment();
+            FiguraMetrics.LUA_EVENT_NANOS.record(nanos);
         });
     }
 
@@ -397,16 +432,24 @@ public class CustomScript extends FiguraAsset {
 
     public CompletableFuture queueTask(Runnable task) {
         synchronized (this) {
+            pendingTaskCount.incrementAndGet();
+
             if (currTask == null || currTask.isDone()) {
-                currTask = CompletableFuture.runAsync(task);
+                currTask = CompletableFuture.runAsync(task, AvatarTickScheduler.LUA_EXECUTOR);
             } else {
                 currTask = currTask.thenRun(task);
             }
 
+            //Counted down however it ends, including when it was skipped because a task before it failed.
+            currTask.whenComplete((result, error) -> pendingTaskCount.decrementAndGet());
             return currTask;
         }
     }
 
+    public int getPendingTaskCount() {
+        return pendingTaskCount.get();
+    }
+
     public String cleanScriptSource(String s) {
         String ret = "";
 
@@ -468,6 +511,8 @@ public class CustomScript extends FiguraAsset {
     //--Debugging--
 
     public void logLuaError(LuaError error) {
+        FiguraMetrics.LUA_ERRORS.increment();
+
         //Never even log errors for other players, only the local player.
         if (playerData != PlayerDataManager.localPlayer) {
             return;
@@ -602,6 +647,11 @@ public class CustomScript extends FiguraAsset {
     }
     
     public void handlePing(short id, LuaValue args){
+        handlePing(id, args, 0);
+    }
+
+    //The received time is a System.nanoTime, or 0 if there isn't one.
+    public void handlePing(short id, LuaValue args, long receivedTime){
         try {
             String functionName = functionIDMap.get(id);
             
@@ -609,6 +659,7 @@ public class CustomScript extends FiguraAsset {
             p.function = scriptGlobals.get(functionName).checkfunction();
             p.args = args;
             p.functionID = id;
+            p.receivedTime = receivedTime;
             
             incomingPingQueue.add(p);
         } catch (Exception error) {
@@ -622,5 +673,7 @@ public class CustomScript extends FiguraAsset {
         public short functionID;
         public LuaFunction function;
         public LuaValue args;
+        //When it came in from the network (System.nanoTime), 0 for our own.
+        public long receivedTime;
     }
 }
@@ -1,11 +1,11 @@
 package net.blancworks.figura.lua.api.network;
 
-import com.google.common.io.LittleEndianDataInputStream;
 import com.google.common.io.LittleEndianDataOutputStream;
 import net.blancworks.figura.lua.api.ReadOnlyLuaTable;
 import org.luaj.vm2.*;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.LinkedList;
 import java.util.Queue;
@@ -36,19 +36,19 @@ public class LuaNetworkReadWriter {
         }
     }
 
-    public static LuaValue readLuaValue(LittleEndianDataInputStream stream) throws IOException {
-        byte type = stream.readByte();
+    public static LuaValue readLuaValue(ByteBuffer buffer) {
+        byte type = buffer.get();
 
         if (type == TABLE_ID) {
-            return readLuaTable(stream);
+            return readLuaTable(buffer);
         } else if (type == INT_ID) {
-            return readLuaInt(stream);
+            return readLuaInt(buffer);
         } else if (type == FLOAT_ID) {
-            return readLuaDouble(stream);
+            return readLuaDouble(buffer);
         } else if (type == BOOL_ID) {
-            return readLuaBool(stream);
+            return readLuaBool(buffer);
         } else if (type == STRING_ID) {
-            return readLuaString(stream);
+            return readLuaString(buffer);
         }
 
         return LuaValue.NIL;
@@ -108,15 +108,15 @@ public class LuaNetworkReadWriter {
         stream.write(data);
     }
 
-    public static LuaTable readLuaTable(LittleEndianDataInputStream stream) throws IOException {
-        short count = stream.readShort();
+    public static LuaTable readLuaTable(ByteBuffer buffer) {
+        short count = buffer.getShort();
 
         LuaTable table = new LuaTable();
         table.presize(count);
 
         for (int i = 0; i < count; i++) {
-            LuaValue key = readLuaValue(stream);
-            LuaValue value = readLuaValue(stream);
+            LuaValue key = readLuaValue(buffer);
+            LuaValue value = readLuaValue(buffer);
 
             table.set(key, value);
         }
@@ -124,23 +124,23 @@ public class LuaNetworkReadWriter {
         return table;
     }
 
-    public static LuaInteger readLuaInt(LittleEndianDataInputStream stream) throws IOException {
-        return LuaInteger.valueOf(stream.readInt());
+    public static LuaInteger readLuaInt(ByteBuffer buffer) {
+        return LuaInteger.valueOf(buffer.getInt());
     }
 
-    public static LuaDouble readLuaDouble(LittleEndianDataInputStream stream) throws IOException {
-        return (LuaDouble) LuaDouble.valueOf(stream.readFloat());
+    public static LuaDouble readLuaDouble(ByteBuffer buffer) {
+        return (LuaDouble) LuaDouble.valueOf(buffer.getFloat());
     }
 
-    public static LuaBoolean readLuaBool(LittleEndianDataInputStream stream) throws IOException {
-        return LuaBoolean.valueOf(stream.readBoolean());
+    public static LuaBoolean readLuaBool(ByteBuffer buffer) {
+        return LuaBoolean.valueOf(buffer.get() != 0);
     }
 
-    public static LuaString readLuaString(LittleEndianDataInputStream stream) throws IOException {
-        int count = stream.readShort();
+    public static LuaString readLuaString(ByteBuffer buffer) {
+        int count = buffer.getShort();
 
         byte[] data = new byte[count];
-        stream.read(data);
+        buffer.get(data);
 
         return LuaString.valueOf(new String(data, StandardCharsets.US_ASCII));
     }
@@ -0,0 +1,188 @@
+package net.blancworks.figura.metrics;
+
+import net.blancworks.figura.PlayerData;
+import net.minecraft.client.render.RenderLayer;
+import net.minecraft.client.render.VertexConsumer;
+import net.minecraft.client.render.VertexConsumerProvider;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * What one avatar costs, kept per PlayerData.
+ * <p>
+ * Times are always sampled, a couple of nanoTime calls per render or event is nothing next to the work itself.
+ * Vertices and layers need every vertex to go through a wrapper, so those are only counted while someone is
+ * looking at the numbers (see detailed).
+ */
+public class AvatarProfiler {
+    //How many samples are averaged, about a second of frames.
+    public static final int SAMPLES = 64;
+
+    //Set every tick, true while the overlay or the trust screen is open.
+    public static volatile boolean detailed = false;
+
+    //--Render thread--
+    public final SampleRing renderNanos = new SampleRing(SAMPLES);
+    public final SampleRing vertices = new SampleRing(SAMPLES);
+    public final SampleRing layers = new SampleRing(SAMPLES);
+
+    //--Script threads--
+    public final SampleRing tickNanos = new SampleRing(SAMPLES);
+    public final SampleRing scriptRenderNanos = new SampleRing(SAMPLES);
+    public final SampleRing tickInstructions = new SampleRing(SAMPLES);
+    public final SampleRing renderInstructions = new SampleRing(SAMPLES);
+
+    //--Network--
+    public final AtomicInteger pingsSent = new AtomicInteger();
+    public final AtomicInteger pingsReceived = new AtomicInteger();
+
+    //Size of the last avatar we got from the network, and how long it took from asking for it. -1 until then.
+    public volatile int downloadBytes = -1;
+    public volatile long downloadNanos = -1;
+    private volatile long downloadStarted = -1;
+
+    //The memory cost walks the whole model, so it's only worked out once a second.
+    private long memoryCost = 0;
+    private long memoryCostTime = 0;
+
+    private final CountingProvider countingProvider = new CountingProvider();
+    private long renderStart;
+
+    //Call before rendering the avatar. Returns the provider to render into, which counts vertices when detailed.
+    public VertexConsumerProvider beginRender(VertexConsumerProvider provider) {
+        renderStart = System.nanoTime();
+
+        if (!detailed)
+            return provider;
+
+        countingProvider.begin(provider);
+        return countingProvider;
+    }
+
+    public void endRender() {
+        long nanos = System.nanoTime() - renderStart;
+        renderNanos.add(nanos);
+        FiguraMetrics.onAvatarRendered(nanos);
+
+        if (countingProvider.delegate != null) {
+            vertices.add(countingProvider.vertexCount);
+            layers.add(countingProvider.consumers.size());
+            countingProvider.end();
+        }
+    }
+
+    public void onDownloadStarted() {
+        downloadStarted = System.nanoTime();
+    }
+
+    public void onDownloaded(int size) {
+        downloadBytes = size;
+
+        long started = downloadStarted;
+        downloadNanos = started != -1 ? System.nanoTime() - started : -1;
+        downloadStarted = -1;
+    }
+
+    public long getMemoryCost(PlayerData data) {
+        long now = System.currentTimeMillis();
+
+        if (now - memoryCostTime > 1000) {
+            memoryCost = data.getMemoryCost();
+            memoryCostTime = now;
+        }
+
+        return memoryCost;
+    }
+
+    //Render time on the render thread plus the script's render event, in milliseconds.
+    public double getFrameMillis() {
+        return (renderNanos.getAverage() + scriptRenderNanos.getAverage()) / 1e6;
+    }
+
+    public double getTickMillis() {
+        return tickNanos.getAverage() / 1e6;
+    }
+
+    /**
+     * Passes everything through to the real provider, counting vertices and the layers asked for.
+     */
+    private static class CountingProvider implements VertexConsumerProvider {
+        private VertexConsumerProvider delegate;
+        private final Map<VertexConsumer, CountingConsumer> consumers = new IdentityHashMap<>();
+        private long vertexCount;
+
+        public void begin(VertexConsumerProvider delegate) {
+            this.delegate = delegate;
+            this.vertexCount = 0;
+        }
+
+        public void end() {
+            this.delegate = null;
+            this.consumers.clear();
+        }
+
+        @Override
+        public VertexConsumer getBuffer(RenderLayer layer) {
+            return consumers.computeIfAbsent(delegate.getBuffer(layer), CountingConsumer::new);
+        }
+
+        private class CountingConsumer implements VertexConsumer {
+            private final VertexConsumer delegate;
+
+            public CountingConsumer(VertexConsumer delegate) {
+                this.delegate = delegate;
+            }
+
+            //What models render with. Passed on as a whole, so buffers that handle it in one go still can.
+            @Override
+            public void vertex(float x, float y, float z, float red, float green, float blue, float alpha, float u, float v, int overlay, int light, float normalX, float normalY, float normalZ) {
+                delegate.vertex(x, y, z, red, green, blue, alpha, u, v, overlay, light, normalX, normalY, normalZ);
+                vertexCount++;
+            }
+
+            @Override
+            public VertexConsumer vertex(double x, double y, double z) {
+                delegate.vertex(x, y, z);
+                return this;
+            }
+
+            @Override
+            public VertexConsumer color(int red, int green, int blue, int alpha) {
+                delegate.color(red, green, blue, alpha);
+                return this;
+            }
+
+            @Override
+            public VertexConsumer texture(float u, float v) {
+                delegate.texture(u, v);
+                return this;
+            }
+
+            @Override
+            public VertexConsumer overlay(int u, int v) {
+                delegate.overlay(u, v);
+                return this;
+            }
+
+            @Override
+            public VertexConsumer light(int u, int v) {
+                delegate.light(u, v);
+                return this;
+            }
+
+            @Override
+            public VertexConsumer normal(float x, float y, float z) {
+                delegate.normal(x, y, z);
+                return this;
+            }
+
+            @Override
+            public void next() {
+                delegate.next();
+                vertexCount++;
+            }
+        }
+    }
+}
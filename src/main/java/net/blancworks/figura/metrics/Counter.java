@@ -0,0 +1,22 @@
+package net.blancworks.figura.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A running total, safe to bump from any thread. Exported as the total since the game started.
+ */
+public class Counter {
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,108 @@
+package net.blancworks.figura.metrics;
+
+import net.blancworks.figura.FiguraMod;
+import net.blancworks.figura.PlayerData;
+import net.blancworks.figura.PlayerDataManager;
+import net.blancworks.figura.models.TexturePipeline;
+import net.blancworks.figura.network.NewFiguraNetworkManager;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Every metric Figura keeps, by name.
+ * <p>
+ * Counters and histograms are bumped where things happen, gauges are read when they're exported.
+ * Nothing here does any work unless something is recorded, the MetricsExporter is what writes them out.
+ */
+public class FiguraMetrics {
+    //Sorted, so every exported line has its keys in the same order.
+    private static final Map<String, Counter> COUNTERS = new TreeMap<>();
+    private static final Map<String, Histogram> HISTOGRAMS = new TreeMap<>();
+    private static final Map<String, LongSupplier> GAUGES = new TreeMap<>();
+
+    //--Avatars--
+    public static final Counter AVATAR_LOADS = counter("avatar.loads");
+    public static final Counter DORMANT_CACHE_HITS = counter("avatar.dormant_cache.hits");
+    public static final Counter DORMANT_CACHE_MISSES = counter("avatar.dormant_cache.misses");
+
+    //--Textures--
+    public static final Counter TEXTURE_UPLOADS = counter("texture.uploads");
+    public static final Counter TEXTURE_UPLOAD_PIXELS = counter("texture.upload_pixels");
+    public static final Counter SHARED_TEXTURE_HITS = counter("texture.shared_cache.hits");
+    public static final Counter SHARED_TEXTURE_MISSES = counter("texture.shared_cache.misses");
+
+    //--Scripts--
+    public static final Counter LUA_EVENTS = counter("lua.events");
+    public static final Counter LUA_OVERRUNS = counter("lua.overruns");
+    public static final Counter LUA_ERRORS = counter("lua.errors");
+    public static final Histogram LUA_EVENT_NANOS = histogram("lua.event_nanos");
+
+    //--Network--
+    public static final Counter PING_BYTES_OUT = counter("network.ping_bytes_out");
+    public static final Counter PING_BYTES_IN = counter("network.ping_bytes_in");
+    public static final Counter RECONNECTS = counter("network.reconnects");
+    //From a ping being decoded to the script running it.
+    public static final Histogram PING_LATENCY_NANOS = histogram("network.ping_latency_nanos");
+
+    //--Rendering--
+    //Time spent rendering avatars, per frame.
+    public static final Histogram FRAME_RENDER_NANOS = histogram("render.frame_nanos");
+
+    //Render thread only, added to as avatars render and recorded at the start of the next frame.
+    private static long frameRenderNanos = 0;
+
+    static {
+        gauge("queue.load_tasks", FiguraMod::getPendingTaskCount);
+        gauge("queue.script_tasks", () -> {
+            long total = 0;
+            for (PlayerData data : PlayerDataManager.LOADED_PLAYER_DATA.values()) {
+                if (data.script != null)
+                    total += data.script.getPendingTaskCount();
+            }
+            return total;
+        });
+        gauge("queue.network_outgoing", () -> NewFiguraNetworkManager.pipeline != null ? NewFiguraNetworkManager.pipeline.getQueueDepth() : 0);
+        gauge("queue.network_in_flight", () -> NewFiguraNetworkManager.pipeline != null ? NewFiguraNetworkManager.pipeline.getInFlightCount() : 0);
+        gauge("queue.network_game_thread", NewFiguraNetworkManager::getGameThreadTaskCount);
+        gauge("queue.texture_uploads", TexturePipeline::getPendingUploadCount);
+        gauge("avatar.loaded", PlayerDataManager.LOADED_PLAYER_DATA::size);
+        gauge("avatar.dormant", PlayerDataManager::getDormantAvatarCount);
+    }
+
+    public static synchronized Counter counter(String name) {
+        return COUNTERS.computeIfAbsent(name, k -> new Counter());
+    }
+
+    public static synchronized Histogram histogram(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, k -> new Histogram());
+    }
+
+    public static synchronized void gauge(String name, LongSupplier supplier) {
+        GAUGES.put(name, supplier);
+    }
+
+    //Called once an avatar is done rendering.
+    public static void onAvatarRendered(long nanos) {
+        frameRenderNanos += nanos;
+    }
+
+    //Called at the start of each frame, records what the last one spent on avatars.
+    public static void onFrame() {
+        FRAME_RENDER_NANOS.record(frameRenderNanos);
+        frameRenderNanos = 0;
+    }
+
+    public static synchronized Map<String, Counter> getCounters() {
+        return new TreeMap<>(COUNTERS);
+    }
+
+    public static synchronized Map<String, Histogram> getHistograms() {
+        return new TreeMap<>(HISTOGRAMS);
+    }
+
+    public static synchronized Map<String, LongSupplier> getGauges() {
+        return new TreeMap<>(GAUGES);
+    }
+}
@@ -0,0 +1,72 @@
+package net.blancworks.figura.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Distribution of a value, in power of two buckets.
+ * <p>
+ * Percentiles come out as the top of the bucket they fall in, so they're at most twice the real value.
+ * That's plenty to spot a regression in a soak test, and recording is just a few adds under a lock.
+ * Every snapshot starts the histogram over, so each exported line covers one interval.
+ */
+public class Histogram {
+    //Bucket i holds values from 2^(i-1) up to 2^i, bucket 0 holds 0 (and anything negative).
+    private final long[] buckets = new long[64];
+    private long count;
+    private long sum;
+    private long max;
+
+    public synchronized void record(long value) {
+        buckets[value <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(value)]++;
+        count++;
+        sum += Math.max(value, 0);
+        max = Math.max(max, value);
+    }
+
+    //Takes what's been recorded so far, and starts over.
+    public synchronized Snapshot snapshotAndReset() {
+        Snapshot snapshot = new Snapshot(count, sum, max, percentile(0.5), percentile(0.95), percentile(0.99));
+
+        Arrays.fill(buckets, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+
+        return snapshot;
+    }
+
+    private long percentile(double fraction) {
+        if (count == 0)
+            return 0;
+
+        long target = (long) Math.ceil(count * fraction);
+        long seen = 0;
+
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+
+            if (seen >= target)
+                return Math.min(i == 0 ? 0 : (1L << i) - 1, max);
+        }
+
+        return max;
+    }
+
+    public static class Snapshot {
+        public final long count;
+        public final long sum;
+        public final long max;
+        public final long p50;
+        public final long p95;
+        public final long p99;
+
+        public Snapshot(long count, long sum, long max, long p50, long p95, long p99) {
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+        }
+    }
+}
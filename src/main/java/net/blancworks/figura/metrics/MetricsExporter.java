@@ -0,0 +1,132 @@
+package net.blancworks.figura.metrics;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import net.blancworks.figura.FiguraMod;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Writes every metric in FiguraMetrics to figura/metrics as JSON lines, one line per interval.
+ * <p>
+ * Counters are totals since the game started, gauges are the value at the time of writing,
+ * and histograms cover only the interval since the line before. Each run of the game gets its own file.
+ */
+public class MetricsExporter {
+    private static final Gson GSON = new Gson();
+
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "Figura Metrics Exporter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static ScheduledFuture<?> exportTask;
+    private static int exportInterval;
+    private static Path exportFile;
+
+    //Starts, stops or reschedules the exporter to match the config. Cheap to call every tick.
+    public static synchronized void update(boolean enabled, int intervalSeconds) {
+        intervalSeconds = Math.max(1, intervalSeconds);
+
+        if (exportTask != null && (!enabled || intervalSeconds != exportInterval)) {
+            exportTask.cancel(false);
+            exportTask = null;
+        }
+
+        if (enabled && exportTask == null) {
+            exportInterval = intervalSeconds;
+            exportTask = EXECUTOR.scheduleAtFixedRate(MetricsExporter::export, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    //Writes a last line, so a soak test that stops the game gets everything up to the end.
+    public static synchronized void shutdown() {
+        if (exportTask == null)
+            return;
+
+        exportTask.cancel(false);
+        exportTask = null;
+
+        try {
+            EXECUTOR.submit(MetricsExporter::export).get(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void export() {
+        try {
+            String line = GSON.toJson(snapshot());
+
+            try (BufferedWriter writer = Files.newBufferedWriter(getExportFile(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(line);
+                writer.newLine();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static JsonObject snapshot() {
+        JsonObject root = new JsonObject();
+        root.addProperty("time", System.currentTimeMillis());
+
+        JsonObject counters = new JsonObject();
+        for (Map.Entry<String, Counter> entry : FiguraMetrics.getCounters().entrySet()) {
+            counters.addProperty(entry.getKey(), entry.getValue().get());
+        }
+        root.add("counters", counters);
+
+        JsonObject gauges = new JsonObject();
+        for (Map.Entry<String, LongSupplier> entry : FiguraMetrics.getGauges().entrySet()) {
+            try {
+                gauges.addProperty(entry.getKey(), entry.getValue().getAsLong());
+            } catch (Exception e) {
+                //Read from another thread while it changes, skip it for this line.
+            }
+        }
+        root.add("gauges", gauges);
+
+        JsonObject histograms = new JsonObject();
+        for (Map.Entry<String, Histogram> entry : FiguraMetrics.getHistograms().entrySet()) {
+            Histogram.Snapshot snapshot = entry.getValue().snapshotAndReset();
+
+            JsonObject histogram = new JsonObject();
+            histogram.addProperty("count", snapshot.count);
+            histogram.addProperty("sum", snapshot.sum);
+            histogram.addProperty("max", snapshot.max);
+            histogram.addProperty("p50", snapshot.p50);
+            histogram.addProperty("p95", snapshot.p95);
+            histogram.addProperty("p99", snapshot.p99);
+            histograms.add(entry.getKey(), histogram);
+        }
+        root.add("histograms", histograms);
+
+        return root;
+    }
+
+    private static Path getExportFile() throws IOException {
+        if (exportFile == null) {
+            Path directory = FiguraMod.getModContentDirectory().resolve("metrics");
+            Files.createDirectories(directory);
+
+            exportFile = directory.resolve("metrics-" + new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date()) + ".jsonl");
+        }
+
+        return exportFile;
+    }
+}
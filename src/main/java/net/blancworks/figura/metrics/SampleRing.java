@@ -0,0 +1,64 @@
+package net.blancworks.figura.metrics;
+
+/**
+ * The last few samples of a value, in a fixed size ring.
+ * <p>
+ * Meant for one thread writing and the UI reading. Nothing is locked, a reader can see a sample
+ * from the next frame mixed in, which doesn't matter for averages shown on screen.
+ */
+public class SampleRing {
+    private final long[] samples;
+    private int next = 0;
+    private volatile int count = 0;
+
+    public SampleRing(int size) {
+        this.samples = new long[size];
+    }
+
+    public void add(long sample) {
+        samples[next] = sample;
+        next = (next + 1) % samples.length;
+
+        if (count < samples.length)
+            count++;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public long getLast() {
+        int count = this.count;
+        if (count == 0)
+            return 0;
+
+        return samples[(next - 1 + samples.length) % samples.length];
+    }
+
+    public double getAverage() {
+        int count = this.count;
+        if (count == 0)
+            return 0;
+
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += samples[i];
+        }
+        return total / (double) count;
+    }
+
+    public long getMax() {
+        int count = this.count;
+
+        long max = 0;
+        for (int i = 0; i < count; i++) {
+            max = Math.max(max, samples[i]);
+        }
+        return max;
+    }
+
+    public void clear() {
+        count = 0;
+        next = 0;
+    }
+}
@@ -1,7 +1,15 @@
 package net.blancworks.figura.mixin;
 
+import net.blancworks.figura.AvatarTickScheduler;
+import net.blancworks.figura.FiguraMod;
+import net.blancworks.figura.PlayerData;
 import net.blancworks.figura.PlayerDataManager;
+import net.blancworks.figura.models.SharedTextureRegistry;
+import net.blancworks.figura.network.NewFiguraNetworkManager;
+import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.gui.hud.DebugHud;
+import net.minecraft.entity.Entity;
+import net.minecraft.entity.player.PlayerEntity;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
@@ -16,5 +24,33 @@ public class DebugHudMixin {
     protected void getRightText(CallbackInfoReturnable<List<String>> cir) {
         if (PlayerDataManager.localPlayer != null && PlayerDataManager.localPlayer.script != null)
             cir.getReturnValue().add(4, String.format("[FIGURA] tick instructions : %d render instructions : %d", PlayerDataManager.localPlayer.script.tickInstructionCount, PlayerDataManager.localPlayer.script.renderInstructionCount));
+
+        cir.getReturnValue().add(AvatarTickScheduler.getDebugString());
+        cir.getReturnValue().add(getHeapUsageString());
+        cir.getReturnValue().add(String.format("[FIGURA] shared textures : %d deduplicated : %d", SharedTextureRegistry.getSharedTextureCount(), SharedTextureRegistry.getSavedTextureCount()));
+
+        if (FiguraMod.networkManager instanceof NewFiguraNetworkManager && NewFiguraNetworkManager.pipeline != null)
+            cir.getReturnValue().add(NewFiguraNetworkManager.pipeline.getDebugString());
+    }
+
+    //Heap used by the local avatar, the one being looked at, and all of them together.
+    private static String getHeapUsageString() {
+        long total = 0;
+        for (PlayerData data : PlayerDataManager.LOADED_PLAYER_DATA.values()) {
+            total += data.getMemoryCost();
+        }
+
+        long local = PlayerDataManager.localPlayer != null ? PlayerDataManager.localPlayer.getMemoryCost() : 0;
+
+        long targeted = 0;
+        Entity target = MinecraftClient.getInstance().targetedEntity;
+        if (target instanceof PlayerEntity) {
+            PlayerData data = PlayerDataManager.LOADED_PLAYER_DATA.get(target.getUuid());
+            if (data != null)
+                targeted = data.getMemoryCost();
+        }
+
+        return String.format("[FIGURA] avatar heap : local %dKB targeted %dKB total %dKB (%d avatars)",
+                local / 1024, targeted / 1024, total / 1024, PlayerDataManager.LOADED_PLAYER_DATA.size());
     }
 }
\ No newline at end of file
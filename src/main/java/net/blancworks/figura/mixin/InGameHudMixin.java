@@ -1,6 +1,7 @@
 package net.blancworks.figura.mixin;
 
 import net.blancworks.figura.FiguraMod;
+import net.blancworks.figura.gui.AvatarProfilerOverlay;
 import net.blancworks.figura.gui.EmoteWheel;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.gui.hud.InGameHud;
@@ -14,14 +15,18 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 public class InGameHudMixin {
 
     private EmoteWheel emoteWheel;
+    private AvatarProfilerOverlay profilerOverlay;
 
     @Inject(at = @At ("RETURN"), method = "<init>")
     public void init(MinecraftClient client, CallbackInfo ci) {
         emoteWheel = new EmoteWheel(client);
+        profilerOverlay = new AvatarProfilerOverlay(client);
     }
 
     @Inject(at = @At ("RETURN"), method = "render")
     public void render(MatrixStack matrices, float tickDelta, CallbackInfo ci) {
+        profilerOverlay.render(matrices);
+
         if (FiguraMod.emoteWheel.isPressed()) {
             if (EmoteWheel.enabled)
                 emoteWheel.render(matrices);
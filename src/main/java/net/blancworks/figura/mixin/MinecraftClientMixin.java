@@ -3,6 +3,8 @@ package net.blancworks.figura.mixin;
 import net.blancworks.figura.FiguraMod;
 import net.blancworks.figura.PlayerDataManager;
 import net.blancworks.figura.gui.EmoteWheel;
+import net.blancworks.figura.metrics.FiguraMetrics;
+import net.blancworks.figura.models.TexturePipeline;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.Mouse;
 import net.minecraft.client.gui.screen.Screen;
@@ -41,6 +43,12 @@ public class MinecraftClientMixin {
         }
     }
 
+    @Inject(at = @At("HEAD"), method = "render")
+    public void render(boolean tick, CallbackInfo ci) {
+        FiguraMetrics.onFrame();
+        TexturePipeline.uploadPending();
+    }
+
     @Inject(at = @At("HEAD"), method = "openScreen")
     public void openScreen(Screen screen, CallbackInfo ci) {
         EmoteWheel.play();
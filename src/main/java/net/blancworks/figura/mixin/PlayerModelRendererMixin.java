@@ -4,9 +4,11 @@ import net.blancworks.figura.FiguraMod;
 import net.blancworks.figura.PlayerData;
 import net.blancworks.figura.PlayerDataManager;
 import net.blancworks.figura.access.PlayerEntityRendererAccess;
+import net.blancworks.figura.metrics.AvatarProfiler;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.network.AbstractClientPlayerEntity;
 import net.minecraft.client.render.VertexConsumer;
+import net.minecraft.client.render.VertexConsumerProvider;
 import net.minecraft.client.render.entity.LivingEntityRenderer;
 import net.minecraft.client.render.entity.PlayerEntityRenderer;
 import net.minecraft.client.render.entity.model.BipedEntityModel;
@@ -58,10 +60,15 @@ public class PlayerModelRendererMixin<T extends LivingEntity> extends BipedEntit
                     transformStack.translate(0.0D, -1.5010000467300415D, 0.0D);
                 }
                 
+                AvatarProfiler profiler = playerData.profiler;
+                VertexConsumerProvider vertexConsumers = profiler.beginRender(FiguraMod.vertexConsumerProvider);
+
                 try {
-                    playerData.model.render((PlayerEntityModel<T>) (Object) this, matrices, transformStack, FiguraMod.vertexConsumerProvider, light, overlay, 1, 1, 1, alpha);
+                    playerData.model.render((PlayerEntityModel<T>) (Object) this, matrices, transformStack, vertexConsumers, light, overlay, 1, 1, 1, alpha);
                 } catch (Exception e) {
                     e.printStackTrace();
+                } finally {
+                    profiler.endRender();
                 }
 
                 matrices.pop();
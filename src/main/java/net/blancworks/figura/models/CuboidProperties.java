@@ -0,0 +1,148 @@
+package net.blancworks.figura.models;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.FloatTag;
+import net.minecraft.nbt.ListTag;
+
+/**
+ * The properties of a cuboid, read out of its NBT once so rebuilding doesn't have to keep looking up tags.
+ * Also the packed form cuboids are stored in by the BinaryModelFormat.
+ */
+public class CuboidProperties {
+    //Face order, in the arrays below and in the packed form.
+    public static final String[] FACES = {"n", "s", "e", "w", "u", "d"};
+    //inflate, texture width/height, from, to, then for each face: has texture, uv, rotation.
+    public static final int PACKED_SIZE = 9 + FACES.length * 6;
+
+    public float inflate;
+    public float texWidth;
+    public float texHeight;
+    public final float[] from = new float[3];
+    public final float[] to = new float[3];
+
+    public final boolean[] hasFace = new boolean[FACES.length];
+    //Four per face.
+    public final float[] uvs = new float[FACES.length * 4];
+    public final float[] rotations = new float[FACES.length];
+
+    public int getFaceCount() {
+        int count = 0;
+        for (boolean face : hasFace) {
+            if (face)
+                count++;
+        }
+        return count;
+    }
+
+    public static CuboidProperties fromNbt(CompoundTag nbt) {
+        CuboidProperties properties = new CuboidProperties();
+
+        if (nbt.contains("inf"))
+            properties.inflate = nbt.getFloat("inf");
+        properties.texWidth = nbt.getFloat("tw");
+        properties.texHeight = nbt.getFloat("th");
+
+        ListTag from = (ListTag) nbt.get("f");
+        ListTag to = (ListTag) nbt.get("t");
+        for (int i = 0; i < 3; i++) {
+            properties.from[i] = from.getFloat(i);
+            properties.to[i] = to.getFloat(i);
+        }
+
+        for (int face = 0; face < FACES.length; face++) {
+            if (!nbt.contains(FACES[face]))
+                continue;
+
+            CompoundTag faceData = (CompoundTag) nbt.get(FACES[face]);
+            if (!faceData.contains("texture"))
+                continue;
+
+            properties.hasFace[face] = true;
+
+            ListTag uv = (ListTag) faceData.get("uv");
+            for (int i = 0; i < 4; i++) {
+                properties.uvs[face * 4 + i] = uv.getFloat(i);
+            }
+
+            if (faceData.contains("rotation"))
+                properties.rotations[face] = faceData.getFloat("rotation");
+        }
+
+        return properties;
+    }
+
+    //Only the parts of each face that are used for building the mesh are written.
+    public CompoundTag toNbt() {
+        CompoundTag nbt = new CompoundTag();
+
+        if (inflate != 0)
+            nbt.putFloat("inf", inflate);
+        nbt.putFloat("tw", texWidth);
+        nbt.putFloat("th", texHeight);
+        nbt.put("f", floatList(from, 0, 3));
+        nbt.put("t", floatList(to, 0, 3));
+
+        for (int face = 0; face < FACES.length; face++) {
+            if (!hasFace[face])
+                continue;
+
+            CompoundTag faceData = new CompoundTag();
+            faceData.putFloat("texture", 0);
+            faceData.put("uv", floatList(uvs, face * 4, 4));
+            if (rotations[face] != 0)
+                faceData.putFloat("rotation", rotations[face]);
+
+            nbt.put(FACES[face], faceData);
+        }
+
+        return nbt;
+    }
+
+    public float[] pack() {
+        float[] packed = new float[PACKED_SIZE];
+
+        packed[0] = inflate;
+        packed[1] = texWidth;
+        packed[2] = texHeight;
+        System.arraycopy(from, 0, packed, 3, 3);
+        System.arraycopy(to, 0, packed, 6, 3);
+
+        for (int face = 0; face < FACES.length; face++) {
+            int index = 9 + face * 6;
+
+            packed[index] = hasFace[face] ? 1 : 0;
+            System.arraycopy(uvs, face * 4, packed, index + 1, 4);
+            packed[index + 5] = rotations[face];
+        }
+
+        return packed;
+    }
+
+    public static CuboidProperties unpack(float[] packed) {
+        CuboidProperties properties = new CuboidProperties();
+
+        properties.inflate = packed[0];
+        properties.texWidth = packed[1];
+        properties.texHeight = packed[2];
+        System.arraycopy(packed, 3, properties.from, 0, 3);
+        System.arraycopy(packed, 6, properties.to, 0, 3);
+
+        for (int face = 0; face < FACES.length; face++) {
+            int index = 9 + face * 6;
+
+            properties.hasFace[face] = packed[index] != 0;
+            System.arraycopy(packed, index + 1, properties.uvs, face * 4, 4);
+            properties.rotations[face] = packed[index + 5];
+        }
+
+        return properties;
+    }
+
+    private static ListTag floatList(float[] values, int offset, int count) {
+        ListTag list = new ListTag();
+        for (int i = 0; i < count; i++) {
+            list.add(FloatTag.of(values[offset + i]));
+        }
+        return list;
+    }
+}
@@ -2,6 +2,7 @@ package net.blancworks.figura.models;
 
 import net.blancworks.figura.FiguraMod;
 import net.blancworks.figura.PlayerData;
+import net.blancworks.figura.assets.BinaryModelFormat;
 import net.blancworks.figura.assets.FiguraAsset;
 import net.blancworks.figura.lua.api.model.VanillaModelPartCustomization;
 import net.blancworks.figura.trust.PlayerTrustManager;
@@ -19,8 +20,10 @@ import net.minecraft.nbt.ListTag;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.math.MathHelper;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 public class CustomModel extends FiguraAsset {
     public PlayerData owner;
@@ -36,6 +39,9 @@ public class CustomModel extends FiguraAsset {
 
     public float texWidth = 64, texHeight = 64;
 
+    //Below this many parts, rebuilding them one after the other is faster than splitting the work up.
+    public static final int PARALLEL_REBUILD_THRESHOLD = 64;
+
     //The size of the avatar in bytes, either from when it was downloaded, or otherwise.
     public long totalSize = 0;
 
@@ -148,17 +154,43 @@ public class CustomModel extends FiguraAsset {
 
         for (int i = 0; i < partList.size(); i++) {
             CompoundTag partTag = (CompoundTag) partList.get(i);
-            int type = partTag.getInt("type");
 
             CustomModelPart part = CustomModelPart.fromNbt(partTag);
 
-            if (part != null) {
-                part.rebuild();
-
+            if (part != null)
                 allParts.add(part);
-            }
         }
 
+        rebuildAllParts();
+        sortAllParts();
+    }
+
+    //Rebuilds the mesh of every part, children included.
+    //Parts only ever touch their own vertices, so big models get spread out over the common fork-join pool.
+    public void rebuildAllParts() {
+        List<CustomModelPart> parts = new ArrayList<>();
+        for (CustomModelPart part : allParts) {
+            collectParts(part, parts);
+        }
+
+        if (parts.size() < PARALLEL_REBUILD_THRESHOLD)
+            parts.forEach(CustomModelPart::rebuild);
+        else
+            parts.parallelStream().forEach(CustomModelPart::rebuild);
+    }
+
+    private static void collectParts(CustomModelPart part, List<CustomModelPart> parts) {
+        parts.add(part);
+
+        for (CustomModelPart child : part.children) {
+            collectParts(child, parts);
+        }
+    }
+
+    //Reads the model from the binary format, the vertices come already built.
+    public void readBinary(byte[] data) throws IOException {
+        BinaryModelFormat.read(data, this);
+
         sortAllParts();
     }
 
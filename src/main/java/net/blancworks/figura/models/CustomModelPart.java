@@ -5,6 +5,7 @@ import it.unimi.dsi.fastutil.floats.FloatArrayList;
 import it.unimi.dsi.fastutil.floats.FloatList;
 import net.blancworks.figura.FiguraMod;
 import net.blancworks.figura.PlayerData;
+import net.blancworks.figura.assets.BinaryModelFormat;
 import net.blancworks.figura.lua.api.model.ElytraModelAPI;
 import net.blancworks.figura.lua.api.model.ItemModelAPI;
 import net.blancworks.figura.lua.api.model.ParrotModelAPI;
@@ -23,6 +24,9 @@ import net.minecraft.util.math.Matrix3f;
 import net.minecraft.util.math.Matrix4f;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.Random;
@@ -64,6 +68,8 @@ public class CustomModelPart {
     //All the vertex data is stored here! :D
     public FloatList vertexData = new FloatArrayList();
     public int vertexCount = 0;
+    //If set, vertexData is indexed, and vertexCount is the number of indices.
+    public int[] vertexIndices = null;
 
     public Matrix4f lastModelMatrix = new Matrix4f();
     public Matrix3f lastNormalMatrix = new Matrix3f();
@@ -303,8 +309,9 @@ public class CustomModelPart {
         Vector3f tempColor = color.copy();
         tempColor.multiplyComponentwise(prevColor.getX(), prevColor.getY(), prevColor.getZ());
 
+        int[] indices = this.vertexIndices;
         for (int i = 0; i < this.vertexCount; i++) {
-            int startIndex = i * 8;
+            int startIndex = (indices != null ? indices[i] : i) * 8;
 
             //Get vertex.
             Vector4f fullVert = new Vector4f(
@@ -573,11 +580,12 @@ public class CustomModelPart {
             if (childrenNbt == null || childrenNbt.getElementType() != NbtType.COMPOUND)
                 return;
 
+            //Children are rebuilt along with every other part by CustomModel.readNbt.
             for (Tag child : childrenNbt) {
                 CompoundTag childNbt = (CompoundTag) child;
                 CustomModelPart part = fromNbt(childNbt);
-                part.rebuild();
-                this.children.add(part);
+                if (part != null)
+                    this.children.add(part);
             }
         }
     }
@@ -629,6 +637,52 @@ public class CustomModelPart {
         }
     }
 
+    public void writeBinary(DataOutputStream out, BinaryModelFormat.StringTable strings) throws IOException {
+        out.writeInt(strings.indexOf(name));
+
+        //Transforms, packed.
+        writeVector(out, pos);
+        writeVector(out, rot);
+        writeVector(out, scale);
+        writeVector(out, pivot);
+
+        out.writeInt(strings.indexOf(parentType.toString()));
+        out.writeInt(strings.indexOf(shaderType.toString()));
+        out.writeBoolean(isMimicMode);
+        out.writeBoolean(isHidden);
+        out.writeFloat(alpha);
+
+        //Vertices are sent already built, so nobody has to rebuild them.
+        out.writeInt(vertexCount);
+        BinaryModelFormat.writeFloats(out, vertexData.toFloatArray(), vertexData.size());
+    }
+
+    public void readBinary(ByteBuffer buffer, String[] strings, int version) throws IOException {
+        this.name = BinaryModelFormat.readString(buffer, strings);
+
+        this.pos = readVector(buffer);
+        this.rot = readVector(buffer);
+        this.scale = readVector(buffer);
+        this.pivot = readVector(buffer);
+
+        String parentTypeName = BinaryModelFormat.readString(buffer, strings);
+        try {
+            this.parentType = ParentType.valueOf(parentTypeName);
+        } catch (Exception ignored) {}
+
+        String shaderTypeName = BinaryModelFormat.readString(buffer, strings);
+        try {
+            this.shaderType = ShaderType.valueOf(shaderTypeName);
+        } catch (Exception ignored) {}
+
+        this.isMimicMode = buffer.get() != 0;
+        this.isHidden = buffer.get() != 0;
+        this.alpha = buffer.getFloat();
+
+        this.vertexCount = buffer.getInt();
+        this.vertexData = FloatArrayList.wrap(BinaryModelFormat.readFloats(buffer));
+    }
+
     public String getPartType() {
         //Default part type is N/A
         return "na";
@@ -723,6 +777,75 @@ public class CustomModelPart {
         part.writeNbt(nbt);
     }
 
+    /**
+     * Reads a model part, and its children, from the binary model format.
+     */
+    public static CustomModelPart fromBinary(ByteBuffer buffer, String[] strings, int version) throws IOException {
+        return fromBinary(buffer, strings, version, 0);
+    }
+
+    private static CustomModelPart fromBinary(ByteBuffer buffer, String[] strings, int version, int depth) throws IOException {
+        if (depth > BinaryModelFormat.MAX_PART_DEPTH)
+            throw new IOException("Model parts are nested too deep");
+
+        String partType = BinaryModelFormat.readString(buffer, strings);
+
+        //Parts don't say how long they are, so there's no skipping one we don't know.
+        Supplier<CustomModelPart> sup = MODEL_PART_TYPES.get(partType);
+        if (sup == null)
+            throw new IOException("Unknown model part type " + partType);
+
+        CustomModelPart part = sup.get();
+        part.readBinary(buffer, strings, version);
+        part.checkVertices();
+
+        int childCount = BinaryModelFormat.readCount(buffer, 4);
+        for (int i = 0; i < childCount; i++) {
+            part.children.add(fromBinary(buffer, strings, version, depth + 1));
+        }
+
+        return part;
+    }
+
+    //Rendering goes by vertexCount and the indices without checking them, so vertices that were sent to us are checked here.
+    private void checkVertices() throws IOException {
+        int available = vertexData.size() / 8;
+        int limit = vertexIndices != null ? vertexIndices.length : available;
+
+        if (vertexCount < 0 || vertexCount > limit)
+            throw new IOException("Model part " + name + " has " + vertexCount + " vertices, but only " + limit + " were sent");
+
+        if (vertexIndices != null) {
+            for (int i = 0; i < vertexCount; i++) {
+                if (vertexIndices[i] < 0 || vertexIndices[i] >= available)
+                    throw new IOException("Model part " + name + " has a vertex index out of range (" + vertexIndices[i] + ")");
+            }
+        }
+    }
+
+    /**
+     * Writes a model part, and its children, in the binary model format.
+     */
+    public static void writeToBinary(DataOutputStream out, CustomModelPart part, BinaryModelFormat.StringTable strings) throws IOException {
+        out.writeInt(strings.indexOf(part.getPartType()));
+        part.writeBinary(out, strings);
+
+        out.writeInt(part.children.size());
+        for (CustomModelPart child : part.children) {
+            writeToBinary(out, child, strings);
+        }
+    }
+
+    private static void writeVector(DataOutputStream out, Vector3f vec) throws IOException {
+        out.writeFloat(vec.getX());
+        out.writeFloat(vec.getY());
+        out.writeFloat(vec.getZ());
+    }
+
+    private static Vector3f readVector(ByteBuffer buffer) {
+        return new Vector3f(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+    }
+
     private static Vector3f vec3fFromNbt(@Nullable ListTag nbt) {
         if (nbt == null || nbt.getElementType() != NbtType.FLOAT)
             return new Vector3f(0.f, 0.f, 0.f);
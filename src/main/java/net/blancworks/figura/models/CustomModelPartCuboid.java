@@ -1,204 +1,96 @@
 package net.blancworks.figura.models;
 
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import net.blancworks.figura.assets.BinaryModelFormat;
 import net.minecraft.client.util.math.Vector3f;
-import net.minecraft.client.util.math.Vector4f;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.FloatTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.util.math.MathHelper;
-import net.minecraft.util.math.Vec2f;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class CustomModelPartCuboid extends CustomModelPart {
 
     //Used to store the data for a cuboid, so that we can re-build it later if need be.
     public CompoundTag cuboidProperties = new CompoundTag();
 
+    //For each face, which corners take from (0) or to (1) on each axis, in the order a, b, c, d.
+    private static final int[][] FACE_CORNERS = {
+            {0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 1, 0}, //North
+            {1, 0, 1, 0, 0, 1, 0, 1, 1, 1, 1, 1}, //South
+            {1, 0, 0, 1, 0, 1, 1, 1, 1, 1, 1, 0}, //East
+            {0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 1, 1}, //West
+            {1, 1, 1, 0, 1, 1, 0, 1, 0, 1, 1, 0}, //Top
+            {1, 0, 0, 0, 0, 0, 0, 0, 1, 1, 0, 1}  //Bottom
+    };
+    //Vertices go out as b, a, d, c.
+    private static final int[] CORNER_ORDER = {1, 0, 3, 2};
+    //UV corners before rotation, as indices into (x, y, z, w) of the face uv: (x, w), (z, w), (z, y), (x, y).
+    private static final int[] UV_CORNERS = {0, 3, 2, 3, 2, 1, 0, 1};
+
+    //Builds the mesh straight into one array, without going through vectors and NBT for every face.
     @Override
     public void rebuild() {
-
-        vertexData.clear();
-        vertexCount = 0;
-
-        float inflate = 0;
-        if (cuboidProperties.contains("inf")) inflate = cuboidProperties.getFloat("inf");
-
-        Vector3f from = v3fFromNbtList((ListTag) cuboidProperties.get("f"));
-        Vector3f to = v3fFromNbtList((ListTag) cuboidProperties.get("t"));
-        Vector3f mid = new Vector3f(
-                MathHelper.lerp(0.5f, from.getX(), to.getX()),
-                MathHelper.lerp(0.5f, from.getY(), to.getY()),
-                MathHelper.lerp(0.5f, from.getZ(), to.getZ())
-        );
-
-        from.subtract(mid);
-        from.add(-inflate, -inflate, -inflate);
-        from.add(mid);
-
-        to.subtract(mid);
-        to.add(inflate, inflate, inflate);
-        to.add(mid);
-
-        float texWidth = cuboidProperties.getFloat("tw");
-        float texHeight = cuboidProperties.getFloat("th");
-
-        //North
-        if (cuboidProperties.contains("n")) {
-            CompoundTag faceData = (CompoundTag) cuboidProperties.get("n");
-
-            if (faceData.contains("texture")) {
-                Vector4f v = v4fFromNbtList((ListTag) faceData.get("uv"));
-
-                float rotation = 0;
-
-                if (faceData.contains("rotation")) {
-                    rotation = ((FloatTag) faceData.get("rotation")).getFloat();
-                }
-
-                List<Vec2f> cornerUVs = rotateUV(v, rotation);
-
-                generateFace(
-                        new Vector3f(-from.getX(), -from.getY(), from.getZ()),
-                        new Vector3f(-to.getX(), -from.getY(), from.getZ()),
-                        new Vector3f(-to.getX(), -to.getY(), from.getZ()),
-                        new Vector3f(-from.getX(), -to.getY(), from.getZ()),
-                        cornerUVs,
-                        texWidth, texHeight
-                );
+        CuboidProperties properties = CuboidProperties.fromNbt(cuboidProperties);
+
+        float inflate = properties.inflate;
+        float[] from = {
+                -(properties.from[0] - inflate), -(properties.from[1] - inflate), properties.from[2] - inflate
+        };
+        float[] to = {
+                -(properties.to[0] + inflate), -(properties.to[1] + inflate), properties.to[2] + inflate
+        };
+
+        float[] vertices = new float[properties.getFaceCount() * 4 * 8];
+        float[] corners = new float[12];
+        int index = 0;
+
+        for (int face = 0; face < CuboidProperties.FACES.length; face++) {
+            if (!properties.hasFace[face])
+                continue;
+
+            int[] faceCorners = FACE_CORNERS[face];
+            for (int i = 0; i < 12; i++) {
+                corners[i] = faceCorners[i] == 0 ? from[i % 3] : to[i % 3];
             }
-        }
-
-        //South
-        if (cuboidProperties.contains("s")) {
-            CompoundTag faceData = (CompoundTag) cuboidProperties.get("s");
-
-            if (faceData.contains("texture")) {
-                Vector4f v = v4fFromNbtList((ListTag) faceData.get("uv"));
-
-                float rotation = 0;
-
-                if (faceData.contains("rotation")) {
-                    rotation = ((FloatTag) faceData.get("rotation")).getFloat();
-                }
-
-                List<Vec2f> cornerUVs = rotateUV(v, rotation);
-
-                generateFace(
-                        new Vector3f(-to.getX(), -from.getY(), to.getZ()),
-                        new Vector3f(-from.getX(), -from.getY(), to.getZ()),
-                        new Vector3f(-from.getX(), -to.getY(), to.getZ()),
-                        new Vector3f(-to.getX(), -to.getY(), to.getZ()),
-                        cornerUVs,
-                        texWidth, texHeight
-                );
-            }
-        }
-
-        //East
-        if (cuboidProperties.contains("e")) {
-            CompoundTag faceData = (CompoundTag) cuboidProperties.get("e");
-
-            if (faceData.contains("texture")) {
-                Vector4f v = v4fFromNbtList((ListTag) faceData.get("uv"));
-
-                float rotation = 0;
-
-                if (faceData.contains("rotation")) {
-                    rotation = ((FloatTag) faceData.get("rotation")).getFloat();
-                }
-
-                List<Vec2f> cornerUVs = rotateUV(v, rotation);
-
-                generateFace(
-                        new Vector3f(-to.getX(), -from.getY(), from.getZ()),
-                        new Vector3f(-to.getX(), -from.getY(), to.getZ()),
-                        new Vector3f(-to.getX(), -to.getY(), to.getZ()),
-                        new Vector3f(-to.getX(), -to.getY(), from.getZ()),
-                        cornerUVs,
-                        texWidth, texHeight
-                );
-            }
-        }
-
-        //West
-        if (cuboidProperties.contains("w")) {
-            CompoundTag faceData = (CompoundTag) cuboidProperties.get("w");
-
-            if (faceData.contains("texture")) {
-                Vector4f v = v4fFromNbtList((ListTag) faceData.get("uv"));
 
-                float rotation = 0;
-
-                if (faceData.contains("rotation")) {
-                    rotation = ((FloatTag) faceData.get("rotation")).getFloat();
-                }
-
-                List<Vec2f> cornerUVs = rotateUV(v, rotation);
-
-                generateFace(
-                        new Vector3f(-from.getX(), -from.getY(), to.getZ()),
-                        new Vector3f(-from.getX(), -from.getY(), from.getZ()),
-                        new Vector3f(-from.getX(), -to.getY(), from.getZ()),
-                        new Vector3f(-from.getX(), -to.getY(), to.getZ()),
-                        cornerUVs,
-                        texWidth, texHeight
-                );
+            //Normal is (b - a) x (c - a).
+            float abX = corners[3] - corners[0], abY = corners[4] - corners[1], abZ = corners[5] - corners[2];
+            float acX = corners[6] - corners[0], acY = corners[7] - corners[1], acZ = corners[8] - corners[2];
+            float normalX = abY * acZ - abZ * acY;
+            float normalY = abZ * acX - abX * acZ;
+            float normalZ = abX * acY - abY * acX;
+
+            float lengthSquared = normalX * normalX + normalY * normalY + normalZ * normalZ;
+            if (lengthSquared >= 1.0E-5F) {
+                float inverseLength = MathHelper.fastInverseSqrt(lengthSquared);
+                normalX *= inverseLength;
+                normalY *= inverseLength;
+                normalZ *= inverseLength;
             }
-        }
-
-        //Top
-        if (cuboidProperties.contains("u")) {
-            CompoundTag faceData = (CompoundTag) cuboidProperties.get("u");
 
-            if (faceData.contains("texture")) {
-                Vector4f v = v4fFromNbtList((ListTag) faceData.get("uv"));
+            int rotation = Math.max(Math.round(properties.rotations[face] / 90.0f), 0);
 
-                float rotation = 0;
+            for (int vertex = 0; vertex < 4; vertex++) {
+                int corner = CORNER_ORDER[vertex] * 3;
+                int uvCorner = ((vertex + rotation) % 4) * 2;
 
-                if (faceData.contains("rotation")) {
-                    rotation = ((FloatTag) faceData.get("rotation")).getFloat();
-                }
-
-                List<Vec2f> cornerUVs = rotateUV(v, rotation);
-
-                generateFace(
-                        new Vector3f(-to.getX(), -to.getY(), to.getZ()),
-                        new Vector3f(-from.getX(), -to.getY(), to.getZ()),
-                        new Vector3f(-from.getX(), -to.getY(), from.getZ()),
-                        new Vector3f(-to.getX(), -to.getY(), from.getZ()),
-                        cornerUVs,
-                        texWidth, texHeight
-                );
+                vertices[index++] = corners[corner] / 16.0f;
+                vertices[index++] = corners[corner + 1] / 16.0f;
+                vertices[index++] = corners[corner + 2] / 16.0f;
+                vertices[index++] = properties.uvs[face * 4 + UV_CORNERS[uvCorner]] / properties.texWidth;
+                vertices[index++] = properties.uvs[face * 4 + UV_CORNERS[uvCorner + 1]] / properties.texHeight;
+                vertices[index++] = -normalX;
+                vertices[index++] = -normalY;
+                vertices[index++] = -normalZ;
             }
         }
 
-        //Bottom
-        if (cuboidProperties.contains("d")) {
-            CompoundTag faceData = (CompoundTag) cuboidProperties.get("d");
-
-            if (faceData.contains("texture")) {
-                Vector4f v = v4fFromNbtList((ListTag) faceData.get("uv"));
-
-                float rotation = 0;
-
-                if (faceData.contains("rotation")) {
-                    rotation = ((FloatTag) faceData.get("rotation")).getFloat();
-                }
-
-                List<Vec2f> cornerUVs = rotateUV(v, rotation);
-
-                generateFace(
-                        new Vector3f(-to.getX(), -from.getY(), from.getZ()),
-                        new Vector3f(-from.getX(), -from.getY(), from.getZ()),
-                        new Vector3f(-from.getX(), -from.getY(), to.getZ()),
-                        new Vector3f(-to.getX(), -from.getY(), to.getZ()),
-                        cornerUVs,
-                        texWidth, texHeight
-                );
-            }
-        }
+        vertexData = FloatArrayList.wrap(vertices);
+        vertexCount = vertices.length / 8;
     }
 
     @Override
@@ -228,20 +120,6 @@ public class CustomModelPartCuboid extends CustomModelPart {
         rebuild();
     }
 
-    public void generateFace(Vector3f a, Vector3f b, Vector3f c, Vector3f d, List<Vec2f> uv, float texWidth, float texHeight) {
-        Vector3f nA = b.copy();
-        nA.subtract(a);
-        Vector3f nB = c.copy();
-        nB.subtract(a);
-        nA.cross(nB);
-        nA.normalize();
-
-        addVertex(b, uv.get(0).x / texWidth, uv.get(0).y / texHeight, nA);
-        addVertex(a, uv.get(1).x / texWidth, uv.get(1).y / texHeight, nA);
-        addVertex(d, uv.get(2).x / texWidth, uv.get(2).y / texHeight, nA);
-        addVertex(c, uv.get(3).x / texWidth, uv.get(3).y / texHeight, nA);
-    }
-
     @Override
     public void readNbt(CompoundTag partNbt) {
         super.readNbt(partNbt);
@@ -255,46 +133,30 @@ public class CustomModelPartCuboid extends CustomModelPart {
     }
 
     @Override
-    public String getPartType() {
-        return "cub";
-    }
-
-    public Vector3f v3fFromNbtList(ListTag list) {
-        return new Vector3f(list.getFloat(0), list.getFloat(1), list.getFloat(2));
-    }
+    public void writeBinary(DataOutputStream out, BinaryModelFormat.StringTable strings) throws IOException {
+        super.writeBinary(out, strings);
 
-    public Vector4f v4fFromNbtList(ListTag list) {
-        return new Vector4f(list.getFloat(0), list.getFloat(1), list.getFloat(2), list.getFloat(3));
+        //The vertices are already in there, but we keep the properties so the cuboid can still be rebuilt or saved as NBT.
+        BinaryModelFormat.writeFloats(out, CuboidProperties.fromNbt(cuboidProperties).pack(), CuboidProperties.PACKED_SIZE);
     }
 
-    public static List<Vec2f> rotateUV(Vector4f v, float rotation) {
-        List<Vec2f> cornerUVs = new ArrayList<>();
-        cornerUVs.add(new Vec2f(v.getX(), v.getW())); //0,1
-        cornerUVs.add(new Vec2f(v.getZ(), v.getW())); //1,1
-        cornerUVs.add(new Vec2f(v.getZ(), v.getY())); //1,0
-        cornerUVs.add(new Vec2f(v.getX(), v.getY())); //0,0
-
-        int rotationAmount = Math.round(rotation / 90.0f);
+    @Override
+    public void readBinary(ByteBuffer buffer, String[] strings, int version) throws IOException {
+        super.readBinary(buffer, strings, version);
 
-        for (int i = 0; i < rotationAmount; i++) {
-            Vec2f last = cornerUVs.get(0);
-            cornerUVs.remove(0);
-            cornerUVs.add(last);
-        }
+        float[] packed = BinaryModelFormat.readFloats(buffer);
+        if (packed.length != CuboidProperties.PACKED_SIZE)
+            throw new IOException("Cuboid " + name + " has " + packed.length + " properties, expected " + CuboidProperties.PACKED_SIZE);
 
-        return cornerUVs;
+        cuboidProperties = CuboidProperties.unpack(packed).toNbt();
     }
 
-    public static Vec2f rotateVec2f(Vec2f v, float degrees) {
-        float sin = (float) Math.sin(Math.toRadians(degrees));
-        float cos = (float) Math.cos(Math.toRadians(degrees));
+    @Override
+    public String getPartType() {
+        return "cub";
+    }
 
-        float tx = v.x;
-        float ty = v.y;
-        v = new Vec2f(
-                (cos * tx) - (sin * ty),
-                (sin * tx) + (cos * ty)
-        );
-        return v;
+    public Vector3f v3fFromNbtList(ListTag list) {
+        return new Vector3f(list.getFloat(0), list.getFloat(1), list.getFloat(2));
     }
 }
@@ -1,108 +1,66 @@
 package net.blancworks.figura.models;
 
-import de.javagl.obj.FloatTuple;
-import de.javagl.obj.Obj;
-import de.javagl.obj.ObjFace;
-import de.javagl.obj.ObjReader;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import net.blancworks.figura.assets.BinaryModelFormat;
+import net.blancworks.figura.models.parsers.ObjMeshParser;
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.util.math.Vector3f;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.FloatTag;
 import net.minecraft.nbt.IntTag;
 import net.minecraft.nbt.ListTag;
+import net.minecraft.util.Util;
 
-import java.io.FileInputStream;
-import java.io.InputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
 
 
 public class CustomModelPartMesh extends CustomModelPart {
-    public boolean isReady = false;
-    
+    public volatile boolean isReady = false;
+    //How far along the import is, from 0 to 1.
+    public volatile float loadProgress = 0;
+
+    //Bounding box of the mesh, once it's loaded.
+    public Vector3f boundsMin = new Vector3f();
+    public Vector3f boundsMax = new Vector3f();
+
+    //Returns right away, the mesh shows up once it's been read.
     public static CustomModelPartMesh loadFromObj(Path path) {
         CustomModelPartMesh newPart = new CustomModelPartMesh();
 
-        MinecraftClient.getInstance().execute(() -> {
+        CompletableFuture.runAsync(() -> {
             try {
                 newPart.parseObj(path);
             } catch (Exception e) {
                 e.printStackTrace();
             }
-        });
+        }, Util.getMainWorkerExecutor());
 
         return newPart;
     }
 
     public void parseObj(Path path) throws Exception {
         this.isReady = false;
-        vertexData.clear();
-
-        InputStream fileStream = new FileInputStream(path.toString());
-        Obj objectFile = ObjReader.read(fileStream);
-        fileStream.close();
-
-        int triCount = objectFile.getNumFaces();
-
-        for (int i = 0; i < triCount; i++) {
-            ObjFace face = objectFile.getFace(i);
-            int vertCount = face.getNumVertices();
-
-            if (vertCount == 4) {
-                for (int j = vertCount - 1; j >= 0; j--) {
-                    FloatTuple vertex = objectFile.getVertex(face.getVertexIndex(j));
-                    vertexData.add(vertex.getX());
-                    vertexData.add(-vertex.getY());
-                    vertexData.add(vertex.getZ());
-
-                    FloatTuple uv = objectFile.getTexCoord(face.getTexCoordIndex(j));
-                    vertexData.add(uv.getX());
-                    vertexData.add(1 - uv.getY());
-
-                    FloatTuple normal = objectFile.getNormal(face.getNormalIndex(j));
-                    vertexData.add(normal.getX());
-                    vertexData.add(-normal.getY());
-                    vertexData.add(normal.getZ());
-
-                    vertexCount++;
-                }
-            } else if (vertCount == 3) {
-                for (int j = vertCount - 1; j >= 0; j--) {
-                    FloatTuple vertex = objectFile.getVertex(face.getVertexIndex(j));
-                    vertexData.add(vertex.getX());
-                    vertexData.add(-vertex.getY());
-                    vertexData.add(vertex.getZ());
-
-                    FloatTuple uv = objectFile.getTexCoord(face.getTexCoordIndex(j));
-                    vertexData.add(uv.getX());
-                    vertexData.add(1 - uv.getY());
-
-                    FloatTuple normal = objectFile.getNormal(face.getNormalIndex(j));
-                    vertexData.add(normal.getX());
-                    vertexData.add(-normal.getY());
-                    vertexData.add(normal.getZ());
-
-                    if (j == vertCount - 1) {
-                        vertex = objectFile.getVertex(face.getVertexIndex(j));
-                        vertexData.add(vertex.getX());
-                        vertexData.add(-vertex.getY());
-                        vertexData.add(vertex.getZ());
-
-                        uv = objectFile.getTexCoord(face.getTexCoordIndex(j));
-                        vertexData.add(uv.getX());
-                        vertexData.add(1 - uv.getY());
-
-                        normal = objectFile.getNormal(face.getNormalIndex(j));
-                        vertexData.add(normal.getX());
-                        vertexData.add(-normal.getY());
-                        vertexData.add(normal.getZ());
-                    }
-                    
-                    vertexCount++;
-                }
-            }
+        this.loadProgress = 0;
 
-        }
+        ObjMeshParser.Result result = ObjMeshParser.parse(path, progress -> this.loadProgress = (float) progress);
 
-        this.isReady = true;
+        //Swapped in on the client thread, so a frame never sees half a mesh.
+        MinecraftClient.getInstance().execute(() -> {
+            this.vertexData = FloatArrayList.wrap(result.vertices);
+            this.vertexIndices = result.indices;
+            this.vertexCount = result.indices.length;
+
+            if (result.indices.length > 0) {
+                this.boundsMin = new Vector3f(result.minX, result.minY, result.minZ);
+                this.boundsMax = new Vector3f(result.maxX, result.maxY, result.maxZ);
+            }
+
+            this.isReady = true;
+        });
     }
 
     @Override
@@ -110,8 +68,13 @@ public class CustomModelPartMesh extends CustomModelPart {
         super.writeNbt(partNbt);
         ListTag geometryData = new ListTag();
 
-        for (int i = 0; i < this.vertexData.size(); i++) {
-            geometryData.add(FloatTag.of(this.vertexData.getFloat(i)));
+        //Written out flat, so older versions can still read it.
+        for (int i = 0; i < this.vertexCount; i++) {
+            int startIndex = (this.vertexIndices != null ? this.vertexIndices[i] : i) * 8;
+
+            for (int j = 0; j < 8; j++) {
+                geometryData.add(FloatTag.of(this.vertexData.getFloat(startIndex + j)));
+            }
         }
         partNbt.put("vc", IntTag.of(this.vertexCount));
         partNbt.put("geo", geometryData);
@@ -122,10 +85,35 @@ public class CustomModelPartMesh extends CustomModelPart {
         super.readNbt(partNbt);
         ListTag geometryData = (ListTag) partNbt.get("geo");
 
-        for (int i = 0; i < geometryData.size(); i++) {
-            this.vertexData.add(geometryData.getFloat(i));
+        float[] vertices = new float[geometryData.size()];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = geometryData.getFloat(i);
         }
+        this.vertexData = FloatArrayList.wrap(vertices);
+        this.vertexIndices = null;
         this.vertexCount = partNbt.getInt("vc");
+        this.isReady = true;
+    }
+
+    @Override
+    public void writeBinary(DataOutputStream out, BinaryModelFormat.StringTable strings) throws IOException {
+        super.writeBinary(out, strings);
+        BinaryModelFormat.writeInts(out, this.vertexIndices != null ? this.vertexIndices : new int[0]);
+    }
+
+    @Override
+    public void readBinary(ByteBuffer buffer, String[] strings, int version) throws IOException {
+        super.readBinary(buffer, strings, version);
+
+        this.vertexIndices = null;
+        if (version >= 2) {
+            int[] indices = BinaryModelFormat.readInts(buffer);
+
+            //Meshes that were read from NBT aren't indexed.
+            if (indices.length > 0)
+                this.vertexIndices = indices;
+        }
+        this.isReady = true;
     }
 
     public String getPartType() {
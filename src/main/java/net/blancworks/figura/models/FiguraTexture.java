@@ -1,9 +1,9 @@
 package net.blancworks.figura.models;
 
 import com.google.common.collect.ImmutableMap;
-import com.mojang.blaze3d.systems.RenderSystem;
 import net.blancworks.figura.FiguraMod;
 import net.blancworks.figura.PlayerData;
+import net.blancworks.figura.metrics.FiguraMetrics;
 import net.minecraft.client.render.RenderLayer;
 import net.minecraft.client.texture.NativeImage;
 import net.minecraft.client.texture.ResourceTexture;
@@ -12,15 +12,14 @@ import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.StringTag;
 import net.minecraft.util.Identifier;
 import org.apache.commons.io.IOUtils;
-import org.lwjgl.system.MemoryUtil;
 
 import java.io.InputStream;
-import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Base64;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class FiguraTexture extends ResourceTexture {
     public static final Map<TextureType, Function<Identifier, RenderLayer>> EXTRA_TEXTURE_TO_RENDER_LAYER =
@@ -33,7 +32,16 @@ public class FiguraTexture extends ResourceTexture {
     public Identifier id;
     public TextureType type = TextureType.color;
 
-    public boolean isDone = false;
+    public volatile boolean isDone = false;
+    //What the uploaded image takes up on the GPU (4 bytes a pixel). Stays set after the image bytes are released.
+    public volatile long uploadedBytes = 0;
+
+    //Set if this texture is owned by the SharedTextureRegistry, and may be used by more than one avatar.
+    public String sharedKey;
+
+    //Where to read the image bytes back from, once they've been dropped from the heap.
+    public volatile Supplier<byte[]> dataSource;
+    private volatile boolean releaseDataAfterUpload = false;
 
     public FiguraTexture() {
         super(new Identifier("minecraft", "textures/entity/steve.png"));
@@ -64,19 +72,52 @@ public class FiguraTexture extends ResourceTexture {
         PlayerData.getTextureManager().registerTexture(id, this);
     }
     
-    private void uploadTexture(NativeImage image) {
+    //Called from the render thread by the TexturePipeline. Closes the image once it's uploaded.
+    void uploadTexture(NativeImage image) {
         TextureUtil.allocate(this.getGlId(), image.getWidth(), image.getHeight());
         image.upload(0, 0, 0, true);
+        FiguraMetrics.TEXTURE_UPLOADS.increment();
+        FiguraMetrics.TEXTURE_UPLOAD_PIXELS.add((long) image.getWidth() * image.getHeight());
+        uploadedBytes = (long) image.getWidth() * image.getHeight() * 4;
+
+        //IsDone = true whenever we've finished.
+        //Note that we don't need to revert this at any point.
+        //If the texture is reloaded, this entire class is nuked anyway.
         this.isDone = true;
+        FiguraMod.LOGGER.info("Texture Loading Finished");
+
+        if (releaseDataAfterUpload)
+            data = null;
+    }
+
+    //Gets the image bytes, reading them back from the data source if they were released.
+    //Bytes that had to be read back aren't kept around. Reading them back goes to disk, so keep it off the render thread.
+    public byte[] getData() {
+        byte[] bytes = data;
+        if (bytes != null)
+            return bytes;
+
+        Supplier<byte[]> source = dataSource;
+        return source != null ? source.get() : null;
+    }
+
+    //Drops the image bytes once they're on the GPU, from then on they're read from the source when needed.
+    public void releaseData(Supplier<byte[]> source) {
+        dataSource = source;
+        releaseDataAfterUpload = true;
+
+        if (isDone)
+            data = null;
     }
 
     public void writeNbt(CompoundTag nbt) {
         try {
-            if (this.data == null) {
+            byte[] bytes = getData();
+            if (bytes == null) {
                 nbt.putString("note", "Texture has no data, cannot save : " + id);
                 return;
             }
-            nbt.putByteArray("img2", this.data);
+            nbt.putByteArray("img2", bytes);
             nbt.put("type", StringTag.of(this.type.toString()));
         } catch (Exception e) {
             e.printStackTrace();
@@ -84,60 +125,54 @@ public class FiguraTexture extends ResourceTexture {
     }
 
     public void readNbt(CompoundTag nbt) {
-        if (nbt.contains("img2")) {
-            try {
+        data = readData(nbt);
+
+        //Load using that data
+        if (data != null)
+            uploadUsingData();
+
+        //Grab texture type, if it exists.
+        type = readType(nbt);
+    }
+
+    //Pulls the image bytes out of a texture tag, or null if there are none.
+    public static byte[] readData(CompoundTag nbt) {
+        try {
+            if (nbt.contains("img2")) {
                 //Pull data out of NBT tag.
-                data = nbt.getByteArray("img2");
-                
-                //Load using that data
-                uploadUsingData();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        } else if (nbt.contains("img")) { //legacy bloat
-            
-            try {
+                return nbt.getByteArray("img2");
+            } else if (nbt.contains("img")) { //legacy bloat
                 //Pull data out of base64 tag.
-                String dataString = nbt.getString("img");
-                //Put into array.
-                data = Base64.getDecoder().decode(dataString);
-
-                //Load using that data
-                uploadUsingData();
-            } catch (Exception e) {
-                e.printStackTrace();
+                return Base64.getDecoder().decode(nbt.getString("img"));
             }
+        } catch (Exception e) {
+            e.printStackTrace();
         }
 
-        //Grab texture type, if it exists.
+        return null;
+    }
+
+    public static TextureType readType(CompoundTag nbt) {
         if (nbt.contains("type"))
-            type = TextureType.valueOf(nbt.get("type").asString());
+            return TextureType.valueOf(nbt.get("type").asString());
+        return TextureType.color;
     }
 
     //Uploads the data for the texture to the render system, using the current data array.
+    //Decoding happens off-thread, and the upload itself is spread out over the next frames by the TexturePipeline.
     public void uploadUsingData() {
         registerTexture();
-        FiguraMod.doTask(() -> {
-            try {
-                ByteBuffer wrapper = MemoryUtil.memAlloc(data.length);
-                wrapper.put(data);
-                wrapper.rewind();
-                NativeImage image = NativeImage.read(wrapper);
-
-                //Let the RenderSystem know to upload this texture when it's ready.
-                RenderSystem.recordRenderCall(() -> {
-                    uploadTexture(image);
-                    
-                    //IsDone = true whenever we've finished.
-                    //Note that we don't need to revert this at any point.
-                    //If the texture is reloaded, this entire class is nuked anyway.
-                    isDone = true;
-                    FiguraMod.LOGGER.info("Texture Loading Finished");
-                });
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        });
+
+        if (data != null) {
+            TexturePipeline.submit(this, data);
+        } else if (dataSource != null) {
+            //Released, read it back off-thread first.
+            FiguraMod.doTask(() -> {
+                byte[] bytes = getData();
+                if (bytes != null)
+                    TexturePipeline.submit(this, bytes);
+            });
+        }
     }
 
     public enum TextureType {
@@ -0,0 +1,167 @@
+package net.blancworks.figura.models;
+
+import com.google.common.hash.Hashing;
+import com.mojang.blaze3d.systems.RenderSystem;
+import net.blancworks.figura.PlayerData;
+import net.blancworks.figura.metrics.FiguraMetrics;
+import net.minecraft.util.Identifier;
+
+import java.util.*;
+
+/**
+ * Lets avatars with identical textures share one FiguraTexture (and so one decoded copy and one GPU texture).
+ * Textures are keyed by the hash of their image bytes, and reference counted.
+ * Once the last avatar using a texture lets go of it, it's destroyed.
+ * <p>
+ * Textures whose bytes were released are read back from the cache file of any avatar that has them,
+ * so it doesn't matter which of the avatars using it goes away or changes.
+ */
+public class SharedTextureRegistry {
+
+    private static final Map<String, Entry> ENTRIES = new HashMap<>();
+
+    //Gets the shared texture for this image, creating and uploading it if nobody is using it yet.
+    public static FiguraTexture acquire(byte[] data, FiguraTexture.TextureType type) {
+        String key = getKey(data, type);
+
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(key);
+
+            if (entry != null) {
+                FiguraMetrics.SHARED_TEXTURE_HITS.increment();
+                entry.references++;
+                return entry.texture;
+            }
+            FiguraMetrics.SHARED_TEXTURE_MISSES.increment();
+
+            FiguraTexture texture = new FiguraTexture();
+            texture.id = new Identifier("figura", "shared/" + key);
+            texture.type = type;
+            texture.data = data;
+            texture.sharedKey = key;
+
+            ENTRIES.put(key, new Entry(texture));
+
+            texture.uploadUsingData();
+            return texture;
+        }
+    }
+
+    //Lets the texture drop its bytes once it's uploaded, remembering that this player's cache file has them.
+    public static void releaseData(FiguraTexture texture, UUID owner) {
+        String key = texture.sharedKey;
+
+        //Not shared, so this player's cache file is the only place to get it from.
+        if (key == null) {
+            texture.releaseData(() -> PlayerData.readCachedTextureData(owner, texture));
+            return;
+        }
+
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(key);
+            if (entry == null || entry.texture != texture)
+                return;
+
+            entry.cachedBy.add(owner);
+        }
+
+        texture.releaseData(() -> readData(key));
+    }
+
+    //Reads a shared texture's bytes back from the first cache file that still has them.
+    //Reads the disk, so it shouldn't be called from the render thread.
+    private static byte[] readData(String key) {
+        FiguraTexture texture;
+        List<UUID> owners;
+
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(key);
+            if (entry == null)
+                return null;
+
+            texture = entry.texture;
+            owners = new ArrayList<>(entry.cachedBy);
+        }
+
+        for (UUID owner : owners) {
+            byte[] data = PlayerData.readCachedTextureData(owner, texture);
+            if (data != null)
+                return data;
+
+            //Their avatar changed or the cache was cleared, don't look there again.
+            synchronized (ENTRIES) {
+                Entry entry = ENTRIES.get(key);
+                if (entry != null)
+                    entry.cachedBy.remove(owner);
+            }
+        }
+
+        return null;
+    }
+
+    public static String getKey(byte[] data, FiguraTexture.TextureType type) {
+        return type.name().toLowerCase() + "/" + Hashing.sha256().hashBytes(data).toString();
+    }
+
+    //Lets go of a texture. Textures that weren't shared are destroyed right away.
+    public static void release(FiguraTexture texture) {
+        if (texture.sharedKey == null) {
+            destroy(texture);
+            return;
+        }
+
+        synchronized (ENTRIES) {
+            Entry entry = ENTRIES.get(texture.sharedKey);
+
+            if (entry == null || entry.texture != texture || --entry.references > 0)
+                return;
+
+            ENTRIES.remove(texture.sharedKey);
+        }
+
+        destroy(texture);
+    }
+
+    //Destroys the GPU texture, unless something else was registered under the same ID since.
+    private static void destroy(FiguraTexture texture) {
+        Runnable task = () -> {
+            if (PlayerData.getTextureManager().getTexture(texture.id) == texture)
+                PlayerData.getTextureManager().destroyTexture(texture.id);
+        };
+
+        if (RenderSystem.isOnRenderThread())
+            task.run();
+        else
+            RenderSystem.recordRenderCall(task::run);
+    }
+
+    public static int getSharedTextureCount() {
+        synchronized (ENTRIES) {
+            return ENTRIES.size();
+        }
+    }
+
+    //How many avatars are using a texture that someone else is also using.
+    public static int getSavedTextureCount() {
+        int saved = 0;
+
+        synchronized (ENTRIES) {
+            for (Entry entry : ENTRIES.values()) {
+                saved += entry.references - 1;
+            }
+        }
+
+        return saved;
+    }
+
+    private static class Entry {
+        public final FiguraTexture texture;
+        public int references = 1;
+        //Players whose cache file has this texture in it.
+        public final Set<UUID> cachedBy = new LinkedHashSet<>();
+
+        public Entry(FiguraTexture texture) {
+            this.texture = texture;
+        }
+    }
+}
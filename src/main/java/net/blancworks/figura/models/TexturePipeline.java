@@ -0,0 +1,123 @@
+package net.blancworks.figura.models;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import net.blancworks.figura.FiguraMod;
+import net.blancworks.figura.PlayerData;
+import net.minecraft.client.texture.NativeImage;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes avatar textures off-thread and uploads them to the GPU a few at a time.
+ * <p>
+ * PNGs are decoded in parallel on a small pool, each thread reusing one native buffer for the encoded data.
+ * Decoded images wait in a queue, and the render thread uploads at most UPLOAD_BUDGET_PIXELS worth of them per frame,
+ * so lots of avatars arriving at once don't stall a single frame.
+ */
+public class TexturePipeline {
+
+    //Max pixels uploaded per frame. At least one texture is always uploaded, even if it's bigger than this.
+    public static final int UPLOAD_BUDGET_PIXELS = 1024 * 1024;
+    //Scratch buffers bigger than this are freed after use instead of kept around.
+    private static final int MAX_POOLED_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private static final ExecutorService DECODE_EXECUTOR = Executors.newFixedThreadPool(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "Figura Texture Decoder " + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    //One native buffer per decode thread, grown as needed.
+    private static final ThreadLocal<ByteBuffer> SCRATCH_BUFFER = new ThreadLocal<>();
+
+    private static final Queue<PendingUpload> PENDING_UPLOADS = new ConcurrentLinkedQueue<>();
+
+    //Decodes the texture's data off-thread, then queues it to be uploaded.
+    public static CompletableFuture<Void> submit(FiguraTexture texture, byte[] data) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                NativeImage image = decode(data);
+                PENDING_UPLOADS.add(new PendingUpload(texture, image));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, DECODE_EXECUTOR);
+    }
+
+    private static NativeImage decode(byte[] data) throws Exception {
+        ByteBuffer buffer = SCRATCH_BUFFER.get();
+
+        if (buffer == null) {
+            buffer = MemoryUtil.memAlloc(data.length);
+        } else if (buffer.capacity() < data.length) {
+            buffer = MemoryUtil.memRealloc(buffer, data.length);
+        }
+        SCRATCH_BUFFER.set(null);
+
+        try {
+            buffer.clear();
+            buffer.put(data);
+            buffer.flip();
+
+            //The image gets its own copy of the pixels, so the buffer can be reused as soon as this returns.
+            return NativeImage.read(buffer);
+        } finally {
+            if (buffer.capacity() > MAX_POOLED_BUFFER_SIZE) {
+                MemoryUtil.memFree(buffer);
+            } else {
+                SCRATCH_BUFFER.set(buffer);
+            }
+        }
+    }
+
+    //Uploads queued textures, up to the budget. Called from the render thread once per frame.
+    public static void uploadPending() {
+        if (!RenderSystem.isOnRenderThread())
+            return;
+
+        int uploadedPixels = 0;
+        PendingUpload upload;
+
+        while (uploadedPixels < UPLOAD_BUDGET_PIXELS && (upload = PENDING_UPLOADS.poll()) != null) {
+            NativeImage image = upload.image;
+
+            //The texture was destroyed (avatar evicted or reloaded) while it was being decoded.
+            if (PlayerData.getTextureManager().getTexture(upload.texture.id) != upload.texture) {
+                image.close();
+                continue;
+            }
+
+            uploadedPixels += image.getWidth() * image.getHeight();
+
+            try {
+                upload.texture.uploadTexture(image);
+            } catch (Exception e) {
+                e.printStackTrace();
+                image.close();
+            }
+        }
+    }
+
+    public static int getPendingUploadCount() {
+        return PENDING_UPLOADS.size();
+    }
+
+    private static class PendingUpload {
+        public final FiguraTexture texture;
+        public final NativeImage image;
+
+        public PendingUpload(FiguraTexture texture, NativeImage image) {
+            this.texture = texture;
+            this.image = image;
+        }
+    }
+}
@@ -20,7 +20,12 @@ import java.util.UUID;
 
 public class BlockbenchModelDeserializer implements JsonDeserializer<CustomModel> {
 
+    //Set before going through GSON to read the model as a player model.
     public static boolean overrideAsPlayerModel = false;
+    //Whether the groups being built are for a player model. Per instance, so models can be built on more than one thread.
+    public boolean isPlayerModel = false;
+    //Off when the model is only read to work out its complexity. MESH_ groups then just get their vertex count, without importing the OBJ.
+    public boolean loadMeshes = true;
 
     private static final Map<String, CustomModelPart.ParentType> NAME_PARENT_TYPE_TAGS =
             new ImmutableMap.Builder<String, CustomModelPart.ParentType>()
@@ -83,8 +88,7 @@ public class BlockbenchModelDeserializer implements JsonDeserializer<CustomModel
         JsonArray outliner = root.get("outliner").getAsJsonArray();
         JsonArray textures = root.get("textures").getAsJsonArray();
 
-        if(meta.has("model_format") && meta.get("model_format").getAsString().equals("skin"))
-            overrideAsPlayerModel = true;
+        isPlayerModel = overrideAsPlayerModel || (meta.has("model_format") && meta.get("model_format").getAsString().equals("skin"));
         
         retModel.texWidth = resolution.get("width").getAsFloat();
         retModel.texHeight = resolution.get("height").getAsFloat();
@@ -100,23 +104,29 @@ public class BlockbenchModelDeserializer implements JsonDeserializer<CustomModel
             parsedParts.put(id, parseElement(obj, retModel));
         }
 
+        buildOutliner(outliner, retModel, parsedParts);
+        return retModel;
+    }
+
+    //Puts the parsed parts into the model, following the outliner.
+    public void buildOutliner(JsonArray outliner, CustomModel target, Map<UUID, CustomModelPart> parsedParts) {
         for (JsonElement element : outliner) {
             if (element.isJsonObject()) {
                 //If the element is a json object, it's a group, so parse the group.
-                buildGroup(element.getAsJsonObject(), retModel, parsedParts, null, new Vector3f());
+                buildGroup(element.getAsJsonObject(), target, parsedParts, null, new Vector3f());
             } else {
                 //If the element is a string, it's an element, so just add it to the children.
                 String s = element.getAsString();
 
                 if (s != null)
-                    retModel.allParts.add(parsedParts.get(UUID.fromString(s)));
+                    target.allParts.add(parsedParts.get(UUID.fromString(s)));
             }
         }
 
         //Reset this value.
         overrideAsPlayerModel = false;
-        retModel.sortAllParts();
-        return retModel;
+        isPlayerModel = false;
+        target.sortAllParts();
     }
 
     //Builds out a group from a JsonObject that specifies the group in the outline.
@@ -130,7 +140,15 @@ public class BlockbenchModelDeserializer implements JsonDeserializer<CustomModel
                 Path meshFilePath = LocalPlayerData.getContentDirectory().resolve(groupPart.name.substring(5) + ".obj");
 
                 if (Files.exists(meshFilePath)) {
-                    groupPart = CustomModelPartMesh.loadFromObj(meshFilePath);
+                    if (loadMeshes) {
+                        groupPart = CustomModelPartMesh.loadFromObj(meshFilePath);
+                    } else {
+                        try {
+                            groupPart.vertexCount = ObjMeshParser.countVertices(meshFilePath);
+                        } catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
                     groupPart.name = group.get("name").getAsString();
                 }
             }
@@ -156,7 +174,7 @@ public class BlockbenchModelDeserializer implements JsonDeserializer<CustomModel
                     }
                 }
                 //Check for player model parts.
-                if(overrideAsPlayerModel){
+                if(isPlayerModel){
                     for (Map.Entry<String, PlayerSkinRemap> entry : PLAYER_SKIN_REMAPS.entrySet()) {
                         if (groupPart.name.contains(entry.getKey())) {
                             groupPart.parentType = entry.getValue().parentType;
@@ -0,0 +1,356 @@
+package net.blancworks.figura.models.parsers;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import net.blancworks.figura.models.CustomModel;
+import net.blancworks.figura.models.CustomModelPart;
+import net.blancworks.figura.models.CustomModelPartCuboid;
+import net.minecraft.client.util.math.Vector3f;
+import net.minecraft.nbt.*;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Reads a Blockbench model straight off a stream, without reading the whole file in or building its JSON tree.
+ * Embedded textures (most of the file, usually) are skipped, and cuboids are built from the tokens as they're read.
+ * <p>
+ * The outliner is tiny, so it's still read as JSON and built by the BlockbenchModelDeserializer,
+ * which keeps the groups exactly the same as when the model goes through GSON.
+ */
+public class BlockbenchModelStreamParser {
+    //How often progress is reported, in characters.
+    private static final int PROGRESS_INTERVAL = 64 * 1024;
+
+    private static final Map<String, String> FACE_KEYS = new Object2ObjectOpenHashMap<String, String>() {{
+        put("north", "n");
+        put("south", "s");
+        put("east", "e");
+        put("west", "w");
+        put("up", "u");
+        put("down", "d");
+    }};
+
+    private final BlockbenchModelDeserializer groupBuilder = new BlockbenchModelDeserializer();
+
+    private final Map<UUID, CustomModelPart> parsedParts = new Object2ObjectOpenHashMap<>();
+    private final List<CustomModelPartCuboid> cuboids = new ArrayList<>();
+    private JsonArray outliner = new JsonArray();
+    private boolean isSkinModel = false;
+
+    /**
+     * Parses a model.
+     *
+     * @param reader        the model file
+     * @param length        roughly how many characters there are, for the progress
+     * @param isPlayerModel whether to read it as a player model (player_model.bbmodel), skin models always are
+     * @param progress      gets how far along we are, from 0 to 1
+     */
+    public static CustomModel parse(Reader reader, long length, boolean isPlayerModel, @Nullable DoubleConsumer progress) throws IOException {
+        return parse(reader, length, isPlayerModel, true, progress);
+    }
+
+    /**
+     * Parses a model.
+     *
+     * @param loadMeshes    false to leave MESH_ groups unloaded, when the model is only read for its complexity
+     */
+    public static CustomModel parse(Reader reader, long length, boolean isPlayerModel, boolean loadMeshes, @Nullable DoubleConsumer progress) throws IOException {
+        ProgressReader progressReader = new ProgressReader(reader, length, progress);
+
+        BlockbenchModelStreamParser parser = new BlockbenchModelStreamParser();
+        parser.groupBuilder.isPlayerModel = isPlayerModel;
+        parser.groupBuilder.loadMeshes = loadMeshes;
+        CustomModel model = parser.read(new JsonReader(progressReader));
+
+        if (progress != null)
+            progress.accept(1);
+        return model;
+    }
+
+    private CustomModel read(JsonReader json) throws IOException {
+        CustomModel model = new CustomModel();
+        json.setLenient(true);
+
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "meta":
+                    readMeta(json);
+                    break;
+                case "resolution":
+                    readResolution(json, model);
+                    break;
+                case "elements":
+                    readElements(json);
+                    break;
+                case "outliner":
+                    outliner = new JsonParser().parse(json).getAsJsonArray();
+                    break;
+                default:
+                    //Textures, animations, and whatever else. Skipped without ever being turned into strings.
+                    json.skipValue();
+                    break;
+            }
+        }
+        json.endObject();
+
+        //The resolution can come after the elements, so it's only put in once everything's read.
+        for (CustomModelPartCuboid cuboid : cuboids) {
+            cuboid.cuboidProperties.put("tw", FloatTag.of(model.texWidth));
+            cuboid.cuboidProperties.put("th", FloatTag.of(model.texHeight));
+        }
+        cuboids.parallelStream().forEach(CustomModelPart::rebuild);
+
+        if (isSkinModel)
+            groupBuilder.isPlayerModel = true;
+
+        groupBuilder.buildOutliner(outliner, model, parsedParts);
+        return model;
+    }
+
+    private void readMeta(JsonReader json) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            if (json.nextName().equals("model_format") && json.peek() == JsonToken.STRING)
+                isSkinModel = json.nextString().equals("skin");
+            else
+                json.skipValue();
+        }
+        json.endObject();
+    }
+
+    private void readResolution(JsonReader json, CustomModel model) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "width":
+                    model.texWidth = readFloat(json);
+                    break;
+                case "height":
+                    model.texHeight = readFloat(json);
+                    break;
+                default:
+                    json.skipValue();
+                    break;
+            }
+        }
+        json.endObject();
+    }
+
+    private void readElements(JsonReader json) throws IOException {
+        json.beginArray();
+        while (json.hasNext()) {
+            if (json.peek() == JsonToken.BEGIN_OBJECT)
+                readElement(json);
+            else
+                json.skipValue();
+        }
+        json.endArray();
+    }
+
+    //Same as BlockbenchModelDeserializer.parseElement, minus the JSON objects.
+    private void readElement(JsonReader json) throws IOException {
+        CustomModelPartCuboid part = new CustomModelPartCuboid();
+        CompoundTag properties = new CompoundTag();
+        UUID id = null;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "uuid":
+                    id = UUID.fromString(json.nextString());
+                    break;
+                case "name":
+                    part.name = json.nextString();
+                    break;
+                case "visibility":
+                    part.isHidden = !json.nextBoolean();
+                    break;
+                case "from":
+                    properties.put("f", readVectorTag(json));
+                    break;
+                case "to":
+                    properties.put("t", readVectorTag(json));
+                    break;
+                case "origin": {
+                    float[] origin = readVector(json);
+                    part.pivot = new Vector3f(origin[0], origin[1], -origin[2]);
+                    break;
+                }
+                case "rotation": {
+                    float[] rotation = readVector(json);
+                    part.rot = new Vector3f(rotation[0], rotation[1], rotation[2]);
+                    break;
+                }
+                case "inflate":
+                    properties.put("inf", FloatTag.of(readFloat(json)));
+                    break;
+                case "faces":
+                    readFaces(json, properties);
+                    break;
+                case "children":
+                    //Elements can have elements in them.
+                    if (json.peek() == JsonToken.BEGIN_ARRAY)
+                        readElements(json);
+                    else
+                        json.skipValue();
+                    break;
+                default:
+                    json.skipValue();
+                    break;
+            }
+        }
+        json.endObject();
+
+        if (id == null)
+            return;
+
+        part.cuboidProperties = properties;
+        parsedParts.put(id, part);
+        cuboids.add(part);
+    }
+
+    private void readFaces(JsonReader json, CompoundTag properties) throws IOException {
+        json.beginObject();
+        while (json.hasNext()) {
+            String key = FACE_KEYS.get(json.nextName());
+
+            if (key == null) {
+                json.skipValue();
+                continue;
+            }
+
+            Tag face = readTag(json);
+            if (face != null)
+                properties.put(key, face);
+        }
+        json.endObject();
+    }
+
+    //Turns any JSON value into NBT, the same way BlockbenchModelDeserializer.getNbtElementFromJsonElement does.
+    private static Tag readTag(JsonReader json) throws IOException {
+        switch (json.peek()) {
+            case BEGIN_ARRAY: {
+                ListTag list = new ListTag();
+
+                json.beginArray();
+                while (json.hasNext()) {
+                    Tag element = readTag(json);
+                    if (element != null)
+                        list.add(element);
+                }
+                json.endArray();
+
+                return list;
+            }
+            case BEGIN_OBJECT: {
+                CompoundTag compound = new CompoundTag();
+
+                json.beginObject();
+                while (json.hasNext()) {
+                    String key = json.nextName();
+                    Tag element = readTag(json);
+                    if (element != null)
+                        compound.put(key, element);
+                }
+                json.endObject();
+
+                return compound;
+            }
+            case BOOLEAN:
+                return ByteTag.of(json.nextBoolean());
+            case NUMBER:
+                return FloatTag.of(readFloat(json));
+            case STRING:
+                return StringTag.of(json.nextString());
+            default:
+                json.skipValue();
+                return null;
+        }
+    }
+
+    //Parsed from the number's text, like GSON does, so we get the same float.
+    private static float readFloat(JsonReader json) throws IOException {
+        return Float.parseFloat(json.nextString());
+    }
+
+    //Reads the first three numbers of an array.
+    private static float[] readVector(JsonReader json) throws IOException {
+        float[] vector = new float[3];
+        int i = 0;
+
+        json.beginArray();
+        while (json.hasNext()) {
+            if (i < 3)
+                vector[i++] = readFloat(json);
+            else
+                json.skipValue();
+        }
+        json.endArray();
+
+        return vector;
+    }
+
+    private static ListTag readVectorTag(JsonReader json) throws IOException {
+        float[] vector = readVector(json);
+
+        ListTag list = new ListTag();
+        for (float value : vector) {
+            list.add(FloatTag.of(value));
+        }
+        return list;
+    }
+
+    /**
+     * Counts how much of the file has been read.
+     */
+    private static class ProgressReader extends FilterReader {
+        private final long length;
+        private final DoubleConsumer progress;
+        private long read = 0;
+        private long lastReported = 0;
+
+        public ProgressReader(Reader in, long length, @Nullable DoubleConsumer progress) {
+            super(in);
+            this.length = length;
+            this.progress = progress;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = super.read();
+            if (c != -1)
+                onRead(1);
+            return c;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int count) throws IOException {
+            int amount = super.read(buffer, offset, count);
+            if (amount > 0)
+                onRead(amount);
+            return amount;
+        }
+
+        private void onRead(int amount) {
+            read += amount;
+
+            if (progress == null || length <= 0 || read - lastReported < PROGRESS_INTERVAL)
+                return;
+
+            lastReported = read;
+            progress.accept(Math.min(read / (double) length, 1));
+        }
+    }
+}
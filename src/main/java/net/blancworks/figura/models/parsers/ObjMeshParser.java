@@ -0,0 +1,308 @@
+package net.blancworks.figura.models.parsers;
+
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Reads OBJ files into an indexed mesh.
+ * <p>
+ * The lines are split into chunks that are parsed in parallel, then stitched back together in order.
+ * Every distinct position/uv/normal combination becomes one vertex, and faces are made of indices into those,
+ * so a vertex shared by many faces is only stored once.
+ * Faces come out as quads (what the renderer draws), triangles are padded with a repeated corner.
+ */
+public class ObjMeshParser {
+    //Lines per chunk.
+    private static final int CHUNK_SIZE = 4096;
+
+    //Layout of a vertex, same as CustomModelPart.vertexData.
+    public static final int VERTEX_SIZE = 8;
+
+    //Vertices are deduplicated by packing their position, uv and normal index (plus one) into 21 bits each.
+    //That's two million of each, far more than anything that could be rendered, bigger files are turned down.
+    public static final int MAX_ELEMENTS = (1 << 21) - 1;
+
+    public static Result parse(Path path, @Nullable DoubleConsumer progress) throws IOException {
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        report(progress, 0.1);
+
+        //Parse each chunk on its own.
+        int chunkCount = (lines.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        Chunk[] chunks = new Chunk[chunkCount];
+        AtomicInteger chunksDone = new AtomicInteger();
+
+        IntStream.range(0, chunkCount).parallel().forEach(i -> {
+            chunks[i] = new Chunk(lines.subList(i * CHUNK_SIZE, Math.min((i + 1) * CHUNK_SIZE, lines.size())));
+            report(progress, 0.1 + 0.6 * chunksDone.incrementAndGet() / chunkCount);
+        });
+
+        //Stitch the chunks together, in order.
+        FloatArrayList positions = new FloatArrayList();
+        FloatArrayList uvs = new FloatArrayList();
+        FloatArrayList normals = new FloatArrayList();
+        List<int[]> faces = new ArrayList<>();
+
+        for (Chunk chunk : chunks) {
+            //Negative indices count back from what's been read so far, which a chunk can't know on its own.
+            for (int f = 0; f < chunk.faces.size(); f++) {
+                int[] face = chunk.faces.get(f);
+                int positionCount = positions.size() / 3 + chunk.facePositionCounts.getInt(f);
+                int uvCount = uvs.size() / 2 + chunk.faceUvCounts.getInt(f);
+                int normalCount = normals.size() / 3 + chunk.faceNormalCounts.getInt(f);
+
+                for (int i = 0; i < face.length; i += 3) {
+                    face[i] = resolveIndex(face[i], positionCount);
+                    face[i + 1] = resolveIndex(face[i + 1], uvCount);
+                    face[i + 2] = resolveIndex(face[i + 2], normalCount);
+                }
+                faces.add(face);
+            }
+
+            positions.addAll(chunk.positions);
+            uvs.addAll(chunk.uvs);
+            normals.addAll(chunk.normals);
+        }
+
+        if (positions.size() / 3 > MAX_ELEMENTS || uvs.size() / 2 > MAX_ELEMENTS || normals.size() / 3 > MAX_ELEMENTS)
+            throw new IOException("OBJ has more than " + MAX_ELEMENTS + " positions, uvs or normals");
+
+        Result result = buildIndexed(faces, positions, uvs, normals);
+        report(progress, 1);
+        return result;
+    }
+
+    //How many vertices the parsed mesh would render, counted from the faces alone. Nothing is read into memory.
+    public static int countVertices(Path path) throws IOException {
+        int count = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.startsWith("f ") && !line.startsWith("f\t"))
+                    continue;
+
+                //Same as buildIndexed, quads as they are, everything else fanned out into padded quads.
+                int corners = line.split("\\s+").length - 1;
+                if (corners == 4)
+                    count += 4;
+                else if (corners >= 3)
+                    count += (corners - 2) * 4;
+            }
+        }
+
+        return count;
+    }
+
+    private static Result buildIndexed(List<int[]> faces, FloatArrayList positions, FloatArrayList uvs, FloatArrayList normals) throws IOException {
+        Result result = new Result();
+
+        //(position, uv, normal) -> vertex index
+        Long2IntOpenHashMap vertexIds = new Long2IntOpenHashMap();
+        vertexIds.defaultReturnValue(-1);
+
+        FloatArrayList vertices = new FloatArrayList();
+        IntArrayList indices = new IntArrayList();
+        int[] corners = new int[4];
+
+        for (int[] face : faces) {
+            int cornerCount = face.length / 3;
+
+            if (cornerCount < 3)
+                continue;
+
+            int[] faceVertices = new int[cornerCount];
+            for (int i = 0; i < cornerCount; i++) {
+                checkIndex(face[i * 3], positions.size() / 3, "position", false);
+                checkIndex(face[i * 3 + 1], uvs.size() / 2, "uv", true);
+                checkIndex(face[i * 3 + 2], normals.size() / 3, "normal", true);
+
+                faceVertices[i] = getVertex(face[i * 3], face[i * 3 + 1], face[i * 3 + 2], positions, uvs, normals, vertexIds, vertices, result);
+            }
+
+            if (cornerCount == 4) {
+                //Corners go in reversed, to match the winding the renderer expects.
+                for (int i = 3; i >= 0; i--) {
+                    indices.add(faceVertices[i]);
+                }
+                continue;
+            }
+
+            //Triangles (and bigger polygons, fanned out into triangles) become quads with the last corner repeated.
+            for (int i = 1; i < cornerCount - 1; i++) {
+                corners[0] = faceVertices[i + 1];
+                corners[1] = faceVertices[i + 1];
+                corners[2] = faceVertices[i];
+                corners[3] = faceVertices[0];
+
+                for (int corner : corners) {
+                    indices.add(corner);
+                }
+            }
+        }
+
+        result.vertices = vertices.toFloatArray();
+        result.indices = indices.toIntArray();
+        return result;
+    }
+
+    private static int getVertex(int position, int uv, int normal, FloatArrayList positions, FloatArrayList uvs, FloatArrayList normals, Long2IntOpenHashMap vertexIds, FloatArrayList vertices, Result result) {
+        //Can't collide, parse made sure every index fits in its 21 bits.
+        long key = ((long) (position + 1) << 42) | ((long) (uv + 1) << 21) | (normal + 1);
+
+        int id = vertexIds.get(key);
+        if (id != -1)
+            return id;
+
+        id = vertices.size() / VERTEX_SIZE;
+        vertexIds.put(key, id);
+
+        float x = get(positions, position * 3), y = -get(positions, position * 3 + 1), z = get(positions, position * 3 + 2);
+        vertices.add(x);
+        vertices.add(y);
+        vertices.add(z);
+
+        vertices.add(get(uvs, uv * 2));
+        vertices.add(1 - get(uvs, uv * 2 + 1));
+
+        vertices.add(get(normals, normal * 3));
+        vertices.add(-get(normals, normal * 3 + 1));
+        vertices.add(get(normals, normal * 3 + 2));
+
+        result.include(x, y, z);
+        return id;
+    }
+
+    //Indices are resolved to start at 0, -1 means the corner didn't have one.
+    private static void checkIndex(int index, int count, String name, boolean optional) throws IOException {
+        if (index == -1 && optional)
+            return;
+
+        if (index < 0 || index >= count)
+            throw new IOException("OBJ face uses " + name + " " + (index + 1) + ", but only " + count + " are defined");
+    }
+
+    //Missing uvs and normals (index -1) read as 0.
+    private static float get(FloatArrayList list, int index) {
+        return index >= 0 && index < list.size() ? list.getFloat(index) : 0;
+    }
+
+    //OBJ indices start at 1, negative ones count back from the end. 0 means there isn't one.
+    //Negative ones that go back too far come out below -1, so they're caught instead of read as missing.
+    private static int resolveIndex(int index, int count) {
+        if (index > 0)
+            return index - 1;
+        if (index < 0)
+            return count + index >= 0 ? count + index : -2;
+        return -1;
+    }
+
+    private static void report(@Nullable DoubleConsumer progress, double value) {
+        if (progress != null)
+            progress.accept(value);
+    }
+
+    /**
+     * The mesh, with vertices laid out like CustomModelPart.vertexData, and four indices per face.
+     */
+    public static class Result {
+        public float[] vertices;
+        public int[] indices;
+
+        public float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        public float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+
+        private void include(float x, float y, float z) {
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+        }
+    }
+
+    /**
+     * The data in one run of lines. Face indices are left as written, they're resolved once chunks are put together.
+     */
+    private static class Chunk {
+        public final FloatArrayList positions = new FloatArrayList();
+        public final FloatArrayList uvs = new FloatArrayList();
+        public final FloatArrayList normals = new FloatArrayList();
+        public final List<int[]> faces = new ArrayList<>();
+
+        //How many of each this chunk had read when each face came up, for relative indices.
+        public final IntArrayList facePositionCounts = new IntArrayList();
+        public final IntArrayList faceUvCounts = new IntArrayList();
+        public final IntArrayList faceNormalCounts = new IntArrayList();
+
+        public Chunk(List<String> lines) {
+            for (String line : lines) {
+                parseLine(line.trim());
+            }
+        }
+
+        private void parseLine(String line) {
+            if (line.isEmpty() || line.charAt(0) == '#')
+                return;
+
+            String[] parts = line.split("\\s+");
+
+            switch (parts[0]) {
+                case "v":
+                    for (int i = 1; i <= 3; i++) {
+                        positions.add(parseFloat(parts, i));
+                    }
+                    break;
+                case "vt":
+                    for (int i = 1; i <= 2; i++) {
+                        uvs.add(parseFloat(parts, i));
+                    }
+                    break;
+                case "vn":
+                    for (int i = 1; i <= 3; i++) {
+                        normals.add(parseFloat(parts, i));
+                    }
+                    break;
+                case "f":
+                    parseFace(parts);
+                    break;
+            }
+        }
+
+        //Each corner is v, v/vt, v//vn or v/vt/vn.
+        private void parseFace(String[] parts) {
+            int[] face = new int[(parts.length - 1) * 3];
+
+            for (int i = 1; i < parts.length; i++) {
+                String[] corner = parts[i].split("/");
+
+                for (int j = 0; j < 3; j++) {
+                    face[(i - 1) * 3 + j] = j < corner.length && !corner[j].isEmpty() ? Integer.parseInt(corner[j]) : 0;
+                }
+            }
+
+            faces.add(face);
+            facePositionCounts.add(positions.size() / 3);
+            faceUvCounts.add(uvs.size() / 2);
+            faceNormalCounts.add(normals.size() / 3);
+        }
+
+        private static float parseFloat(String[] parts, int index) {
+            return index < parts.length ? Float.parseFloat(parts[index]) : 0;
+        }
+    }
+}
@@ -123,7 +123,7 @@ public class FiguraNetworkManager implements IFiguraNetwork {
                         
                         PlayerData data =  PlayerDataManager.getDataForPlayer(id);
                         
-                        data.loadFromNbt(nbt);
+                        data.loadFromNbt(nbt, dataAsBytes.length);
                         data.lastHash = getAvatarHashSync(id);
                         data.saveToCache(id);
                     }
@@ -163,7 +163,7 @@ public class FiguraNetworkManager implements IFiguraNetwork {
             
             if(!newHash.equals(previousHash)){
                 PlayerData data = PlayerDataManager.getDataForPlayer(playerID);
-                data.isInvalidated = true;
+                data.invalidate();
             }
         });
     }
@@ -1,7 +1,5 @@
 package net.blancworks.figura.network;
 
-import com.google.common.io.ByteSource;
-import com.google.common.io.LittleEndianDataInputStream;
 import com.google.common.io.LittleEndianDataOutputStream;
 import com.neovisionaries.ws.client.WebSocket;
 import com.neovisionaries.ws.client.WebSocketAdapter;
@@ -12,11 +10,16 @@ import net.blancworks.figura.network.messages.avatar.AvatarProvideResponseHandle
 import net.blancworks.figura.network.messages.avatar.AvatarUploadResponseHandler;
 import net.blancworks.figura.network.messages.pings.PingMessageHandler;
 import net.blancworks.figura.network.messages.pubsub.ChannelAvatarUpdateHandler;
+import net.blancworks.figura.network.messages.user.UserAvatarBatchProvideResponseHandler;
+import net.blancworks.figura.network.messages.user.UserAvatarHashBatchProvideResponseHandler;
 import net.blancworks.figura.network.messages.user.UserAvatarHashProvideResponseHandler;
 import net.blancworks.figura.network.messages.user.UserAvatarProvideResponseHandler;
 import net.blancworks.figura.network.messages.utility.ErrorMessageHandler;
+import net.blancworks.figura.network.replay.SessionRecorder;
 
 import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -52,29 +55,46 @@ public class FiguraNetworkMessageHandler extends WebSocketAdapter {
         add(
                 ErrorMessageHandler::new
         );
+        //Batched handlers go last, so the ids of everything above stay the same for older servers.
+        add(
+                UserAvatarBatchProvideResponseHandler::new
+        );
+        add(
+                UserAvatarHashBatchProvideResponseHandler::new
+        );
     }};
 
+    //One instance of each handler, indexed by message ID. Handlers are stateless, so they're reused for every message.
+    private final MessageHandler[] dispatchTable;
+
     private boolean skipNext = false;
 
     public final CompletableFuture<Void> initializedFuture = new CompletableFuture<>();
 
     public FiguraNetworkMessageHandler(NewFiguraNetworkManager manager) {
         this.manager = manager;
+
+        dispatchTable = new MessageHandler[allMessageHandlers.size()];
+        for (int i = 0; i < dispatchTable.length; i++) {
+            dispatchTable[i] = allMessageHandlers.get(i).get();
+        }
     }
 
     public void sendClientRegistry(WebSocket socket) {
         try {
             try (ByteArrayOutputStream outStream = new ByteArrayOutputStream();
                  LittleEndianDataOutputStream outWriter = new LittleEndianDataOutputStream(outStream)) {
-                outWriter.writeInt(allMessageHandlers.size());
-                for (Supplier<MessageHandler> handler : allMessageHandlers) {
-                    byte[] data = handler.get().getProtocolName().getBytes(StandardCharsets.UTF_8);
+                outWriter.writeInt(dispatchTable.length);
+                for (MessageHandler handler : dispatchTable) {
+                    byte[] data = handler.getProtocolName().getBytes(StandardCharsets.UTF_8);
 
                     outWriter.writeInt(data.length);
                     outWriter.write(data);
                 }
 
-                socket.sendBinary(outStream.toByteArray());
+                byte[] frame = outStream.toByteArray();
+                SessionRecorder.onSent(frame);
+                socket.sendBinary(frame);
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -84,11 +104,13 @@ public class FiguraNetworkMessageHandler extends WebSocketAdapter {
     @Override
     public void onConnected(WebSocket websocket, Map<String, List<String>> headers) throws Exception {
         super.onConnected(websocket, headers);
+        SessionRecorder.onConnected();
     }
 
     @Override
     public void onBinaryMessage(WebSocket websocket, byte[] binary) throws Exception {
         super.onBinaryMessage(websocket, binary);
+        SessionRecorder.onReceived(binary);
 
         if (skipNext) {
             skipNext = false;
@@ -96,37 +118,47 @@ public class FiguraNetworkMessageHandler extends WebSocketAdapter {
         }
 
         try {
-            //Get a stream for the bytes
-            try (LittleEndianDataInputStream dis = new LittleEndianDataInputStream(ByteSource.wrap(binary).openStream())) {
-                if (NewFiguraNetworkManager.msgRegistry.isEmpty()) {
-                    NewFiguraNetworkManager.msgRegistry.readRegistryMessage(dis);
-
-                    FiguraMod.LOGGER.info("Connection fully initialized.");
-                    initializedFuture.complete(null);
+            //Read straight out of the frame.
+            ByteBuffer buffer = ByteBuffer.wrap(binary).order(ByteOrder.LITTLE_ENDIAN);
 
-                    return;
-                }
+            if (NewFiguraNetworkManager.msgRegistry.isEmpty()) {
+                NewFiguraNetworkManager.msgRegistry.readRegistryMessage(buffer);
+                SessionRecorder.onRegistryReceived(binary);
 
-                //Read the first byte, use that as the ID of the handler.
-                int handlerID = dis.readByte() - Byte.MIN_VALUE - 1;
+                FiguraMod.LOGGER.info("Connection fully initialized.");
+                initializedFuture.complete(null);
 
-                //If there is a supplier for this ID
-                if (allMessageHandlers.size() > handlerID) {
-                    //Get the handler.
-                    MessageHandler handler = allMessageHandlers.get(handlerID).get();
+                return;
+            }
 
-                    handler.handleMessage(dis);
+            //Read the first byte, use that as the ID of the handler.
+            int handlerID = getHandlerID(buffer.get());
 
-                } else {
-                    FiguraMod.LOGGER.error("INVALID MESSAGE HANDLER ID " + handlerID);
-                    return;
-                }
+            //If there is a handler for this ID
+            if (handlerID >= 0 && handlerID < dispatchTable.length) {
+                //Hand it the rest of the frame.
+                dispatchTable[handlerID].handleMessage(buffer.slice().order(ByteOrder.LITTLE_ENDIAN));
+            } else {
+                FiguraMod.LOGGER.error("INVALID MESSAGE HANDLER ID " + handlerID);
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    //The handler a message goes to, going by its first byte. Null if there's no handler for it.
+    public MessageHandler getHandlerFor(byte[] message) {
+        if (message.length == 0)
+            return null;
+
+        int handlerID = getHandlerID(message[0]);
+        return handlerID >= 0 && handlerID < dispatchTable.length ? dispatchTable[handlerID] : null;
+    }
+
+    private static int getHandlerID(byte id) {
+        return id - Byte.MIN_VALUE - 1;
+    }
+
     @Override
     public void onCloseFrame(WebSocket websocket, WebSocketFrame frame) throws Exception {
         super.onCloseFrame(websocket, frame);
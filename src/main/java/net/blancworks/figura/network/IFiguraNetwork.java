@@ -1,7 +1,12 @@
 package net.blancworks.figura.network;
 
+import net.blancworks.figura.PlayerData;
+import net.blancworks.figura.PlayerDataManager;
 import net.minecraft.text.Text;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
@@ -13,6 +18,17 @@ public interface IFiguraNetwork {
     //Returns a CompoundTag contianing all the data this network reports for the avatar of a given UUID.
     CompletableFuture getAvatarData(UUID id);
     
+    //Gets the avatar data for many UUIDs at once. Networks that can't batch just request them one by one.
+    default Map<UUID, CompletableFuture> getAvatarDataBatch(Collection<UUID> ids) {
+        Map<UUID, CompletableFuture> futures = new HashMap<>();
+
+        for (UUID id : ids) {
+            futures.put(id, getAvatarData(id));
+        }
+
+        return futures;
+    }
+    
     //Posts an avatar to the server.
     CompletableFuture postAvatar();
     
@@ -25,6 +41,14 @@ public interface IFiguraNetwork {
     //Gets the hash for a given avatar from the network.
     CompletableFuture checkAvatarHash(UUID playerID, String previousHash);
     
+    //Gets the hashes for the avatars of many players at once.
+    default void checkAvatarHashes(Collection<UUID> playerIDs) {
+        for (UUID id : playerIDs) {
+            PlayerData data = PlayerDataManager.LOADED_PLAYER_DATA.get(id);
+            checkAvatarHash(id, data != null ? data.lastHash : null);
+        }
+    }
+    
     void parseKickAuthMessage(Text reason);
     
     void onClose();
@@ -0,0 +1,369 @@
+package net.blancworks.figura.network;
+
+import net.blancworks.figura.FiguraMod;
+import net.blancworks.figura.network.messages.MessageSender;
+import net.blancworks.figura.network.messages.user.UserGetCurrentAvatarBatchMessageSender;
+import net.blancworks.figura.network.messages.user.UserGetCurrentAvatarHashBatchMessageSender;
+import net.blancworks.figura.network.messages.user.UserGetCurrentAvatarMessageSender;
+import net.blancworks.figura.network.replay.SessionReplay;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves all the traffic of the new network through a fixed set of threads.
+ * One thread owns the connection (auth, connect, reconnect), one thread writes queued frames to the socket in order,
+ * and avatar requests are tracked by UUID, so any number of them can be waiting on the server at once.
+ */
+public class NetworkPipeline {
+
+    //Max frames that can be waiting to be written. Anything past this is dropped.
+    public static final int MAX_QUEUED_MESSAGES = 1024;
+    //How long an avatar request can wait for a response before it's dropped, so it can be requested again.
+    public static final long REQUEST_TIMEOUT_MS = 30 * 1000;
+    //How long we wait after a failed connection attempt before trying again.
+    public static final long RECONNECT_COOLDOWN_MS = 5 * 1000;
+    //Max users in a single batched request, so one frame never gets too big.
+    public static final int MAX_BATCH_SIZE = 64;
+
+    private final NewFiguraNetworkManager manager;
+
+    //The connection actor. Every auth/connect goes through this one thread, so they can never overlap.
+    private final ExecutorService connectionExecutor = Executors.newSingleThreadExecutor(r -> createThread(r, "Figura Network Connection"));
+
+    //Frames waiting to be written, in order.
+    private final LinkedBlockingDeque<MessageSender> outgoing = new LinkedBlockingDeque<>(MAX_QUEUED_MESSAGES);
+    private Thread writerThread;
+
+    //Avatar requests that have been queued, but not answered yet.
+    private final Map<UUID, PendingRequest> inFlight = new ConcurrentHashMap<>();
+
+    private volatile long lastFailedConnection = 0;
+
+    //----STATS----
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong completedRequests = new AtomicLong();
+    private final AtomicLong timedOutRequests = new AtomicLong();
+    private volatile long lastLatencyMs = 0;
+    private volatile long averageLatencyMs = 0;
+
+    public NetworkPipeline(NewFiguraNetworkManager manager) {
+        this.manager = manager;
+    }
+
+    private static Thread createThread(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    //--Connection--
+
+    //Runs a task on the connection thread.
+    public CompletableFuture<Void> runOnConnection(Runnable task) {
+        return CompletableFuture.runAsync(task, connectionExecutor);
+    }
+
+    public boolean isConnected() {
+        return NewFiguraNetworkManager.currWebSocket != null && NewFiguraNetworkManager.currWebSocket.isOpen()
+                && NewFiguraNetworkManager.msgRegistry != null && !NewFiguraNetworkManager.msgRegistry.isEmpty();
+    }
+
+    //Blocks until the connection actor has made sure there is a usable connection.
+    //Returns false if there isn't one, in which case we don't try again until the cooldown is over.
+    private boolean awaitConnection() {
+        if (isConnected())
+            return true;
+
+        if (System.currentTimeMillis() - lastFailedConnection < RECONNECT_COOLDOWN_MS)
+            return false;
+
+        try {
+            connectionExecutor.submit(() -> {
+                if (!isConnected())
+                    manager.ensureConnection().get(NewFiguraNetworkManager.TIMEOUT_SECONDS * 2, TimeUnit.SECONDS);
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        if (!isConnected()) {
+            lastFailedConnection = System.currentTimeMillis();
+            return false;
+        }
+
+        return true;
+    }
+
+    //--Outgoing--
+
+    //Queues up a message to be sent. Returns false if the queue was full and the message was dropped.
+    public boolean send(MessageSender sender) {
+        ensureWriter();
+
+        if (!outgoing.offer(sender)) {
+            logDropped(sender, "the queue is full");
+            onDropped(sender);
+            return false;
+        }
+        return true;
+    }
+
+    //Same as send, but skips to the front of the queue. Used for things that need to go out right after a connect.
+    public boolean sendFirst(MessageSender sender) {
+        ensureWriter();
+
+        if (!outgoing.offerFirst(sender)) {
+            logDropped(sender, "the queue is full");
+            onDropped(sender);
+            return false;
+        }
+        return true;
+    }
+
+    private synchronized void ensureWriter() {
+        if (writerThread != null && writerThread.isAlive())
+            return;
+
+        writerThread = createThread(this::writeLoop, "Figura Network Writer");
+        writerThread.start();
+    }
+
+    private void writeLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            MessageSender sender;
+
+            try {
+                sender = outgoing.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            //A replay stands in for the server, nothing goes out while one runs.
+            //Dropped like any other unsent message, so avatar requests don't sit there until they time out.
+            if (SessionReplay.isReplaying()) {
+                onDropped(sender);
+                continue;
+            }
+
+            if (!awaitConnection()) {
+                //Avatar requests are failed right away, so they can be asked for again.
+                //Everything else goes back to the front and waits for the next attempt, instead of being lost to one failed connect.
+                if (isAvatarRequest(sender) || !outgoing.offerFirst(sender)) {
+                    logDropped(sender, "there's no connection");
+                    onDropped(sender);
+                }
+
+                if (!waitForCooldown())
+                    return;
+                continue;
+            }
+
+            sender.sent.complete(sender.sendMessage(NewFiguraNetworkManager.currWebSocket));
+        }
+    }
+
+    //Sleeps until we can try to connect again. Returns false if the writer was interrupted.
+    private boolean waitForCooldown() {
+        long wait = lastFailedConnection + RECONNECT_COOLDOWN_MS - System.currentTimeMillis();
+        if (wait <= 0)
+            return true;
+
+        try {
+            Thread.sleep(wait);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    private static boolean isAvatarRequest(MessageSender sender) {
+        return sender instanceof UserGetCurrentAvatarMessageSender || sender instanceof UserGetCurrentAvatarBatchMessageSender;
+    }
+
+    private static void logDropped(MessageSender sender, String reason) {
+        FiguraMod.LOGGER.warn("Dropped " + sender.getProtocolName() + " message, " + reason);
+    }
+
+    private void onDropped(MessageSender sender) {
+        droppedMessages.incrementAndGet();
+        sender.sent.complete(false);
+
+        //Nothing is going to answer this one, so let it be requested again.
+        if (sender instanceof UserGetCurrentAvatarMessageSender) {
+            failRequest(((UserGetCurrentAvatarMessageSender) sender).id);
+        } else if (sender instanceof UserGetCurrentAvatarBatchMessageSender) {
+            for (UUID id : ((UserGetCurrentAvatarBatchMessageSender) sender).ids)
+                failRequest(id);
+        }
+    }
+
+    //--Avatar requests--
+
+    //Requests the current avatar for a user.
+    //The future completes once the server has answered for that user, or the request timed out.
+    public CompletableFuture<Void> requestAvatar(UUID id) {
+        PendingRequest request = new PendingRequest();
+        PendingRequest existing = inFlight.putIfAbsent(id, request);
+
+        if (existing != null)
+            return existing.future;
+
+        send(new UserGetCurrentAvatarMessageSender(id));
+        return request.future;
+    }
+
+    //Requests the current avatars for many users, in as few messages as possible.
+    //Users that already have a request waiting just get that request's future back.
+    public Map<UUID, CompletableFuture<Void>> requestAvatars(Collection<UUID> ids) {
+        Map<UUID, CompletableFuture<Void>> futures = new HashMap<>();
+        List<UUID> toSend = new ArrayList<>();
+        Map<UUID, PendingRequest> requests = new HashMap<>();
+
+        for (UUID id : ids) {
+            PendingRequest request = new PendingRequest();
+            PendingRequest existing = inFlight.putIfAbsent(id, request);
+
+            if (existing != null) {
+                futures.put(id, existing.future);
+                continue;
+            }
+
+            futures.put(id, request.future);
+            toSend.add(id);
+            requests.put(id, request);
+        }
+
+        for (int i = 0; i < toSend.size(); i += MAX_BATCH_SIZE) {
+            UUID[] batch = toSend.subList(i, Math.min(i + MAX_BATCH_SIZE, toSend.size())).toArray(new UUID[0]);
+
+            for (UUID id : batch)
+                requests.get(id).batch = batch;
+
+            send(new UserGetCurrentAvatarBatchMessageSender(batch));
+        }
+
+        return futures;
+    }
+
+    //Asks the server for the avatar hashes of many users, in as few messages as possible.
+    public void requestAvatarHashes(Collection<UUID> ids) {
+        List<UUID> toSend = new ArrayList<>(ids);
+
+        for (int i = 0; i < toSend.size(); i += MAX_BATCH_SIZE) {
+            List<UUID> batch = toSend.subList(i, Math.min(i + MAX_BATCH_SIZE, toSend.size()));
+            send(new UserGetCurrentAvatarHashBatchMessageSender(batch.toArray(new UUID[0])));
+        }
+    }
+
+    //Called once the server has given us the avatar for a user.
+    public void completeRequest(UUID id) {
+        PendingRequest request = inFlight.remove(id);
+
+        if (request == null)
+            return;
+
+        long latency = (System.nanoTime() - request.requestTime) / 1000000;
+        lastLatencyMs = latency;
+        averageLatencyMs = completedRequests.getAndIncrement() == 0 ? latency : (averageLatencyMs * 7 + latency) / 8;
+
+        request.future.complete(null);
+    }
+
+    //The users asked for in the same message as this one, or null if it isn't waiting on a batch.
+    public UUID[] getBatch(UUID id) {
+        PendingRequest request = inFlight.get(id);
+        return request != null ? request.batch : null;
+    }
+
+    //Fails whatever is still waiting in a batch, for when the answer to it can't be read.
+    //Requests made for the same users since, in another batch, are left alone.
+    public void failBatch(UUID[] batch) {
+        for (UUID id : batch) {
+            PendingRequest request = inFlight.get(id);
+
+            if (request != null && request.batch == batch && inFlight.remove(id, request))
+                request.future.complete(null);
+        }
+    }
+
+    private void failRequest(UUID id) {
+        PendingRequest request = inFlight.remove(id);
+
+        if (request != null)
+            request.future.complete(null);
+    }
+
+    //Drops requests the server never answered.
+    public void tick() {
+        long now = System.nanoTime();
+
+        Iterator<Map.Entry<UUID, PendingRequest>> iterator = inFlight.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, PendingRequest> entry = iterator.next();
+
+            if ((now - entry.getValue().requestTime) / 1000000 > REQUEST_TIMEOUT_MS) {
+                iterator.remove();
+                timedOutRequests.incrementAndGet();
+                entry.getValue().future.complete(null);
+            }
+        }
+    }
+
+    public void shutdown() {
+        if (writerThread != null)
+            writerThread.interrupt();
+
+        MessageSender sender;
+        while ((sender = outgoing.poll()) != null)
+            sender.sent.complete(false);
+
+        for (PendingRequest request : inFlight.values())
+            request.future.complete(null);
+        inFlight.clear();
+
+        connectionExecutor.shutdownNow();
+    }
+
+    //--Stats--
+
+    public int getQueueDepth() {
+        return outgoing.size();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    public long getLastLatencyMs() {
+        return lastLatencyMs;
+    }
+
+    public long getAverageLatencyMs() {
+        return averageLatencyMs;
+    }
+
+    public long getDroppedMessageCount() {
+        return droppedMessages.get();
+    }
+
+    public long getTimedOutRequestCount() {
+        return timedOutRequests.get();
+    }
+
+    public String getDebugString() {
+        return String.format("[FIGURA] network queue : %d in flight : %d latency : %dms (avg %dms) dropped : %d",
+                getQueueDepth(), getInFlightCount(), getLastLatencyMs(), getAverageLatencyMs(), getDroppedMessageCount());
+    }
+
+    private static class PendingRequest {
+        public final long requestTime = System.nanoTime();
+        public final CompletableFuture<Void> future = new CompletableFuture<>();
+        //Set before the request is queued, null if it wasn't batched.
+        public volatile UUID[] batch;
+    }
+}
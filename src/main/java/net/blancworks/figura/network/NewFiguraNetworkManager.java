@@ -6,18 +6,18 @@ import net.blancworks.figura.Config;
 import net.blancworks.figura.FiguraMod;
 import net.blancworks.figura.PlayerData;
 import net.blancworks.figura.PlayerDataManager;
+import net.blancworks.figura.assets.AvatarContainer;
 import net.blancworks.figura.lua.CustomScript;
+import net.blancworks.figura.metrics.FiguraMetrics;
 import net.blancworks.figura.network.messages.MessageRegistry;
+import net.blancworks.figura.network.messages.MessageSender;
 import net.blancworks.figura.network.messages.avatar.AvatarUploadMessageSender;
 import net.blancworks.figura.network.messages.pings.PingMessageSender;
-import net.blancworks.figura.network.messages.pubsub.SubscribeToUsersMessageSender;
 import net.blancworks.figura.network.messages.user.UserDeleteCurrentAvatarMessageSender;
 import net.blancworks.figura.network.messages.user.UserGetCurrentAvatarHashMessageSender;
-import net.blancworks.figura.network.messages.user.UserGetCurrentAvatarMessageSender;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.network.ClientLoginNetworkHandler;
 import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.NbtIo;
 import net.minecraft.network.ClientConnection;
 import net.minecraft.network.NetworkState;
 import net.minecraft.network.packet.c2s.handshake.HandshakeC2SPacket;
@@ -26,22 +26,15 @@ import net.minecraft.text.Text;
 import org.luaj.vm2.LuaValue;
 
 import javax.net.ssl.SSLContext;
-import java.io.ByteArrayOutputStream;
-import java.io.DataOutputStream;
 import java.net.InetAddress;
 import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.Queue;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Supplier;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 
 public class NewFiguraNetworkManager implements IFiguraNetwork {
 
-    public static CompletableFuture networkTasks;
-
     //The protocol version for this version of the mod.
     public static final int PROTOCOL_VERSION = 0;
 
@@ -69,69 +62,63 @@ public class NewFiguraNetworkManager implements IFiguraNetwork {
     //The time we wait to automatically re-auth once a token has expired. (default is 1 minute)
     public static final int TOKEN_REAUTH_WAIT_TIME = 200;
 
+    //Listed in the server's message registry if it accepts avatars in the AvatarContainer format.
+    public static final String AVATAR_CONTAINER_FEATURE = "figura_v1:avatar_container";
+    //Listed if it also accepts version 2 of the container, with the model in the binary format.
+    public static final String BINARY_MODEL_FEATURE = "figura_v1:avatar_binary_model";
+
     //Timeout before a connection with a socket is considered dead.
     public static final int TIMEOUT_SECONDS = 10;
 
     private static boolean hasInited = false;
+    //Set once the first connection is attempted, any after that count as reconnects.
+    private static boolean hasConnected = false;
 
-    private static ArrayList<UUID> allSubscriptions = new ArrayList<UUID>();
-    private static ArrayList<UUID> newSubscriptions = new ArrayList<UUID>();
+    //Owns the connection and the outgoing queue, everything sent to the server goes through here.
+    public static NetworkPipeline pipeline;
+    //The users we get avatar updates for.
+    public static SubscriptionManager subscriptions;
 
-    private static CompletableFuture doTask(Runnable toRun) {
-        if (networkTasks == null || networkTasks.isDone()) {
-            networkTasks = CompletableFuture.runAsync(toRun);
-        } else {
-            networkTasks.thenRun(toRun);
-        }
+    //Work handed over from the socket thread, ran on the next client tick.
+    private static final Queue<Runnable> gameThreadTasks = new ConcurrentLinkedQueue<>();
 
-        return networkTasks;
+    public NewFiguraNetworkManager() {
+        pipeline = new NetworkPipeline(this);
+        subscriptions = new SubscriptionManager(pipeline);
     }
 
-    private static CompletableFuture doTask(Supplier<CompletableFuture> toRun) {
-        if (networkTasks == null || networkTasks.isDone()) {
-            networkTasks = toRun.get();
-        } else {
-            networkTasks.thenCompose(x -> toRun.get());
-        }
-
-        return networkTasks;
+    //Queues up a task to run on the game thread. Safe to call from any thread.
+    public static void runOnGameThread(Runnable task) {
+        gameThreadTasks.add(task);
     }
 
-    private static <T> CompletableFuture doTaskSupply(Supplier<T> toRun) {
-        if (networkTasks == null || networkTasks.isDone()) {
-            networkTasks = CompletableFuture.supplyAsync(toRun);
-        } else {
-            CompletableFuture.supplyAsync(toRun);
-        }
-
-        return networkTasks;
+    public static int getGameThreadTaskCount() {
+        return gameThreadTasks.size();
     }
 
-    public static void subscribe(UUID playerID) {
-        if (!allSubscriptions.contains(playerID) && !newSubscriptions.contains(playerID))
-            newSubscriptions.add(playerID);
+    //Runs everything the socket thread handed over. Called every tick, and by anything feeding messages in without the game.
+    public static void runGameThreadTasks() {
+        Runnable task;
+        while ((task = gameThreadTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     @Override
     public void tickNetwork() {
+        runGameThreadTasks();
 
         if (authConnection != null && !authConnection.isOpen()) {
             authConnection.handleDisconnection();
         }
 
-        if (currWebSocket != null) {
-            if (newSubscriptions.size() > 0) {
-                allSubscriptions.addAll(newSubscriptions);
+        subscriptions.tick();
 
-                UUID[] ids = new UUID[newSubscriptions.size()];
-                newSubscriptions.toArray(ids);
-                newSubscriptions.clear();
-
-                doTask(() -> {
-                    new SubscribeToUsersMessageSender(ids).sendMessage(currWebSocket);
-                });
-            }
-        }
+        pipeline.tick();
 
         //If the old token we had is old enough, re-auth us.
         Date currTime = new Date();
@@ -143,52 +130,48 @@ public class NewFiguraNetworkManager implements IFiguraNetwork {
                 tokenReauthCooldown = TOKEN_REAUTH_WAIT_TIME; //Wait
 
                 //Auth user ASAP
-                doTask(() -> authUser(true));
+                pipeline.runOnConnection(() -> authUser(true));
             }
         }
     }
 
     @Override
     public CompletableFuture getAvatarData(UUID id) {
-        doTask(this::ensureConnection);
-        return doTask(() -> {
-            try {
-                if (currWebSocket != null && currWebSocket.isOpen())
-                    new UserGetCurrentAvatarMessageSender(id).sendMessage(NewFiguraNetworkManager.currWebSocket);
-            } catch (Exception e) {
-                e.printStackTrace();
-                return;
-            }
-        });
+        return pipeline.requestAvatar(id);
     }
 
     @Override
-    public CompletableFuture postAvatar() {
-        doTask(this::ensureConnection);
-        return doTask(() -> {
-            if (currWebSocket != null && currWebSocket.isOpen()) {
-                //Get NBT tag for local player avatar
-                PlayerData data = PlayerDataManager.localPlayer;
-                CompoundTag infoNbt = new CompoundTag();
-                data.writeNbt(infoNbt);
-
-                try {
-                    //Set up streams.
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    DataOutputStream nbtDataStream = new DataOutputStream(baos);
+    public Map<UUID, CompletableFuture> getAvatarDataBatch(Collection<UUID> ids) {
+        return new HashMap<>(pipeline.requestAvatars(ids));
+    }
 
-                    NbtIo.writeCompressed(infoNbt, nbtDataStream);
+    @Override
+    public CompletableFuture postAvatar() {
+        //Serialize off-thread, the writer picks it up once it's ready.
+        return CompletableFuture.supplyAsync(() -> {
+            //Get NBT tag for local player avatar
+            PlayerData data = PlayerDataManager.localPlayer;
+            if (data == null)
+                return null;
 
-                    byte[] result = baos.toByteArray();
+            CompoundTag infoNbt = new CompoundTag();
+            data.writeNbt(infoNbt);
 
-                    new AvatarUploadMessageSender(result).sendMessage(currWebSocket);
+            try {
+                //Only use the container if the server says it can take it, otherwise older clients couldn't read our avatar.
+                if (MessageSender.serverSupports(BINARY_MODEL_FEATURE))
+                    return AvatarContainer.write(infoNbt, data.model);
+                if (MessageSender.serverSupports(AVATAR_CONTAINER_FEATURE))
+                    return AvatarContainer.write(infoNbt);
 
-                    nbtDataStream.close();
-                    baos.close();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+                return AvatarContainer.writeLegacy(infoNbt);
+            } catch (Exception e) {
+                e.printStackTrace();
+                return null;
             }
+        }).thenAccept(payload -> {
+            if (payload != null)
+                pipeline.send(new AvatarUploadMessageSender(payload));
         });
     }
 
@@ -199,32 +182,25 @@ public class NewFiguraNetworkManager implements IFiguraNetwork {
 
     @Override
     public CompletableFuture deleteAvatar() {
-        doTask(this::ensureConnection);
-        return doTask(() -> {
-            try {
-                if (currWebSocket != null && currWebSocket.isOpen()) {
-                    new UserDeleteCurrentAvatarMessageSender().sendMessage(currWebSocket);
+        //Only cleared once the message has actually gone out, otherwise the avatar would still be on the server.
+        UserDeleteCurrentAvatarMessageSender sender = new UserDeleteCurrentAvatarMessageSender();
+        pipeline.send(sender);
 
-                    PlayerDataManager.clearLocalPlayer();
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-                return;
-            }
+        return sender.sent.thenAccept(sent -> {
+            if (sent)
+                runOnGameThread(PlayerDataManager::clearLocalPlayer);
         });
     }
 
     @Override
     public CompletableFuture checkAvatarHash(UUID playerID, String lastHash) {
-        doTask(this::ensureConnection);
-        return doTask(() -> {
-            try {
-                if (currWebSocket != null && currWebSocket.isOpen())
-                    new UserGetCurrentAvatarHashMessageSender(playerID).sendMessage(currWebSocket);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        });
+        pipeline.send(new UserGetCurrentAvatarHashMessageSender(playerID));
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void checkAvatarHashes(Collection<UUID> playerIDs) {
+        pipeline.requestAvatarHashes(playerIDs);
     }
 
     @Override
@@ -240,23 +216,29 @@ public class NewFiguraNetworkManager implements IFiguraNetwork {
 
     @Override
     public void onClose() {
+        pipeline.shutdown();
+
         if (currWebSocket != null && currWebSocket.isOpen()) {
             currWebSocket.sendClose();
             currWebSocket.disconnect();
         }
     }
 
-    public void sendPing(Queue<CustomScript.LuaPing> pings){
-        PingMessageSender pms = new PingMessageSender(pings);
-        doTask(()->{
-            try {
-                if (currWebSocket != null && currWebSocket.isOpen())
-                    pms.sendMessage(currWebSocket);
-            } catch (Exception e) {
-                e.printStackTrace();
+    //Closes the socket without shutting the pipeline down, so it can connect again next time something is sent.
+    //Done on the connection thread, so it can't land in the middle of a connect.
+    public CompletableFuture<Void> disconnect() {
+        return pipeline.runOnConnection(() -> {
+            if (currWebSocket != null && currWebSocket.isOpen()) {
+                currWebSocket.sendClose();
+                currWebSocket.disconnect();
             }
+            currWebSocket = null;
         });
     }
+
+    public void sendPing(Queue<CustomScript.LuaPing> pings){
+        pipeline.send(new PingMessageSender(pings));
+    }
     
     //Minecraft authentication server URL
     public String authServerURL() {
@@ -318,7 +300,12 @@ public class NewFiguraNetworkManager implements IFiguraNetwork {
 
                 FiguraMod.LOGGER.info("Connecting to websocket server " + connectionString);
 
+                if (hasConnected)
+                    FiguraMetrics.RECONNECTS.increment();
+                hasConnected = true;
+
                 WebSocket newSocket = socketFactory.createSocket(connectionString, TIMEOUT_SECONDS * 1000);
+
                 currWebSocket = newSocket;
                 msgRegistry = new MessageRegistry();
                 FiguraNetworkMessageHandler messageHandler = new FiguraNetworkMessageHandler(this);
@@ -330,12 +317,8 @@ public class NewFiguraNetworkManager implements IFiguraNetwork {
 
                 messageHandler.sendClientRegistry(newSocket);
 
-                UUID[] ids = new UUID[allSubscriptions.size()];
-                allSubscriptions.toArray(ids);
-
-                doTask(() -> {
-                    new SubscribeToUsersMessageSender(ids).sendMessage(currWebSocket);
-                });
+                //Re-subscribe before anything else that's waiting on this connection goes out.
+                subscriptions.resubscribe();
 
                 return messageHandler.initializedFuture;
             } catch (Exception e) {
@@ -0,0 +1,128 @@
+package net.blancworks.figura.network;
+
+import net.blancworks.figura.network.messages.MessageSender;
+import net.blancworks.figura.network.messages.pubsub.SubscribeToUsersMessageSender;
+import net.blancworks.figura.network.messages.pubsub.UnsubscribeFromUsersMessageSender;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.network.AbstractClientPlayerEntity;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Keeps track of which users we're subscribed to for avatar updates.
+ * Once a second, the players near us are compared with the current subscriptions,
+ * and only the difference is sent to the server.
+ */
+public class SubscriptionManager {
+
+    //How often, in ticks, the nearby players are checked.
+    public static final int UPDATE_INTERVAL = 20;
+    //Max users we stay subscribed to. The closest players win if there are more than this.
+    public static final int MAX_SUBSCRIPTIONS = 256;
+
+    private final NetworkPipeline pipeline;
+    private final Set<UUID> subscriptions = new HashSet<>();
+
+    private int updateCooldown = 0;
+
+    public SubscriptionManager(NetworkPipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    public void tick() {
+        if (updateCooldown > 0) {
+            updateCooldown--;
+            return;
+        }
+        updateCooldown = UPDATE_INTERVAL;
+
+        update(getNearbyPlayers());
+    }
+
+    //Gets the players we should be subscribed to, closest first.
+    private static Set<UUID> getNearbyPlayers() {
+        MinecraftClient client = MinecraftClient.getInstance();
+
+        if (client.world == null || client.player == null)
+            return Collections.emptySet();
+
+        List<AbstractClientPlayerEntity> players = new ArrayList<>(client.world.getPlayers());
+
+        if (players.size() > MAX_SUBSCRIPTIONS)
+            players.sort(Comparator.comparingDouble(player -> player.squaredDistanceTo(client.player)));
+
+        Set<UUID> nearby = new HashSet<>();
+        for (int i = 0; i < players.size() && i < MAX_SUBSCRIPTIONS; i++) {
+            nearby.add(players.get(i).getUuid());
+        }
+
+        return nearby;
+    }
+
+    //Subscribes to users that came into range, and unsubscribes from the ones that left.
+    private void update(Set<UUID> nearby) {
+        List<UUID> added = new ArrayList<>();
+        List<UUID> removed = new ArrayList<>();
+
+        synchronized (subscriptions) {
+            for (UUID id : nearby) {
+                if (subscriptions.add(id))
+                    added.add(id);
+            }
+
+            Iterator<UUID> iterator = subscriptions.iterator();
+            while (iterator.hasNext()) {
+                UUID id = iterator.next();
+
+                if (!nearby.contains(id)) {
+                    iterator.remove();
+                    removed.add(id);
+                }
+            }
+        }
+
+        //Without a connection, the full set gets sent when we connect instead.
+        if (NewFiguraNetworkManager.currWebSocket == null)
+            return;
+
+        sendBatched(removed, UnsubscribeFromUsersMessageSender::new);
+        sendBatched(added, SubscribeToUsersMessageSender::new);
+    }
+
+    private void sendBatched(List<UUID> ids, Function<UUID[], MessageSender> factory) {
+        for (int i = 0; i < ids.size(); i += NetworkPipeline.MAX_BATCH_SIZE) {
+            List<UUID> batch = ids.subList(i, Math.min(i + NetworkPipeline.MAX_BATCH_SIZE, ids.size()));
+            pipeline.send(factory.apply(batch.toArray(new UUID[0])));
+        }
+    }
+
+    //Re-sends every subscription, used when a new connection is opened.
+    public void resubscribe() {
+        List<UUID> ids;
+
+        synchronized (subscriptions) {
+            ids = new ArrayList<>(subscriptions);
+        }
+
+        //Go in reverse, since each batch skips ahead of the others in the queue.
+        for (int i = ((ids.size() - 1) / NetworkPipeline.MAX_BATCH_SIZE) * NetworkPipeline.MAX_BATCH_SIZE; i >= 0; i -= NetworkPipeline.MAX_BATCH_SIZE) {
+            List<UUID> batch = ids.subList(i, Math.min(i + NetworkPipeline.MAX_BATCH_SIZE, ids.size()));
+
+            if (!batch.isEmpty())
+                pipeline.sendFirst(new SubscribeToUsersMessageSender(batch.toArray(new UUID[0])));
+        }
+    }
+
+    public boolean isSubscribed(UUID id) {
+        synchronized (subscriptions) {
+            return subscriptions.contains(id);
+        }
+    }
+
+    public int getSubscriptionCount() {
+        synchronized (subscriptions) {
+            return subscriptions.size();
+        }
+    }
+}
@@ -1,16 +1,17 @@
 package net.blancworks.figura.network.messages;
 
-import com.google.common.io.LittleEndianDataInputStream;
 import net.blancworks.figura.FiguraMod;
 
+import java.nio.ByteBuffer;
+
 public class DebugMessageHandler extends MessageHandler {
 
     @Override
-    public void handleMessage(LittleEndianDataInputStream stream) throws Exception {
-        super.handleMessage(stream);
+    public void handleMessage(ByteBuffer buffer) throws Exception {
+        super.handleMessage(buffer);
 
         try {
-            FiguraMod.LOGGER.info(stream.readInt());
+            FiguraMod.LOGGER.info(buffer.getInt());
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -1,27 +1,40 @@
 package net.blancworks.figura.network.messages;
 
-import com.google.common.io.LittleEndianDataInputStream;
+import net.blancworks.figura.network.NewFiguraNetworkManager;
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 
+//Handlers are created once per connection and reused for every message, so they must not keep any per-message state.
+//They run on the socket thread, anything that touches the game (player data, textures, toasts) goes through runOnGameThread.
 public abstract class MessageHandler {
-    public void handleMessage(LittleEndianDataInputStream stream) throws Exception{
-        
+    //The buffer is little endian, and positioned right after the message ID.
+    public void handleMessage(ByteBuffer buffer) throws Exception {
+
     }
 
     public abstract String getProtocolName();
 
-    public String readString(LittleEndianDataInputStream stream) throws IOException {
-        int length = stream.readInt();
+    public static void runOnGameThread(Runnable task) {
+        NewFiguraNetworkManager.runOnGameThread(task);
+    }
+
+    public static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
         byte[] strData = new byte[length];
-        stream.read(strData);
-        
+        buffer.get(strData);
+
         return new String(strData, StandardCharsets.UTF_8);
     }
-    
-    public UUID readUUID(LittleEndianDataInputStream stream) throws IOException {
-        return UUID.fromString(readString(stream));
+
+    public static UUID readUUID(ByteBuffer buffer) {
+        return UUID.fromString(readString(buffer));
+    }
+
+    public static UUID readUUIDBinary(ByteBuffer buffer) {
+        long mostSigBits = buffer.getLong();
+        long leastSigBits = buffer.getLong();
+        return new UUID(mostSigBits, leastSigBits);
     }
 }
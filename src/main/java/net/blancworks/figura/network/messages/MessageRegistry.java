@@ -1,9 +1,8 @@
 package net.blancworks.figura.network.messages;
 
-import com.google.common.io.LittleEndianDataInputStream;
 import net.blancworks.figura.FiguraMod;
 
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
@@ -11,14 +10,14 @@ import java.util.Map;
 public class MessageRegistry {
     private Map<String, Byte> mapping = new HashMap<>();
 
-    public void readRegistryMessage(LittleEndianDataInputStream stream) throws IOException {
-        int count = stream.readInt();
+    public void readRegistryMessage(ByteBuffer buffer) {
+        int count = buffer.getInt();
         FiguraMod.LOGGER.debug("Received server registry message! {} handlers", count);
         byte lastId = Byte.MIN_VALUE + 1;
         for (int i = 0; i < count; i++) {
-            int nameLength = stream.readInt();
+            int nameLength = buffer.getInt();
             byte[] nameData = new byte[nameLength];
-            stream.read(nameData);
+            buffer.get(nameData);
 
             String protocolName = new String(nameData, StandardCharsets.UTF_8);
             mapping.put(protocolName, lastId);
@@ -27,6 +26,10 @@ public class MessageRegistry {
         }
     }
 
+    public boolean hasMessage(String protocolName) {
+        return mapping.containsKey(protocolName);
+    }
+
     public boolean isEmpty() {
         return mapping.isEmpty();
     }
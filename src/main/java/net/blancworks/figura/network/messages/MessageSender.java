@@ -3,17 +3,23 @@ package net.blancworks.figura.network.messages;
 import com.google.common.io.LittleEndianDataOutputStream;
 import com.neovisionaries.ws.client.WebSocket;
 import net.blancworks.figura.network.NewFiguraNetworkManager;
+import net.blancworks.figura.network.replay.SessionRecorder;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public abstract class MessageSender {
 
     public byte[] message;
 
-    public void sendMessage(WebSocket socket) {
+    //Completed by the NetworkPipeline once it's done with this message, with whether it actually went out.
+    public final CompletableFuture<Boolean> sent = new CompletableFuture<>();
+
+    //Returns false if the message couldn't be written.
+    public boolean sendMessage(WebSocket socket) {
         try {
             //Build message.
             {
@@ -30,13 +36,15 @@ public abstract class MessageSender {
                 outStream.close();
             }
 
+            SessionRecorder.onSent(message);
             socket.sendBinary(message, true);
         } catch (Exception e) {
             e.printStackTrace();
-            return;
+            return false;
         }
 
         message = null;
+        return true;
     }
 
     public abstract String getProtocolName();
@@ -54,4 +62,15 @@ public abstract class MessageSender {
     public void writeUUID(UUID id, LittleEndianDataOutputStream stream) throws IOException {
         writeString(id.toString(), stream);
     }
+
+    //Writes a UUID as 16 raw bytes, instead of the 36 character string writeUUID uses.
+    public void writeUUIDBinary(UUID id, LittleEndianDataOutputStream stream) throws IOException {
+        stream.writeLong(id.getMostSignificantBits());
+        stream.writeLong(id.getLeastSignificantBits());
+    }
+
+    //True if the server we're connected to knows about this protocol.
+    public static boolean serverSupports(String protocolName) {
+        return NewFiguraNetworkManager.msgRegistry != null && NewFiguraNetworkManager.msgRegistry.hasMessage(protocolName);
+    }
 }
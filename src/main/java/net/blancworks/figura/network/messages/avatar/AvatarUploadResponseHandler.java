@@ -1,6 +1,5 @@
 package net.blancworks.figura.network.messages.avatar;
 
-import com.google.common.io.LittleEndianDataInputStream;
 import net.blancworks.figura.FiguraMod;
 import net.blancworks.figura.network.NewFiguraNetworkManager;
 import net.blancworks.figura.network.messages.MessageHandler;
@@ -11,6 +10,7 @@ import net.minecraft.client.toast.SystemToast;
 import net.minecraft.text.LiteralText;
 import net.minecraft.text.TranslatableText;
 
+import java.nio.ByteBuffer;
 import java.util.UUID;
 
 //Handles the response sent by a server about what happened when an avatar was uploaded
@@ -23,21 +23,21 @@ public class AvatarUploadResponseHandler extends MessageHandler {
 
 
     @Override
-    public void handleMessage(LittleEndianDataInputStream stream) throws Exception {
-        super.handleMessage(stream);
+    public void handleMessage(ByteBuffer buffer) throws Exception {
+        super.handleMessage(buffer);
 
-        byte returnCode = stream.readByte();
+        byte returnCode = buffer.get();
 
         switch (returnCode) {
             case SUCCESS_CODE:
-                handleSuccess(stream);
+                handleSuccess(buffer);
                 break;
             case FAIL_TOO_MANY_AVATARS:
-                handleTooManyAvatars();
+                runOnGameThread(this::handleTooManyAvatars);
             case FAIL_EMPTY_AVATAR:
-                handleEmptyAvatar();
+                runOnGameThread(this::handleEmptyAvatar);
             case FAIL_NOT_ENOUGH_SPACE:
-                handleNotEnoughSpace();
+                runOnGameThread(this::handleNotEnoughSpace);
         }
     }
 
@@ -47,17 +47,17 @@ public class AvatarUploadResponseHandler extends MessageHandler {
     }
 
     //If the avatar was correctly uploaded, read the UUID of the avatar from the stream, then grabs it.
-    public void handleSuccess(LittleEndianDataInputStream stream) throws Exception {
-        UUID id = readUUID(stream);
+    public void handleSuccess(ByteBuffer buffer) throws Exception {
+        UUID id = readUUID(buffer);
 
         FiguraMod.LOGGER.info("Uploaded avatar sucessfully, UUID is " + id);
-        MinecraftClient.getInstance().getToastManager().add(new SystemToast(SystemToast.Type.WORLD_BACKUP,
+        runOnGameThread(() -> MinecraftClient.getInstance().getToastManager().add(new SystemToast(SystemToast.Type.WORLD_BACKUP,
                 new TranslatableText("gui.figura.toast.upload.success.title"),
-                new LiteralText(""))
+                new LiteralText("")))
         );
         
-        new UserSetAvatarMessageSender(id).sendMessage(NewFiguraNetworkManager.currWebSocket);
-        new ChannelAvatarUpdateMessageSender(id).sendMessage(NewFiguraNetworkManager.currWebSocket);
+        NewFiguraNetworkManager.pipeline.send(new UserSetAvatarMessageSender(id));
+        NewFiguraNetworkManager.pipeline.send(new ChannelAvatarUpdateMessageSender(id));
     }
 
     public void handleTooManyAvatars() {
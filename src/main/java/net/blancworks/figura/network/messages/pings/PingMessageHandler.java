@@ -1,31 +1,48 @@
 package net.blancworks.figura.network.messages.pings;
 
-import com.google.common.io.LittleEndianDataInputStream;
 import net.blancworks.figura.PlayerData;
 import net.blancworks.figura.PlayerDataManager;
 import net.blancworks.figura.lua.api.network.LuaNetworkReadWriter;
+import net.blancworks.figura.metrics.FiguraMetrics;
 import net.blancworks.figura.network.messages.pubsub.ChannelMessageHandler;
 import org.luaj.vm2.LuaValue;
 
-import java.util.ArrayList;
+import java.nio.ByteBuffer;
+import java.util.UUID;
 
 public class PingMessageHandler extends ChannelMessageHandler {
     
     @Override
-    public void handleMessage(LittleEndianDataInputStream stream) throws Exception {
-        super.handleMessage(stream);
-        
-        short count = (short) Math.max(Math.min(stream.readShort(), 32), 0);
+    protected void handleChannelMessage(UUID senderID, ByteBuffer buffer) throws Exception {
+        super.handleChannelMessage(senderID, buffer);
+        long receivedTime = System.nanoTime();
+        FiguraMetrics.PING_BYTES_IN.add(buffer.remaining());
+
+        short count = (short) Math.max(Math.min(buffer.getShort(), 32), 0);
 
         System.out.println("Got " + count + " pings");
 
-        PlayerData data = PlayerDataManager.getDataForPlayer(senderID);
-        
+        //Decode here, hand the values to the script on the game thread.
+        short[] ids = new short[count];
+        LuaValue[] values = new LuaValue[count];
+
         for(int i = 0; i < count; i++){
-            short id = stream.readShort();
-            LuaValue val = LuaNetworkReadWriter.readLuaValue(stream);
-            data.script.handlePing(id, val);
+            ids[i] = buffer.getShort();
+            values[i] = LuaNetworkReadWriter.readLuaValue(buffer);
         }
+
+        runOnGameThread(() -> {
+            PlayerData data = PlayerDataManager.getDataForPlayer(senderID);
+
+            if (data.script == null)
+                return;
+
+            data.profiler.pingsReceived.addAndGet(ids.length);
+
+            for (int i = 0; i < ids.length; i++) {
+                data.script.handlePing(ids[i], values[i], receivedTime);
+            }
+        });
     }
 
     @Override
@@ -3,6 +3,7 @@ package net.blancworks.figura.network.messages.pings;
 import com.google.common.io.LittleEndianDataOutputStream;
 import net.blancworks.figura.lua.CustomScript;
 import net.blancworks.figura.lua.api.network.LuaNetworkReadWriter;
+import net.blancworks.figura.metrics.FiguraMetrics;
 import net.blancworks.figura.network.messages.MessageSender;
 import org.luaj.vm2.LuaValue;
 
@@ -50,7 +51,8 @@ public class PingMessageSender extends MessageSender {
         }
         
         byte[] dataArray = bos.toByteArray();
-        
+        FiguraMetrics.PING_BYTES_OUT.add(dataArray.length);
+
         stream.writeInt(dataArray.length);
         stream.write(dataArray);
     }
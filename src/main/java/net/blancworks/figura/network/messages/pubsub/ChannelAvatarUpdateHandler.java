@@ -1,16 +1,17 @@
 package net.blancworks.figura.network.messages.pubsub;
 
-import com.google.common.io.LittleEndianDataInputStream;
 import net.blancworks.figura.PlayerDataManager;
-import net.blancworks.figura.network.messages.MessageHandler;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
 
 public class ChannelAvatarUpdateHandler extends ChannelMessageHandler {
 
     @Override
-    public void handleMessage(LittleEndianDataInputStream stream) throws Exception {
-        super.handleMessage(stream);
+    protected void handleChannelMessage(UUID senderID, ByteBuffer buffer) throws Exception {
+        super.handleChannelMessage(senderID, buffer);
 
-        PlayerDataManager.getDataForPlayer(senderID).isInvalidated = true;
+        runOnGameThread(() -> PlayerDataManager.getDataForPlayer(senderID).invalidate());
         
         System.out.println("AVATAR UPDATE RECEIVED");
     }
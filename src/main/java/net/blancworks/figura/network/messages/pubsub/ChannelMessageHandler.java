@@ -1,20 +1,24 @@
 package net.blancworks.figura.network.messages.pubsub;
 
-import com.google.common.io.LittleEndianDataInputStream;
 import net.blancworks.figura.network.messages.MessageHandler;
 
+import java.nio.ByteBuffer;
 import java.util.UUID;
 
 //Called when a message is received from the server.
 public class ChannelMessageHandler extends MessageHandler {
 
-    public UUID senderID;
-    
     @Override
-    public void handleMessage(LittleEndianDataInputStream stream) throws Exception {
-        super.handleMessage(stream);
+    public void handleMessage(ByteBuffer buffer) throws Exception {
+        super.handleMessage(buffer);
         
-        senderID = readUUID(stream);
+        UUID senderID = readUUID(buffer);
+        handleChannelMessage(senderID, buffer);
+    }
+
+    //Handles the rest of the message, once the sender has been read.
+    protected void handleChannelMessage(UUID senderID, ByteBuffer buffer) throws Exception {
+
     }
 
     @Override
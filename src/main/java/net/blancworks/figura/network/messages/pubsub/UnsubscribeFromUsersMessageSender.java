@@ -7,6 +7,9 @@ import java.io.IOException;
 import java.util.UUID;
 
 public class UnsubscribeFromUsersMessageSender extends MessageSender {
+    public static final String PROTOCOL_NAME = "figura_v1:user_events_unsub";
+    //Same message, but with the UUIDs written as 16 raw bytes.
+    public static final String BINARY_PROTOCOL_NAME = "figura_v1:user_events_unsub_bin";
 
     public UUID[] ids;
 
@@ -16,15 +19,24 @@ public class UnsubscribeFromUsersMessageSender extends MessageSender {
 
     @Override
     protected void write(LittleEndianDataOutputStream stream) throws IOException {
+        boolean binary = useBinary();
+
         stream.writeInt(ids.length);
 
         for(int i = 0; i < ids.length; i++){
-            writeUUID(ids[i], stream);
+            if (binary)
+                writeUUIDBinary(ids[i], stream);
+            else
+                writeUUID(ids[i], stream);
         }
     }
 
+    private static boolean useBinary() {
+        return serverSupports(BINARY_PROTOCOL_NAME);
+    }
+
     @Override
     public String getProtocolName() {
-        return "figura_v1:user_events_unsub";
+        return useBinary() ? BINARY_PROTOCOL_NAME : PROTOCOL_NAME;
     }
 }
\ No newline at end of file
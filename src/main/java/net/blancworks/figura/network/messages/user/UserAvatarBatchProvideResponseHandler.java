@@ -0,0 +1,63 @@
+package net.blancworks.figura.network.messages.user;
+
+import net.blancworks.figura.network.NewFiguraNetworkManager;
+import net.blancworks.figura.network.messages.MessageHandler;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+//Response to UserGetCurrentAvatarBatchMessageSender, carries the avatars for many users at once.
+public class UserAvatarBatchProvideResponseHandler extends MessageHandler {
+
+    @Override
+    public void handleMessage(ByteBuffer buffer) throws Exception {
+        super.handleMessage(buffer);
+
+        int count = buffer.getInt();
+        UUID[] batch = null;
+
+        for (int i = 0; i < count; i++) {
+            UUID targetUser;
+            byte[] allAvatarData;
+
+            try {
+                targetUser = readUUIDBinary(buffer);
+                if (batch == null)
+                    batch = NewFiguraNetworkManager.pipeline.getBatch(targetUser);
+
+                int avatarLength = buffer.getInt();
+
+                //Users without an avatar are still listed, so their request can be closed.
+                if (avatarLength <= 0) {
+                    NewFiguraNetworkManager.pipeline.completeRequest(targetUser);
+                    continue;
+                }
+
+                if (avatarLength > buffer.remaining())
+                    throw new BufferUnderflowException();
+
+                allAvatarData = new byte[avatarLength];
+                buffer.get(allAvatarData);
+            } catch (BufferUnderflowException e) {
+                //The rest of the frame can't be read, so nothing else in this batch is coming.
+                if (batch != null)
+                    NewFiguraNetworkManager.pipeline.failBatch(batch);
+                throw e;
+            }
+
+            //A broken avatar doesn't affect the frame, so the rest of the batch is still read.
+            try {
+                UserAvatarProvideResponseHandler.loadAvatar(targetUser, allAvatarData);
+            } catch (Exception e) {
+                e.printStackTrace();
+                NewFiguraNetworkManager.pipeline.completeRequest(targetUser);
+            }
+        }
+    }
+
+    @Override
+    public String getProtocolName() {
+        return "figura_v1:user_avatar_batch_provide";
+    }
+}
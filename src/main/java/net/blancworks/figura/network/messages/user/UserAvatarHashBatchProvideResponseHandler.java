@@ -0,0 +1,36 @@
+package net.blancworks.figura.network.messages.user;
+
+import net.blancworks.figura.network.messages.MessageHandler;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+//Response to UserGetCurrentAvatarHashBatchMessageSender, carries the avatar hashes for many users at once.
+public class UserAvatarHashBatchProvideResponseHandler extends MessageHandler {
+
+    @Override
+    public void handleMessage(ByteBuffer buffer) throws Exception {
+        super.handleMessage(buffer);
+
+        int count = buffer.getInt();
+
+        UUID[] ids = new UUID[count];
+        String[] hashes = new String[count];
+
+        for (int i = 0; i < count; i++) {
+            ids[i] = readUUIDBinary(buffer);
+            hashes[i] = readString(buffer);
+        }
+
+        runOnGameThread(() -> {
+            for (int i = 0; i < ids.length; i++) {
+                UserAvatarHashProvideResponseHandler.checkHash(ids[i], hashes[i]);
+            }
+        });
+    }
+
+    @Override
+    public String getProtocolName() {
+        return "figura_v1:user_avatar_hash_batch_provide";
+    }
+}
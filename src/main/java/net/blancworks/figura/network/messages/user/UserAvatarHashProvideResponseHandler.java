@@ -1,26 +1,31 @@
 package net.blancworks.figura.network.messages.user;
 
-import com.google.common.io.LittleEndianDataInputStream;
 import net.blancworks.figura.PlayerData;
 import net.blancworks.figura.PlayerDataManager;
 import net.blancworks.figura.network.messages.MessageHandler;
 
+import java.nio.ByteBuffer;
 import java.util.UUID;
 
 public class UserAvatarHashProvideResponseHandler extends MessageHandler {
 
     @Override
-    public void handleMessage(LittleEndianDataInputStream stream) throws Exception {
-        super.handleMessage(stream);
-        
-        UUID id = readUUID(stream);
-        String hash = readString(stream);
+    public void handleMessage(ByteBuffer buffer) throws Exception {
+        super.handleMessage(buffer);
         
+        UUID id = readUUID(buffer);
+        String hash = readString(buffer);
+
+        runOnGameThread(() -> checkHash(id, hash));
+    }
+
+    //Invalidates the avatar for a user if the server has a different one than we do.
+    public static void checkHash(UUID id, String hash) {
         //Handle?
         PlayerData pDat = PlayerDataManager.getDataForPlayer(id);
         
         if(!pDat.lastHash.equals(hash)){
-            pDat.isInvalidated = true;   
+            pDat.invalidate();
         }
     }
 
@@ -1,53 +1,66 @@
 package net.blancworks.figura.network.messages.user;
 
-import com.google.common.io.LittleEndianDataInputStream;
 import net.blancworks.figura.PlayerData;
 import net.blancworks.figura.PlayerDataManager;
+import net.blancworks.figura.assets.AvatarContainer;
+import net.blancworks.figura.network.NewFiguraNetworkManager;
 import net.blancworks.figura.network.messages.MessageHandler;
 import net.minecraft.nbt.CompoundTag;
-import net.minecraft.nbt.NbtIo;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.util.Date;
 import java.util.UUID;
 
 public class UserAvatarProvideResponseHandler extends MessageHandler {
 
-    public UUID targetUser;
-
     @Override
-    public void handleMessage(LittleEndianDataInputStream stream) throws Exception {
-        super.handleMessage(stream);
+    public void handleMessage(ByteBuffer buffer) throws Exception {
+        super.handleMessage(buffer);
 
-        targetUser = readUUID(stream);
+        UUID targetUser = readUUID(buffer);
 
         try {
-            int avatarLength = stream.readInt();
+            int avatarLength = buffer.getInt();
             byte[] allAvatarData = new byte[avatarLength];
-            stream.read(allAvatarData, 0, avatarLength);
-
-            ByteArrayInputStream bis = new ByteArrayInputStream(allAvatarData);
-            DataInputStream dis = new DataInputStream(bis);
+            buffer.get(allAvatarData);
 
-            CompoundTag tag = NbtIo.readCompressed(dis);
-
-            dis.close();
+            loadAvatar(targetUser, allAvatarData);
+        } catch (Exception e) {
+            //Let the pipeline know this request was answered, even if the avatar itself was broken.
+            NewFiguraNetworkManager.pipeline.completeRequest(targetUser);
+            throw e;
+        }
+    }
 
-            PlayerData pData = PlayerDataManager.getDataForPlayer(targetUser);
+    //Decodes the avatar data the server gave us for a user, then loads it into their player data on the game thread.
+    //The request for this user is completed once that's done.
+    public static void loadAvatar(UUID targetUser, byte[] allAvatarData) {
+        try {
+            //Handles both the avatar container and plain GZIP'd NBT from older clients.
+            CompoundTag tag = AvatarContainer.read(allAvatarData);
 
             MessageDigest md = MessageDigest.getInstance("SHA-256");
             byte[] hashBytes = md.digest(allAvatarData);
 
             String hashString = new String(hashBytes, StandardCharsets.UTF_8);
 
-            pData.loadFromNbt(tag);
-            pData.lastHash = hashString;
-            pData.saveToCache(targetUser);
+            runOnGameThread(() -> {
+                try {
+                    PlayerData pData = PlayerDataManager.getDataForPlayer(targetUser);
+
+                    pData.loadFromNbt(tag, allAvatarData.length);
+                    pData.lastHash = hashString;
+                    pData.saveToCache(targetUser);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    NewFiguraNetworkManager.pipeline.completeRequest(targetUser);
+                }
+            });
         } catch (Exception e) {
             e.printStackTrace();
+            NewFiguraNetworkManager.pipeline.completeRequest(targetUser);
         }
     }
 
@@ -0,0 +1,48 @@
+package net.blancworks.figura.network.messages.user;
+
+import com.google.common.io.LittleEndianDataOutputStream;
+import com.neovisionaries.ws.client.WebSocket;
+import net.blancworks.figura.network.messages.MessageSender;
+
+import java.io.IOException;
+import java.util.UUID;
+
+//Asks the server for the current avatars of many users in one message.
+//Falls back to one UserGetCurrentAvatarMessageSender per user if the server doesn't know about batches.
+public class UserGetCurrentAvatarBatchMessageSender extends MessageSender {
+    public static final String PROTOCOL_NAME = "figura_v1:user_get_current_avatar_batch";
+
+    public UUID[] ids;
+
+    public UserGetCurrentAvatarBatchMessageSender(UUID... ids) {
+        this.ids = ids;
+    }
+
+    @Override
+    public boolean sendMessage(WebSocket socket) {
+        if (serverSupports(PROTOCOL_NAME))
+            return super.sendMessage(socket);
+
+        boolean sent = true;
+        for (UUID id : ids) {
+            sent &= new UserGetCurrentAvatarMessageSender(id).sendMessage(socket);
+        }
+        return sent;
+    }
+
+    @Override
+    public String getProtocolName() {
+        return PROTOCOL_NAME;
+    }
+
+    @Override
+    protected void write(LittleEndianDataOutputStream stream) throws IOException {
+        super.write(stream);
+
+        stream.writeInt(ids.length);
+
+        for (UUID id : ids) {
+            writeUUIDBinary(id, stream);
+        }
+    }
+}
@@ -1,13 +1,14 @@
 package net.blancworks.figura.network.messages.utility;
 
-import com.google.common.io.LittleEndianDataInputStream;
 import net.blancworks.figura.network.messages.MessageHandler;
 
+import java.nio.ByteBuffer;
+
 public class ErrorMessageHandler extends MessageHandler {
 
     @Override
-    public void handleMessage(LittleEndianDataInputStream stream) throws Exception {
-        super.handleMessage(stream);
+    public void handleMessage(ByteBuffer buffer) throws Exception {
+        super.handleMessage(buffer);
     }
 
     @Override
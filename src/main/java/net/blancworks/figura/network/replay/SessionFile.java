@@ -0,0 +1,142 @@
+package net.blancworks.figura.network.replay;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recorded network session, every frame the server sent us and every frame we sent it, with when it happened.
+ * <p>
+ * The file starts with a magic number, a version and the time recording started (epoch millis).
+ * Frames follow until the end of the file, each one a type byte, the microseconds since the frame before and the
+ * length (both as varints), then the frame itself. Pings are a few bytes, so the header is kept to a few bytes too.
+ */
+public class SessionFile {
+    //"FGNS"
+    public static final int MAGIC = 0x46474E53;
+    public static final int VERSION = 1;
+
+    //A new connection was opened, the next frame we receive is the server's registry.
+    public static final byte CONNECTED = 0;
+    public static final byte RECEIVED = 1;
+    public static final byte SENT = 2;
+
+    public final long startTime;
+    public final List<Frame> frames;
+
+    public SessionFile(long startTime, List<Frame> frames) {
+        this.startTime = startTime;
+        this.frames = frames;
+    }
+
+    public static SessionFile read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("Not a recorded session: " + path);
+
+            int version = in.readUnsignedByte();
+            if (version > VERSION)
+                throw new IOException("Recorded session is from a newer version (" + version + ")");
+
+            long startTime = in.readLong();
+            List<Frame> frames = new ArrayList<>();
+            long time = 0;
+
+            int type;
+            while ((type = in.read()) != -1) {
+                time += readVarLong(in);
+
+                byte[] data = new byte[(int) readVarLong(in)];
+                in.readFully(data);
+
+                frames.add(new Frame((byte) type, time, data));
+            }
+
+            return new SessionFile(startTime, frames);
+        }
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+
+            if ((b & 0x80) == 0)
+                return value;
+        }
+
+        throw new IOException("Bad varint");
+    }
+
+    public static class Frame {
+        public final byte type;
+        //Since recording started.
+        public final long timeMicros;
+        public final byte[] data;
+
+        public Frame(byte type, long timeMicros, byte[] data) {
+            this.type = type;
+            this.timeMicros = timeMicros;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Appends frames to a new session file. Not thread safe, the SessionRecorder writes from a single thread.
+     */
+    public static class Writer implements Closeable {
+        private final DataOutputStream out;
+        private final long startNanos;
+        private long lastMicros = 0;
+        private boolean closed = false;
+
+        public Writer(Path path, long startNanos) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)));
+            this.startNanos = startNanos;
+
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(System.currentTimeMillis());
+        }
+
+        //The time is a System.nanoTime from when the frame went through.
+        //Frames that were on their way while recording stopped are dropped.
+        public void write(byte type, long timeNanos, byte[] data) throws IOException {
+            if (closed)
+                return;
+
+            //Frames are timed on different threads, so one can come in a hair before the one ahead of it.
+            long micros = Math.max(lastMicros, (timeNanos - startNanos) / 1000);
+
+            out.writeByte(type);
+            writeVarLong(micros - lastMicros);
+            writeVarLong(data.length);
+            out.write(data);
+
+            lastMicros = micros;
+        }
+
+        public void flush() throws IOException {
+            if (!closed)
+                out.flush();
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            out.close();
+        }
+    }
+}
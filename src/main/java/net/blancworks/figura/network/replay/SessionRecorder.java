@@ -0,0 +1,123 @@
+package net.blancworks.figura.network.replay;
+
+import net.blancworks.figura.FiguraMod;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Records every frame going through the Figura server connection to figura/sessions, for SessionReplay.
+ * <p>
+ * Frames are timed where they pass through, then written out on a thread of their own so the socket threads never wait on the disk.
+ * Only binary frames are recorded, the auth token goes out as text and never ends up in a recording.
+ */
+public class SessionRecorder {
+    private static final byte[] EMPTY = new byte[0];
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "Figura Session Recorder");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private static volatile SessionFile.Writer writer;
+
+    //The registry the server sent on the current connection. A recording started mid-connection begins with it,
+    //otherwise nothing after it could be decoded.
+    private static volatile byte[] lastRegistryFrame;
+
+    //Starts or stops recording to match the config. Cheap to call every tick.
+    public static synchronized void update(boolean enabled) {
+        enabled &= !SessionReplay.isReplaying();
+
+        if (enabled && writer == null) {
+            try {
+                Path directory = FiguraMod.getModContentDirectory().resolve("sessions");
+                Files.createDirectories(directory);
+
+                start(directory.resolve("session-" + new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss").format(new Date()) + ".fns"));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        } else if (!enabled && writer != null) {
+            stop();
+        }
+    }
+
+    public static synchronized void start(Path file) throws IOException {
+        stop();
+
+        long now = System.nanoTime();
+        SessionFile.Writer newWriter = new SessionFile.Writer(file, now);
+
+        byte[] registry = lastRegistryFrame;
+        if (registry != null) {
+            newWriter.write(SessionFile.CONNECTED, now, EMPTY);
+            newWriter.write(SessionFile.RECEIVED, now, registry);
+        }
+
+        writer = newWriter;
+        FiguraMod.LOGGER.info("Recording network session to " + file);
+    }
+
+    //Anything already handed to the recorder thread is still written before the file is closed.
+    public static synchronized void stop() {
+        SessionFile.Writer current = writer;
+        if (current == null)
+            return;
+        writer = null;
+
+        EXECUTOR.execute(() -> {
+            try {
+                current.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    public static boolean isRecording() {
+        return writer != null;
+    }
+
+    public static void onConnected() {
+        lastRegistryFrame = null;
+        record(SessionFile.CONNECTED, EMPTY);
+    }
+
+    public static void onRegistryReceived(byte[] frame) {
+        if (!SessionReplay.isReplaying())
+            lastRegistryFrame = frame;
+    }
+
+    public static void onReceived(byte[] frame) {
+        record(SessionFile.RECEIVED, frame);
+    }
+
+    public static void onSent(byte[] frame) {
+        record(SessionFile.SENT, frame);
+    }
+
+    private static void record(byte type, byte[] frame) {
+        SessionFile.Writer current = writer;
+
+        //A replay goes through the same handlers, it shouldn't end up in a recording of its own.
+        if (current == null || SessionReplay.isReplaying())
+            return;
+
+        long time = System.nanoTime();
+        EXECUTOR.execute(() -> {
+            try {
+                current.write(type, time, frame);
+                current.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+}
@@ -0,0 +1,220 @@
+package net.blancworks.figura.network.replay;
+
+import net.blancworks.figura.FiguraMod;
+import net.blancworks.figura.metrics.FiguraMetrics;
+import net.blancworks.figura.metrics.Histogram;
+import net.blancworks.figura.network.FiguraNetworkMessageHandler;
+import net.blancworks.figura.network.NewFiguraNetworkManager;
+import net.blancworks.figura.network.messages.MessageHandler;
+import net.blancworks.figura.network.messages.MessageRegistry;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.BiPredicate;
+
+/**
+ * Plays a recorded session back into the same message handlers the live connection uses, in place of the server.
+ * <p>
+ * In the game, start one with -Dfigura.replay=&lt;session file&gt; (and optionally -Dfigura.replaySpeed=&lt;x&gt;),
+ * it starts once a world is loaded and nothing is sent to the server while it runs.
+ * Without the game, feedUntil steps through the session on the caller's own clock.
+ * <p>
+ * Decode time is the time spent in the handlers themselves. Ping latency is from a ping being decoded to the script running it,
+ * taken from FiguraMetrics, so it's shared with the metrics export if that's on too.
+ */
+public class SessionReplay {
+    private static volatile SessionReplay active;
+    private static boolean checkedProperties = false;
+
+    public final SessionFile session;
+    private final NewFiguraNetworkManager manager;
+
+    //How much faster than recorded the frames are fed. 0 feeds them as fast as they can be decoded.
+    public double speed = 1;
+    //Only messages this lets through are fed, given the handler and the message after its ID. Null feeds everything.
+    @Nullable
+    public BiPredicate<MessageHandler, ByteBuffer> filter;
+
+    private FiguraNetworkMessageHandler handler;
+    private int nextFrame = 0;
+
+    //----STATS----
+    public int framesFed = 0;
+    public int framesSkipped = 0;
+    public int framesSent = 0;
+    public long bytesFed = 0;
+    public long decodeNanos = 0;
+    private long startNanos;
+    private long endNanos;
+
+    public SessionReplay(SessionFile session, NewFiguraNetworkManager manager) {
+        this.session = session;
+        this.manager = manager;
+    }
+
+    public static SessionReplay open(Path file, NewFiguraNetworkManager manager) throws IOException {
+        return new SessionReplay(SessionFile.read(file), manager);
+    }
+
+    public static boolean isReplaying() {
+        return active != null;
+    }
+
+    //Starts the replay given on the command line, if there is one. Only ever does anything the first time.
+    public static void startFromProperties(NewFiguraNetworkManager manager) {
+        if (checkedProperties)
+            return;
+        checkedProperties = true;
+
+        String file = System.getProperty("figura.replay");
+        if (file == null)
+            return;
+
+        try {
+            SessionReplay replay = open(Paths.get(file), manager);
+            replay.speed = Double.parseDouble(System.getProperty("figura.replaySpeed", "1"));
+            replay.start();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    //Plays the session on a thread of its own, logging the report once it's done.
+    public void start() {
+        synchronized (SessionReplay.class) {
+            if (active != null)
+                throw new IllegalStateException("Already replaying a session");
+            active = this;
+        }
+
+        Thread thread = new Thread(() -> {
+            try {
+                //Anything the real server sends from here on would get mixed in with the session.
+                //Only the socket goes, the pipeline connects again once the replay is over and something needs sending.
+                if (manager != null)
+                    manager.disconnect().join();
+
+                run();
+                FiguraMod.LOGGER.info(getReport());
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                active = null;
+            }
+        }, "Figura Session Replay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //Feeds the whole session, waiting between frames to keep to the recorded timing (scaled by speed).
+    public void run() throws InterruptedException {
+        begin();
+
+        while (nextFrame < session.frames.size()) {
+            SessionFile.Frame frame = session.frames.get(nextFrame);
+
+            if (speed > 0) {
+                long wait = startNanos + (long) (frame.timeMicros * 1000 / speed) - System.nanoTime();
+                if (wait > 0)
+                    Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+            }
+
+            feed(frame);
+            nextFrame++;
+        }
+
+        endNanos = System.nanoTime();
+    }
+
+    //Feeds every frame recorded up to the given time, for callers that keep their own clock.
+    //Returns false once the whole session has been fed.
+    public boolean feedUntil(long timeMicros) {
+        if (startNanos == 0)
+            begin();
+
+        while (nextFrame < session.frames.size() && session.frames.get(nextFrame).timeMicros <= timeMicros) {
+            feed(session.frames.get(nextFrame));
+            nextFrame++;
+        }
+
+        if (nextFrame < session.frames.size())
+            return true;
+
+        if (endNanos == 0)
+            endNanos = System.nanoTime();
+        return false;
+    }
+
+    private void begin() {
+        startNanos = System.nanoTime();
+        FiguraMetrics.PING_LATENCY_NANOS.snapshotAndReset();
+    }
+
+    private void feed(SessionFile.Frame frame) {
+        switch (frame.type) {
+            case SessionFile.CONNECTED:
+                connect();
+                break;
+            case SessionFile.RECEIVED:
+                //A recording always starts with a connection, but old or cut off ones might not.
+                if (handler == null)
+                    connect();
+
+                if (!shouldFeed(frame.data)) {
+                    framesSkipped++;
+                    break;
+                }
+
+                long start = System.nanoTime();
+                try {
+                    handler.onBinaryMessage(null, frame.data);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                decodeNanos += System.nanoTime() - start;
+
+                framesFed++;
+                bytesFed += frame.data.length;
+                break;
+            case SessionFile.SENT:
+                //What we sent is only there to compare against, the client sends its own.
+                framesSent++;
+                break;
+        }
+    }
+
+    //Same as a fresh connection, the server's registry comes next.
+    private void connect() {
+        NewFiguraNetworkManager.msgRegistry = new MessageRegistry();
+        handler = new FiguraNetworkMessageHandler(manager);
+    }
+
+    private boolean shouldFeed(byte[] data) {
+        //The registry always goes through, nothing else can be read without it.
+        if (filter == null || NewFiguraNetworkManager.msgRegistry.isEmpty())
+            return true;
+        if (data.length == 0)
+            return false;
+
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(1);
+        return filter.test(handler.getHandlerFor(data), buffer.slice().order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    public String getReport() {
+        double seconds = ((endNanos != 0 ? endNanos : System.nanoTime()) - startNanos) / 1e9;
+        double decodeSeconds = decodeNanos / 1e9;
+        Histogram.Snapshot latency = FiguraMetrics.PING_LATENCY_NANOS.snapshotAndReset();
+
+        return String.format("Replayed %d frames (%.1f KB, %d skipped, %d sent frames ignored) in %.2fs at %sx. " +
+                        "Decoding took %.1fms, %.0f frames/s, %.2f MB/s. " +
+                        "Ping latency over %d pings: p50 %.2fms p95 %.2fms p99 %.2fms max %.2fms",
+                framesFed, bytesFed / 1024.0, framesSkipped, framesSent, seconds, speed > 0 ? String.valueOf(speed) : "max",
+                decodeNanos / 1e6, decodeSeconds > 0 ? framesFed / decodeSeconds : 0, decodeSeconds > 0 ? bytesFed / decodeSeconds / (1024 * 1024) : 0,
+                latency.count, latency.p50 / 1e6, latency.p95 / 1e6, latency.p99 / 1e6, latency.max / 1e6);
+    }
+}
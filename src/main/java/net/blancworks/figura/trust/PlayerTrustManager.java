@@ -3,6 +3,7 @@ package net.blancworks.figura.trust;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import net.blancworks.figura.FiguraMod;
 import net.blancworks.figura.trust.settings.PermissionBooleanSetting;
@@ -24,6 +25,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -49,6 +51,15 @@ public class PlayerTrustManager {
     public static Map<Identifier, PermissionSetting> permissionSettings = new Object2ObjectOpenHashMap<>();
     public static List<Identifier> permissionDisplayOrder = new ArrayList<>();
 
+    //Dense index for each permission, used by the resolved settings arrays in TrustContainer.
+    private static final Object2IntOpenHashMap<Identifier> permissionOrdinals = new Object2IntOpenHashMap<>();
+    //Bumped whenever any container changes, so every TrustContainer knows to re-resolve its settings.
+    private static volatile int settingsVersion = 0;
+
+    static {
+        permissionOrdinals.defaultReturnValue(-1);
+    }
+
     //Loads all the default groups from the json config file.
     public static void init() {
         registerPermissions();
@@ -137,9 +148,20 @@ public class PlayerTrustManager {
         //if (Files.exists(p)) {
         try {
             InputStream s = Files.newInputStream(p);
-            InputStreamReader fileReader = new InputStreamReader(s);
+            loadDefaultGroups(new InputStreamReader(s));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        //}
+
+        FiguraMod.LOGGER.debug("Loaded presets from assets");
+    }
+
+    //Loads the default groups from the given presets, the game gets those from the mod jar.
+    public static void loadDefaultGroups(Reader reader) {
+        try {
             JsonParser parser = new JsonParser();
-            JsonObject rootObject = (JsonObject) parser.parse(fileReader);
+            JsonObject rootObject = (JsonObject) parser.parse(reader);
 
             TrustContainer trueBase = new TrustContainer(new Identifier("group", "base"), new LiteralText("base"));
             JsonObject baseObj = rootObject.get("base").getAsJsonObject();
@@ -181,9 +203,6 @@ public class PlayerTrustManager {
         } catch (Exception e) {
             e.printStackTrace();
         }
-        //}
-
-        FiguraMod.LOGGER.debug("Loaded presets from assets");
     }
 
     public static void addGroup(TrustContainer container) {
@@ -215,11 +234,33 @@ public class PlayerTrustManager {
                 e.printStackTrace();
             }
         }
+
+        invalidateResolvedSettings();
     }
 
     public static void registerPermissionSetting(PermissionSetting baseSetting) {
+        permissionOrdinals.put(baseSetting.id, permissionDisplayOrder.size());
         permissionSettings.put(baseSetting.id, baseSetting);
         permissionDisplayOrder.add(baseSetting.id);
+        invalidateResolvedSettings();
+    }
+
+    //Returns the dense index of a permission, or -1 if it isn't registered.
+    public static int getPermissionOrdinal(Identifier id) {
+        return permissionOrdinals.getInt(id);
+    }
+
+    public static int getPermissionCount() {
+        return permissionDisplayOrder.size();
+    }
+
+    public static int getSettingsVersion() {
+        return settingsVersion;
+    }
+
+    //Call whenever a setting or a parent changes in any container.
+    public static void invalidateResolvedSettings() {
+        settingsVersion++;
     }
 
     public static TrustContainer getContainer(Identifier id) {
@@ -30,6 +30,13 @@ public class TrustContainer {
     public boolean displayChildren = true;
     public boolean isLocked = false;
 
+    //Every setting resolved through the parent chain, indexed by permission ordinal.
+    //Rebuilt lazily whenever PlayerTrustManager's settings version changes.
+    private volatile ResolvedSettings resolvedSettings;
+
+    //Parent chains deeper than this are treated as broken (most likely a loop).
+    private static final int MAX_PARENT_DEPTH = 32;
+
 
     public TrustContainer(Identifier id, Text nameText) {
         this(id, nameText, null);
@@ -67,6 +74,7 @@ public class TrustContainer {
     public void setParent(Identifier id) {
         if (identifier != id) {
             parentIdentifier = id;
+            PlayerTrustManager.invalidateResolvedSettings();
         }
     }
 
@@ -84,8 +92,10 @@ public class TrustContainer {
 
         PermissionSetting currSetting = getSetting(setting.id);
 
-        if (currSetting != null && currSetting.isDifferent(setting))
+        if (currSetting != null && currSetting.isDifferent(setting)) {
             permissionSet.put(setting.id, setting);
+            PlayerTrustManager.invalidateResolvedSettings();
+        }
     }
 
     public void resetAll() {
@@ -93,14 +103,17 @@ public class TrustContainer {
             return;
 
         permissionSet.clear();
+        PlayerTrustManager.invalidateResolvedSettings();
     }
 
     public void reset(Identifier id) {
         if (isLocked)
             return;
 
-        if (permissionSet.containsKey(id))
+        if (permissionSet.containsKey(id)) {
             permissionSet.remove(id);
+            PlayerTrustManager.invalidateResolvedSettings();
+        }
     }
 
     public void fromNbt(CompoundTag tag) {
@@ -130,6 +143,7 @@ public class TrustContainer {
             }
         }
 
+        PlayerTrustManager.invalidateResolvedSettings();
     }
 
     public void toNbt(CompoundTag tag) {
@@ -154,16 +168,75 @@ public class TrustContainer {
     
     
 
+    //---Resolved settings---
+
+    //Finds the setting for a permission, walking up the parents. Doesn't copy it, so don't modify what this returns.
+    private PermissionSetting findSetting(Identifier id) {
+        TrustContainer container = this;
+
+        for (int depth = 0; container != null && depth < MAX_PARENT_DEPTH; depth++) {
+            PermissionSetting setting = container.permissionSet.get(id);
+            if (setting != null)
+                return setting;
+
+            if (container.parentIdentifier == null)
+                return null;
+
+            TrustContainer parent = PlayerTrustManager.getContainer(container.parentIdentifier);
+            if (parent == container)
+                return null;
+            container = parent;
+        }
+
+        return null;
+    }
+
+    private ResolvedSettings getResolvedSettings() {
+        ResolvedSettings resolved = resolvedSettings;
+        int version = PlayerTrustManager.getSettingsVersion();
+
+        if (resolved != null && resolved.version == version)
+            return resolved;
+
+        resolved = new ResolvedSettings(version, PlayerTrustManager.getPermissionCount());
+
+        for (int i = 0; i < PlayerTrustManager.permissionDisplayOrder.size(); i++) {
+            PermissionSetting setting = findSetting(PlayerTrustManager.permissionDisplayOrder.get(i));
+
+            if (setting instanceof PermissionFloatSetting)
+                resolved.floats[i] = ((PermissionFloatSetting) setting).value;
+            else if (setting instanceof PermissionBooleanSetting)
+                resolved.bools[i] = ((PermissionBooleanSetting) setting).value;
+            else if (setting instanceof PermissionStringSetting)
+                resolved.strings[i] = ((PermissionStringSetting) setting).value;
+        }
+
+        resolvedSettings = resolved;
+        return resolved;
+    }
+
+    private static class ResolvedSettings {
+        public final int version;
+        public final float[] floats;
+        public final boolean[] bools;
+        public final String[] strings;
+
+        public ResolvedSettings(int version, int count) {
+            this.version = version;
+            this.floats = new float[count];
+            this.bools = new boolean[count];
+            this.strings = new String[count];
+        }
+    }
+
     //---Helper functions---
 
     public float getFloatSetting(Identifier id){
-        PermissionSetting setting = getSetting(id);
-        
-        if(setting instanceof PermissionFloatSetting){
-            return ((PermissionFloatSetting) setting).value;
-        }
-        
-        return 0;
+        int ordinal = PlayerTrustManager.getPermissionOrdinal(id);
+        if (ordinal < 0)
+            return 0;
+
+        return getResolvedSettings().floats[ordinal];
     }
     
     public int getIntSetting(Identifier id){
@@ -171,22 +244,19 @@ public class TrustContainer {
     }
     
     public boolean getBoolSetting(Identifier id){
-        PermissionSetting setting = getSetting(id);
+        int ordinal = PlayerTrustManager.getPermissionOrdinal(id);
+        if (ordinal < 0)
+            return false;
 
-        if(setting instanceof PermissionBooleanSetting){
-            return ((PermissionBooleanSetting) setting).value;
-        }
-
-        return false;
+        return getResolvedSettings().bools[ordinal];
     }
     
     public String getStringSetting(Identifier id){
-        PermissionSetting setting = getSetting(id);
-
-        if(setting instanceof PermissionStringSetting){
-            return ((PermissionStringSetting) setting).value;
-        }
+        int ordinal = PlayerTrustManager.getPermissionOrdinal(id);
+        if (ordinal < 0)
+            return "";
 
-        return "";
+        String value = getResolvedSettings().strings[ordinal];
+        return value != null ? value : "";
     }
 }